@@ -0,0 +1,142 @@
+package com.songjaehyun.api.demos.expiringkv.domain;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Steady-state throughput of the store: single operations, mixed read/write
+ * groups and snapshots, over store size and store flavour.
+ * Thread count for the single-operation benchmarks can be overridden with
+ * -PjmhThreads; the groups fix their own read/write ratio.
+ *
+ * <p>
+ * TTLs are long relative to a run, so nothing expires here; see
+ * {@link MassExpiryBenchmark} for purge cost.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExpiringKeyValueStoreBenchmark {
+
+    @Param({ "1000", "100000" })
+    int size;
+
+    /**
+     * single: one lock; single-lock-free-reads: gets skip the lock; sharded:
+     * lock striping; compact: entries packed into byte pages.
+     */
+    @Param({ "single", "single-lock-free-reads", "sharded", "compact" })
+    String store;
+
+    private static final long HOUR_MILLIS = 3_600_000;
+    private static final String VALUE = "value-0123456789";
+
+    private KeyValueStore kv;
+    private String[] keys;
+    private long[] ttlByKey;
+
+    @Setup
+    public void setUp() {
+        StoreOptions options = StoreOptions.defaults().withLockFreeReads(!store.equals("single"));
+        kv = switch (store) {
+            case "sharded" -> new ShardedExpiringKeyValueStore(System::currentTimeMillis,
+                    ShardedExpiringKeyValueStore.defaultShardCount(), options);
+            case "compact" -> new CompactKeyValueStore(System::currentTimeMillis, options);
+            default -> new ExpiringKeyValueStore(System::currentTimeMillis, options);
+        };
+
+        // Twice as many keys as entries, so half the gets miss and half the puts insert
+        keys = new String[size * 2];
+        ttlByKey = new long[keys.length];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "key:" + i;
+            ttlByKey[i] = HOUR_MILLIS + random.nextLong(HOUR_MILLIS);
+        }
+        for (int i = 0; i < size; i++)
+            kv.put(keys[i * 2], VALUE, ttlByKey[i * 2]);
+    }
+
+    private int randomKey() {
+        return ThreadLocalRandom.current().nextInt(keys.length);
+    }
+
+    @Benchmark
+    public String get() {
+        return kv.get(keys[randomKey()]);
+    }
+
+    @Benchmark
+    public void put() {
+        int i = randomKey();
+        kv.put(keys[i], VALUE, ttlByKey[i]);
+    }
+
+    @Benchmark
+    public void putIfAbsent() {
+        int i = randomKey();
+        kv.putIfAbsent(keys[i], VALUE, ttlByKey[i]);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object snapshotPage() {
+        return kv.snapshotPage(keys[randomKey()], 100);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object snapshot() {
+        return kv.snapshot();
+    }
+
+    // ---- 90% reads ----
+
+    @Benchmark
+    @Group("readHeavy")
+    @GroupThreads(9)
+    public String readHeavyGet() {
+        return get();
+    }
+
+    @Benchmark
+    @Group("readHeavy")
+    @GroupThreads(1)
+    public void readHeavyPut() {
+        put();
+    }
+
+    // ---- 50% reads ----
+
+    @Benchmark
+    @Group("balanced")
+    @GroupThreads(2)
+    public String balancedGet() {
+        return get();
+    }
+
+    @Benchmark
+    @Group("balanced")
+    @GroupThreads(2)
+    public void balancedPut() {
+        put();
+    }
+}
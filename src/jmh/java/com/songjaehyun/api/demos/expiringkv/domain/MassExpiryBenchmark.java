@@ -0,0 +1,74 @@
+package com.songjaehyun.api.demos.expiringkv.domain;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of a cohort of keys expiring together: one write that purges inline,
+ * and the reaper draining the same cohort in bounded ticks.
+ *
+ * <p>
+ * Each iteration fills a fresh store whose whole cohort expires within one
+ * wheel tick, then moves the injected clock past it, so the measured call
+ * does all the expiry work.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MassExpiryBenchmark {
+
+    @Param({ "10000", "100000" })
+    int cohort;
+
+    @Param({ "HEAP", "TIMING_WHEEL" })
+    StoreOptions.ExpiryIndex index;
+
+    private static final long TTL_MILLIS = 1_000;
+    private static final int REAPER_BATCH = 1_000;
+
+    private final AtomicLong now = new AtomicLong();
+    private ExpiringKeyValueStore store;
+
+    @Setup(Level.Iteration)
+    public void fillCohort() {
+        now.set(1_000);
+        store = new ExpiringKeyValueStore(now::get, StoreOptions.defaults()
+                .withExpiryIndex(index)
+                .withWheelTickMillis(10));
+        for (int i = 0; i < cohort; i++)
+            store.put("key:" + i, "v", TTL_MILLIS + (i & 7));
+        now.addAndGet(2 * TTL_MILLIS);
+    }
+
+    /** Default options purge without a cap, so this one put removes the whole cohort. */
+    @Benchmark
+    public int purgeOnWrite() {
+        store.put("trigger", "v", TTL_MILLIS);
+        return store.size();
+    }
+
+    @Benchmark
+    public int reaperDrain() {
+        int total = 0;
+        int reaped;
+        while ((reaped = store.reapExpired(REAPER_BATCH)) > 0)
+            total += reaped;
+        return total;
+    }
+}
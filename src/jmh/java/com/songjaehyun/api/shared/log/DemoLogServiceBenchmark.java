@@ -0,0 +1,93 @@
+package com.songjaehyun.api.shared.log;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Appends and reads spread over a number of sessions by several threads.
+ * With one session every thread hits the same ring; with many they rarely
+ * meet.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DemoLogServiceBenchmark {
+
+    @Param({ "1", "1000" })
+    int sessions;
+
+    private static final int EVENTS_PER_SESSION = 300;
+
+    private DemoLogService logs;
+    private String[] ids;
+    private LogEvent event;
+
+    @Setup
+    public void setUp() {
+        logs = new DemoLogService(EVENTS_PER_SESSION, Long.MAX_VALUE, Long.MAX_VALUE, System::currentTimeMillis);
+        ids = new String[sessions];
+        event = new LogEvent(0, "expiring-kv", "put", Map.of("key", "k", "ttlMillis", 1000), null);
+        for (int i = 0; i < sessions; i++) {
+            ids[i] = "session-" + i;
+            for (int j = 0; j < EVENTS_PER_SESSION; j++)
+                logs.append(ids[i], event);
+        }
+    }
+
+    private String randomSession() {
+        return ids[ThreadLocalRandom.current().nextInt(ids.length)];
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void append() {
+        logs.append(randomSession(), event);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public List<LogEvent> get() {
+        return logs.get(randomSession());
+    }
+
+    /** A caught-up poller: nothing new since its cursor. Nothing appends here, so the cursor stays current. */
+    @Benchmark
+    @Threads(4)
+    public LogSlice sinceLatest() {
+        return logs.since(randomSession(), EVENTS_PER_SESSION);
+    }
+
+    @Benchmark
+    @Group("appendWhileReading")
+    @GroupThreads(3)
+    public void mixedAppend() {
+        append();
+    }
+
+    @Benchmark
+    @Group("appendWhileReading")
+    @GroupThreads(1)
+    public List<LogEvent> mixedGet() {
+        return get();
+    }
+}
@@ -15,7 +15,7 @@ public class CorsConfig implements WebMvcConfigurer {
                         "http://127.0.0.1:3000",
                         "https://www.songjaehyun.com",
                         "https://songjaehyun.com")
-                .allowedMethods("GET", "PUT", "DELETE", "OPTIONS")
+                .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
                 .allowedHeaders("*");
     }
 }
\ No newline at end of file
@@ -1,14 +1,38 @@
 package com.songjaehyun.api.config;
 
+import com.songjaehyun.api.demos.expiringkv.domain.CompactKeyValueStore;
 import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore;
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiryReaper;
+import com.songjaehyun.api.demos.expiringkv.domain.KeyValueStore;
+import com.songjaehyun.api.demos.expiringkv.domain.ShardedExpiringKeyValueStore;
+import com.songjaehyun.api.demos.expiringkv.domain.StoreOptions;
+import com.songjaehyun.api.demos.expiringkv.domain.StoreOptions.Eviction;
+import com.songjaehyun.api.demos.expiringkv.domain.StoreOptions.ExpiryIndex;
+import com.songjaehyun.api.demos.expiringkv.metrics.MeteredKeyValueStore;
+import com.songjaehyun.api.demos.expiringkv.metrics.StoreTimings;
+import com.songjaehyun.api.demos.expiringkv.persistence.DurableKeyValueStore;
 import com.songjaehyun.api.demos.expiringkv.application.ExpiringKeyValueService;
+import com.songjaehyun.api.demos.expiringkv.application.ExpiringKeyValueSessionManager;
+import com.songjaehyun.api.demos.expiringkv.application.KeyWatchHub;
+import com.songjaehyun.api.demos.expiringkv.application.SnapshotCache;
+import com.songjaehyun.api.shared.session.SessionRegistry;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.LongSupplier;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import tools.jackson.databind.json.JsonMapper;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
+@EnableConfigurationProperties(ExpiringKeyValueProperties.class)
 public class ExpiringKeyValueDemoConfig {
 
     @Bean
@@ -16,14 +40,111 @@ public class ExpiringKeyValueDemoConfig {
         return System::currentTimeMillis;
     }
 
+    /**
+     * With durability enabled the store is recovered from disk before the
+     * bean is published, and closed (log flushed) by the container on
+     * shutdown. Always metered, outermost, so latencies include durability.
+     */
     @Bean
-    public ExpiringKeyValueStore expiringKeyValueStore(LongSupplier expiringKeyValueClock) {
-        return new ExpiringKeyValueStore(expiringKeyValueClock);
+    public KeyValueStore expiringKeyValueStore(
+            LongSupplier expiringKeyValueClock,
+            ExpiringKeyValueProperties properties,
+            MeterRegistry meterRegistry) throws IOException {
+        ExpiringKeyValueProperties.Store config = properties.store();
+        StoreOptions options = config.toOptions();
+
+        KeyValueStore store = switch (config.type()) {
+            case SINGLE -> new ExpiringKeyValueStore(expiringKeyValueClock, options);
+            case SHARDED -> new ShardedExpiringKeyValueStore(expiringKeyValueClock,
+                    config.shards() > 0 ? config.shards() : ShardedExpiringKeyValueStore.defaultShardCount(),
+                    options);
+            case COMPACT -> {
+                requireCompactSupports(options);
+                yield new CompactKeyValueStore(expiringKeyValueClock, options);
+            }
+        };
+
+        ExpiringKeyValueProperties.Durability durability = properties.durability();
+        if (durability.enabled()) {
+            DurableKeyValueStore durable = new DurableKeyValueStore(store, expiringKeyValueClock,
+                    durability.toOptions());
+            FunctionCounter.builder("expiringkv.compaction.failures", durable,
+                    DurableKeyValueStore::compactionFailures)
+                    .description("Scheduled log compactions that failed; the log grows until one succeeds")
+                    .register(meterRegistry);
+            store = durable;
+        }
+        return new MeteredKeyValueStore(store, meterRegistry, "global");
+    }
+
+    /**
+     * The compact store takes the lock for every read, keeps its own expiry
+     * heap and evicts in LRU order only; refuse to start rather than run with
+     * settings it would not honour.
+     */
+    private static void requireCompactSupports(StoreOptions options) {
+        List<String> unsupported = new ArrayList<>();
+        if (options.lockFreeReads())
+            unsupported.add("lock-free-reads=true");
+        if (options.expiryIndex() == ExpiryIndex.TIMING_WHEEL)
+            unsupported.add("expiry-index=timing-wheel");
+        if (options.bounded() && options.eviction() == Eviction.TINY_LFU)
+            unsupported.add("eviction=tiny-lfu");
+        if (!unsupported.isEmpty())
+            throw new IllegalArgumentException("demos.expiring-kv.store.type=compact does not support "
+                    + String.join(", ", unsupported));
     }
 
+    /**
+     * Closed by the container on shutdown (ExpiryReaper is AutoCloseable).
+     */
     @Bean
-    public ExpiringKeyValueService expiringKeyValueService(ExpiringKeyValueStore store) {
+    @ConditionalOnProperty(prefix = "demos.expiring-kv.reaper", name = "enabled", havingValue = "true")
+    public ExpiryReaper expiringKeyValueReaper(KeyValueStore store, ExpiringKeyValueProperties properties,
+            MeterRegistry meterRegistry) {
+        ExpiringKeyValueProperties.Reaper config = properties.reaper();
+        ExpiryReaper reaper = new ExpiryReaper(store, config.tickMillis(), config.maxPerTick());
+        FunctionCounter.builder("expiringkv.reaper.failures", reaper, ExpiryReaper::failures)
+                .description("Reaper passes that threw")
+                .register(meterRegistry);
+        reaper.start();
+        return reaper;
+    }
+
+    @Bean
+    public ExpiringKeyValueService expiringKeyValueService(KeyValueStore store) {
         return new ExpiringKeyValueService(store);
     }
 
-}
\ No newline at end of file
+    @Bean
+    public KeyWatchHub expiringKeyValueWatchHub(
+            KeyValueStore store,
+            LongSupplier expiringKeyValueClock,
+            ExpiringKeyValueProperties properties) {
+        return new KeyWatchHub(store, expiringKeyValueClock, properties.watches().maxWatches());
+    }
+
+    @Bean
+    public SnapshotCache expiringKeyValueSnapshotCache(
+            KeyValueStore store,
+            LongSupplier expiringKeyValueClock,
+            JsonMapper jsonMapper) {
+        return new SnapshotCache(store, expiringKeyValueClock, jsonMapper::writeValueAsBytes);
+    }
+
+    /**
+     * Releases a session's store when SessionRegistry drops the session.
+     */
+    @Bean
+    public ExpiringKeyValueSessionManager expiringKeyValueSessionManager(
+            SessionRegistry sessionRegistry,
+            LongSupplier expiringKeyValueClock,
+            ExpiringKeyValueProperties properties,
+            MeterRegistry meterRegistry) {
+        ExpiringKeyValueProperties.Sessions config = properties.sessions();
+        return new ExpiringKeyValueSessionManager(sessionRegistry, expiringKeyValueClock,
+                config.toOptions(), config.maxSessions(), config.poolSize(),
+                new StoreTimings(meterRegistry, "session"));
+    }
+
+}
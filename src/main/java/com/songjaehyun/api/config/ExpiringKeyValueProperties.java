@@ -0,0 +1,132 @@
+package com.songjaehyun.api.config;
+
+import com.songjaehyun.api.demos.expiringkv.domain.StoreOptions;
+import com.songjaehyun.api.demos.expiringkv.domain.StoreOptions.Eviction;
+import com.songjaehyun.api.demos.expiringkv.domain.StoreOptions.ExpiryIndex;
+import com.songjaehyun.api.demos.expiringkv.persistence.DurabilityOptions;
+import com.songjaehyun.api.demos.expiringkv.persistence.FsyncPolicy;
+
+import java.nio.file.Path;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Binds demos.expiring-kv.* from application.yaml.
+ */
+@ConfigurationProperties("demos.expiring-kv")
+public record ExpiringKeyValueProperties(
+        @DefaultValue Store store,
+        @DefaultValue Reaper reaper,
+        @DefaultValue Durability durability,
+        @DefaultValue Sessions sessions,
+        @DefaultValue Watches watches,
+        @DefaultValue Admin admin) {
+
+    public enum StoreType {
+        /** One map + expiry index behind one lock. */
+        SINGLE,
+        /** Lock-striped segments selected by key hash. */
+        SHARDED,
+        /** Entries packed into byte pages; least memory per entry, one lock. */
+        COMPACT
+    }
+
+    /**
+     * @param shards          <= 0 derives the segment count from available cores
+     * @param maxEntries      Integer.MAX_VALUE disables the entry bound
+     * @param maxWeightBytes  Long.MAX_VALUE disables the weight bound
+     * @param journalCapacity recent changes kept for /snapshot/delta; 0 makes
+     *                        every delta a full snapshot
+     */
+    public record Store(
+            @DefaultValue("sharded") StoreType type,
+            @DefaultValue("0") int shards,
+            @DefaultValue("true") boolean lockFreeReads,
+            @DefaultValue("heap") ExpiryIndex expiryIndex,
+            @DefaultValue("10") long wheelTickMillis,
+            @DefaultValue("2147483647") int maxPurgePerOperation,
+            @DefaultValue("2147483647") int maxEntries,
+            @DefaultValue("9223372036854775807") long maxWeightBytes,
+            @DefaultValue("tiny-lfu") Eviction eviction,
+            @DefaultValue("0") int journalCapacity) {
+
+        public StoreOptions toOptions() {
+            return StoreOptions.defaults()
+                    .withLockFreeReads(lockFreeReads)
+                    .withExpiryIndex(expiryIndex)
+                    .withWheelTickMillis(wheelTickMillis)
+                    .withMaxPurgePerOperation(maxPurgePerOperation)
+                    .withMaxEntries(maxEntries)
+                    .withMaxWeightBytes(maxWeightBytes)
+                    .withEviction(eviction)
+                    .withJournalCapacity(journalCapacity);
+        }
+    }
+
+    public record Reaper(
+            @DefaultValue("false") boolean enabled,
+            @DefaultValue("10") long tickMillis,
+            @DefaultValue("1000") int maxPerTick) {
+    }
+
+    /**
+     * @param directory where the write-ahead log and snapshot live; should be
+     *                  a mounted volume when running in a container
+     */
+    public record Durability(
+            @DefaultValue("false") boolean enabled,
+            @DefaultValue("data/expiring-kv") Path directory,
+            @DefaultValue("interval") FsyncPolicy fsyncPolicy,
+            @DefaultValue("5") long flushIntervalMillis,
+            @DefaultValue("1000") long fsyncIntervalMillis,
+            @DefaultValue("60000") long compactionIntervalMillis) {
+
+        public DurabilityOptions toOptions() {
+            return new DurabilityOptions(directory, fsyncPolicy, flushIntervalMillis,
+                    fsyncIntervalMillis, compactionIntervalMillis);
+        }
+    }
+
+    /**
+     * Per-visitor stores behind /api/demos/expiring-kv/sessions/{sid}.
+     *
+     * @param maxEntries     entry cap of each session's store; LRU beyond it
+     * @param maxWeightBytes byte cap of each session's store
+     * @param poolSize       released stores kept for reuse by new sessions
+     */
+    public record Sessions(
+            @DefaultValue("10000") int maxSessions,
+            @DefaultValue("1000") int maxEntries,
+            @DefaultValue("1048576") long maxWeightBytes,
+            @DefaultValue("256") int poolSize) {
+
+        public StoreOptions toOptions() {
+            return StoreOptions.defaults()
+                    .withLockFreeReads(true)
+                    .withMaxEntries(maxEntries)
+                    .withMaxWeightBytes(maxWeightBytes)
+                    .withEviction(Eviction.LRU);
+        }
+    }
+
+    /**
+     * Long-poll watches on the global store's keys.
+     *
+     * @param maxWatches watches allowed to wait at once; more are refused with 503
+     */
+    public record Watches(
+            @DefaultValue("10000") int maxWatches) {
+    }
+
+    /**
+     * Bulk snapshot export/import under /api/demos/expiring-kv/admin.
+     *
+     * @param enabled        maps the endpoints; they have no authentication
+     * @param maxImportBytes larger import bodies are refused with 413
+     */
+    public record Admin(
+            @DefaultValue("false") boolean enabled,
+            @DefaultValue("67108864") long maxImportBytes) {
+    }
+}
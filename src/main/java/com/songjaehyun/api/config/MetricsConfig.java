@@ -0,0 +1,91 @@
+package com.songjaehyun.api.config;
+
+import com.songjaehyun.api.demos.expiringkv.application.ExpiringKeyValueService;
+import com.songjaehyun.api.demos.expiringkv.application.ExpiringKeyValueSessionManager;
+import com.songjaehyun.api.shared.log.DemoLogService;
+import com.songjaehyun.api.shared.session.IdleSessionSweeper;
+import com.songjaehyun.api.shared.session.SessionRegistry;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Platform meters. They are read only when scraped, from counters the
+ * services keep anyway, so request paths pay nothing for them. Store meters
+ * live in MeteredKeyValueStore.
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterBinder demoLogMetrics(DemoLogService logService) {
+        return registry -> {
+            FunctionCounter.builder("platform.log.appends", logService, s -> s.stats().appends())
+                    .description("Demo log events appended")
+                    .register(registry);
+            FunctionCounter.builder("platform.log.reads", logService, s -> s.stats().reads())
+                    .description("Demo log reads (get and since)")
+                    .register(registry);
+            Gauge.builder("platform.log.sessions", logService, s -> s.stats().sessions())
+                    .description("Sessions with a retained demo log")
+                    .register(registry);
+            Gauge.builder("platform.log.retained.events", logService, s -> s.stats().retainedEvents())
+                    .description("Demo log events retained across all sessions")
+                    .register(registry);
+            Gauge.builder("platform.log.retained.bytes", logService, s -> s.stats().retainedBytes())
+                    .description("Approximate bytes of retained demo log events")
+                    .baseUnit("bytes")
+                    .register(registry);
+            FunctionCounter.builder("platform.log.evictions", logService, s -> s.stats().capacityEvictions())
+                    .description("Session logs dropped")
+                    .tag("reason", "capacity")
+                    .register(registry);
+            FunctionCounter.builder("platform.log.evictions", logService, s -> s.stats().idleEvictions())
+                    .description("Session logs dropped")
+                    .tag("reason", "idle")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder expiringKeyValueServiceMetrics(ExpiringKeyValueService service) {
+        return registry -> FunctionCounter.builder("expiringkv.refresh.failures", service,
+                ExpiringKeyValueService::refreshFailures)
+                .description("Refresh-ahead reloads whose loader threw")
+                .register(registry);
+    }
+
+    @Bean
+    public MeterBinder sessionMetrics(SessionRegistry sessionRegistry, IdleSessionSweeper sessionSweeper,
+            ExpiringKeyValueSessionManager kvSessions) {
+        return registry -> {
+            Gauge.builder("platform.sessions.live", sessionRegistry, SessionRegistry::size)
+                    .description("Sessions in the registry")
+                    .register(registry);
+            FunctionCounter.builder("platform.sessions.idle.evictions", sessionSweeper,
+                    IdleSessionSweeper::evictedSessions)
+                    .description("Sessions removed for inactivity")
+                    .register(registry);
+            FunctionCounter.builder("platform.sessions.sweep.failures", sessionSweeper,
+                    IdleSessionSweeper::failures)
+                    .description("Idle-session sweeps that threw")
+                    .register(registry);
+            Gauge.builder("expiringkv.sessions.live", kvSessions, m -> m.stats().liveSessions())
+                    .description("Sessions with their own expiring KV store")
+                    .register(registry);
+            Gauge.builder("expiringkv.sessions.pooled", kvSessions, m -> m.stats().pooledStores())
+                    .description("Released session stores waiting for reuse")
+                    .register(registry);
+            FunctionCounter.builder("expiringkv.sessions.created", kvSessions, m -> m.stats().created())
+                    .description("Session stores allocated")
+                    .register(registry);
+            FunctionCounter.builder("expiringkv.sessions.recycled", kvSessions, m -> m.stats().recycled())
+                    .description("Sessions served from a pooled store")
+                    .register(registry);
+        };
+    }
+}
@@ -0,0 +1,54 @@
+package com.songjaehyun.api.config;
+
+import com.songjaehyun.api.shared.log.DemoLogService;
+import com.songjaehyun.api.shared.log.LogStreamHub;
+import com.songjaehyun.api.shared.session.CoarseClock;
+import com.songjaehyun.api.shared.session.IdleSessionSweeper;
+import com.songjaehyun.api.shared.session.SessionRegistry;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(PlatformProperties.class)
+public class PlatformConfig {
+
+    // Session and log bookkeeping only needs to know roughly when
+    private static final long CLOCK_RESOLUTION_MILLIS = 10;
+
+    @Bean
+    public CoarseClock coarseClock() {
+        return new CoarseClock(CLOCK_RESOLUTION_MILLIS);
+    }
+
+    @Bean
+    public DemoLogService demoLogService(PlatformProperties properties, CoarseClock clock) {
+        PlatformProperties.Log config = properties.log();
+        return new DemoLogService(config.maxEventsPerSession(), config.maxTotalEvents(),
+                config.maxTotalBytes(), clock);
+    }
+
+    @Bean
+    public LogStreamHub logStreamHub(DemoLogService logService) {
+        return new LogStreamHub(logService);
+    }
+
+    @Bean
+    public SessionRegistry sessionRegistry(PlatformProperties properties, CoarseClock clock) {
+        return new SessionRegistry(clock, properties.sessions().bucketMillis());
+    }
+
+    /**
+     * Closed by the container on shutdown (IdleSessionSweeper is AutoCloseable).
+     */
+    @Bean
+    public IdleSessionSweeper idleSessionSweeper(SessionRegistry registry, DemoLogService logService,
+            PlatformProperties properties, CoarseClock clock) {
+        PlatformProperties.Sessions config = properties.sessions();
+        IdleSessionSweeper sweeper = new IdleSessionSweeper(registry, logService, clock,
+                config.idleTtlMillis(), config.sweepIntervalMillis());
+        sweeper.start();
+        return sweeper;
+    }
+}
@@ -0,0 +1,36 @@
+package com.songjaehyun.api.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Binds platform.* from application.yaml.
+ */
+@ConfigurationProperties("platform")
+public record PlatformProperties(
+        @DefaultValue Sessions sessions,
+        @DefaultValue Log log) {
+
+    /**
+     * @param idleTtlMillis sessions untouched for this long are dropped along
+     *                      with their logs
+     * @param bucketMillis  resolution of session last-seen times; touches
+     *                      within one bucket cost no write
+     */
+    public record Sessions(
+            @DefaultValue("1800000") long idleTtlMillis,
+            @DefaultValue("60000") long sweepIntervalMillis,
+            @DefaultValue("1000") long bucketMillis) {
+    }
+
+    /**
+     * @param maxTotalEvents budget across all sessions; least recently used
+     *                       sessions are dropped beyond it
+     * @param maxTotalBytes  same, in approximate bytes of event data
+     */
+    public record Log(
+            @DefaultValue("300") int maxEventsPerSession,
+            @DefaultValue("500000") long maxTotalEvents,
+            @DefaultValue("67108864") long maxTotalBytes) {
+    }
+}
@@ -2,28 +2,43 @@ package com.songjaehyun.api.controller.platform;
 
 import java.util.Map;
 
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import com.songjaehyun.api.shared.log.DemoLogService;
 import com.songjaehyun.api.shared.log.LogEvent;
+import com.songjaehyun.api.shared.log.LogSlice;
+import com.songjaehyun.api.shared.log.LogStreamHub;
+import com.songjaehyun.api.shared.session.IdleSessionSweeper;
 import com.songjaehyun.api.shared.session.SessionRegistry;
 
 @RestController
 @RequestMapping("/platform")
 public class PlatformController {
     
+    static final String LOG_SEQUENCE_HEADER = "X-Log-Sequence";
+
     private final DemoLogService logService;
     private final SessionRegistry sessionRegistry;
+    private final LogStreamHub logStreamHub;
+    private final IdleSessionSweeper sessionSweeper;
 
-    public PlatformController(DemoLogService logService, SessionRegistry sessionRegistry) {
+    public PlatformController(DemoLogService logService, SessionRegistry sessionRegistry,
+            LogStreamHub logStreamHub, IdleSessionSweeper sessionSweeper) {
         this.logService = logService;
         this.sessionRegistry = sessionRegistry;
+        this.logStreamHub = logStreamHub;
+        this.sessionSweeper = sessionSweeper;
     }
 
     public record AppendLogRequest(String demo, String method, Map<String, Object> args, Object result) {};
@@ -54,15 +69,57 @@ public class PlatformController {
         ));
     }
 
+    /**
+     * Events newer than since (all retained events by default). The
+     * X-Log-Sequence header carries the cursor to pass as since on the next
+     * poll, so a steady poller only ever receives new events.
+     */
     @GetMapping("/{sid}/log")
-    public ResponseEntity<?> get(@PathVariable String sid) {
+    public ResponseEntity<?> get(@PathVariable String sid,
+            @RequestParam(defaultValue = "0") long since) {
         sessionRegistry.touch(sid);
-        return ResponseEntity.ok(logService.get(sid)); 
+        LogSlice slice = logService.since(sid, since);
+        return ResponseEntity.ok()
+                .header(LOG_SEQUENCE_HEADER, Long.toString(slice.latestSeq()))
+                .body(slice.events());
+    }
+
+    /**
+     * Live stream of the session's log as Server-Sent Events. Each "log" event
+     * carries a JSON array of new events and, as its id, the sequence to
+     * resume from; browsers send it back as Last-Event-ID on reconnect.
+     */
+    @GetMapping(value = "/{sid}/log/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@PathVariable String sid,
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId,
+            @RequestParam(defaultValue = "0") long since) {
+        sessionRegistry.touch(sid);
+        return logStreamHub.subscribe(sid, lastEventId != null ? lastEventId : since);
+    }
+
+    /**
+     * @param liveSessions         sessions in the registry
+     * @param idleSessionEvictions sessions the sweeper removed for inactivity
+     * @param log                  retained log events and bytes, and
+     *                             evictions
+     */
+    public record PlatformStats(int liveSessions, long idleSessionEvictions, DemoLogService.LogStats log) {
+    }
+
+    @GetMapping("stats")
+    public PlatformStats stats() {
+        return new PlatformStats(sessionRegistry.size(), sessionSweeper.evictedSessions(), logService.stats());
     }
 
+    /**
+     * Sessions, most recently seen first. Pass nextCursor back as after to get
+     * the following page.
+     */
     @GetMapping("sessions")
-    public ResponseEntity<?> sessions() {
-        return ResponseEntity.ok(sessionRegistry.snapshot());
+    public SessionRegistry.SessionPage sessions(
+            @RequestParam(defaultValue = "100") int limit,
+            @RequestParam(required = false) String after) {
+        return sessionRegistry.page(after, limit);
     }
 
     @PostMapping("/{sid}/clear")
@@ -71,4 +128,9 @@ public class PlatformController {
         sessionRegistry.remove(sid);
         return ResponseEntity.ok(Map.of("sid", sid, "cleared", true));
     }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<?> handleBadRequest(IllegalArgumentException ex) {
+        return ResponseEntity.badRequest().body(Map.of("error", ex.getMessage()));
+    }
 }
@@ -0,0 +1,67 @@
+package com.songjaehyun.api.demos.expiringkv.api;
+
+import com.songjaehyun.api.config.ExpiringKeyValueProperties;
+import com.songjaehyun.api.demos.expiringkv.api.ExpiringKeyValueController.ErrorResponse;
+import com.songjaehyun.api.demos.expiringkv.application.ExpiringKeyValueService;
+import com.songjaehyun.api.demos.expiringkv.application.SnapshotTooLargeException;
+import com.songjaehyun.api.demos.expiringkv.persistence.BinarySnapshot.ImportResult;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Bulk export and import of the global store. They dump or overwrite the
+ * whole store and carry no authentication, so they are only mapped when
+ * demos.expiring-kv.admin.enabled is true; keep that for private deployments
+ * or put the path behind a gateway.
+ */
+@RestController
+@RequestMapping("/api/demos/expiring-kv/admin")
+@ConditionalOnProperty(prefix = "demos.expiring-kv.admin", name = "enabled", havingValue = "true")
+public class ExpiringKeyValueAdminController {
+
+    private final ExpiringKeyValueService service;
+    private final long maxImportBytes;
+
+    public ExpiringKeyValueAdminController(ExpiringKeyValueService service, ExpiringKeyValueProperties properties) {
+        this.service = service;
+        this.maxImportBytes = properties.admin().maxImportBytes();
+    }
+
+    /**
+     * Binary dump of all live entries (see BinarySnapshot), streamed while
+     * iterating. POST it to another instance's /admin/snapshot to warm it.
+     */
+    @GetMapping(value = "/snapshot", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportSnapshot() {
+        StreamingResponseBody body = service::exportSnapshot;
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"expiring-kv.ekvd\"")
+                .body(body);
+    }
+
+    /** 413 if the body is larger than admin.max-import-bytes. */
+    @PostMapping(value = "/snapshot", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ImportResult importSnapshot(InputStream body) throws IOException {
+        return service.importSnapshot(body, maxImportBytes);
+    }
+
+    // ---- error mapping ----
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<ErrorResponse> handleBadRequest(IllegalArgumentException ex) {
+        return ResponseEntity.badRequest().body(new ErrorResponse(ex.getMessage()));
+    }
+
+    @ExceptionHandler(SnapshotTooLargeException.class)
+    public ResponseEntity<ErrorResponse> handleTooLarge(SnapshotTooLargeException ex) {
+        return ResponseEntity.status(HttpStatus.CONTENT_TOO_LARGE).body(new ErrorResponse(ex.getMessage()));
+    }
+}
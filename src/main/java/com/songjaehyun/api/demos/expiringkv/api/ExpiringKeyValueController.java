@@ -1,19 +1,46 @@
 package com.songjaehyun.api.demos.expiringkv.api;
 
 import com.songjaehyun.api.demos.expiringkv.application.ExpiringKeyValueService;
-import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore.Snapshot;
+import com.songjaehyun.api.demos.expiringkv.application.KeyWatchHub;
+import com.songjaehyun.api.demos.expiringkv.application.KeyWatchHub.KeyChange;
+import com.songjaehyun.api.demos.expiringkv.application.SnapshotCache;
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore.SnapshotDelta;
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore.SnapshotEntry;
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore.SnapshotPage;
+import com.songjaehyun.api.demos.expiringkv.domain.KeyValueStore;
+import com.songjaehyun.api.demos.expiringkv.domain.KeyValueStore.PutEntry;
+import com.songjaehyun.api.demos.expiringkv.domain.StoreStats;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import tools.jackson.databind.json.JsonMapper;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/demos/expiring-kv")
 public class ExpiringKeyValueController {
 
     private final ExpiringKeyValueService service;
+    private final KeyWatchHub watchHub;
+    private final SnapshotCache snapshotCache;
+    private final JsonMapper jsonMapper;
 
-    public ExpiringKeyValueController(ExpiringKeyValueService service) {
+    public ExpiringKeyValueController(
+            ExpiringKeyValueService service,
+            KeyWatchHub watchHub,
+            SnapshotCache snapshotCache,
+            JsonMapper jsonMapper) {
         this.service = service;
+        this.watchHub = watchHub;
+        this.snapshotCache = snapshotCache;
+        this.jsonMapper = jsonMapper;
     }
 
     @PutMapping("/entries/{key}")
@@ -32,6 +59,41 @@ public class ExpiringKeyValueController {
         service.putIfAbsent(key, request.value(), request.ttlMillis());
     }
 
+    // ---- atomic read-modify-write ----
+
+    /** 204 if written, 409 if the live value was not the expected one. */
+    @PostMapping("/entries/{key}/compare-and-set")
+    public ResponseEntity<Void> compareAndSet(
+            @PathVariable String key,
+            @RequestBody CompareAndSetRequest request) {
+        boolean written = service.compareAndSet(key, request.expected(), request.value(), request.ttlMillis());
+        return written ? ResponseEntity.noContent().build() : ResponseEntity.status(HttpStatus.CONFLICT).build();
+    }
+
+    @PostMapping("/entries/{key}/get-and-set")
+    public GetAndSetResponse getAndSet(
+            @PathVariable String key,
+            @RequestBody PutRequest request) {
+        return new GetAndSetResponse(key, service.getAndSet(key, request.value(), request.ttlMillis()));
+    }
+
+    /** ttlMillis only applies when the counter is created. */
+    @PostMapping("/entries/{key}/increment")
+    public IncrementResponse incrementBy(
+            @PathVariable String key,
+            @RequestBody IncrementRequest request) {
+        return new IncrementResponse(key, service.incrementBy(key, request.delta(), request.ttlMillis()));
+    }
+
+    @PostMapping("/entries/{key}/touch")
+    public ResponseEntity<Void> touch(
+            @PathVariable String key,
+            @RequestBody TouchRequest request) {
+        return service.touch(key, request.ttlMillis())
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.notFound().build();
+    }
+
     @GetMapping("/entries/{key}")
     public ResponseEntity<GetResponse> get(@PathVariable String key) {
         String value = service.get(key);
@@ -42,15 +104,147 @@ public class ExpiringKeyValueController {
         return ResponseEntity.ok(new GetResponse(key, value, ttl));
     }
 
+    /**
+     * Ordered key query: ?prefix= for a prefix scan, or ?from=&to= for a
+     * half-open range. ?after= resumes after the last key of a previous
+     * response (the smallest key greater than it is after + U+0000).
+     */
+    @GetMapping("/entries")
+    public BatchGetResponse query(
+            @RequestParam(required = false) String prefix,
+            @RequestParam(required = false) String from,
+            @RequestParam(required = false) String to,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "100") int limit) {
+        if (prefix != null) {
+            from = prefix;
+            to = KeyValueStore.prefixEnd(prefix);
+        }
+        if (after != null) {
+            String afterFrom = after + '\0';
+            if (from == null || afterFrom.compareTo(from) > 0)
+                from = afterFrom;
+        }
+        List<GetResponse> entries = service.range(from, to, limit).stream()
+                .map(e -> new GetResponse(e.key(), e.value(), e.ttlRemainingMillis()))
+                .toList();
+        return new BatchGetResponse(entries);
+    }
+
     @DeleteMapping("/entries/{key}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
     public void remove(@PathVariable String key) {
         service.remove(key);
     }
 
-    @GetMapping("/snapshot")
-    public Snapshot snapshot() {
-        return service.snapshot();
+    // ---- batch ----
+    @PutMapping("/entries")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void putAll(@RequestBody BatchPutRequest request) {
+        List<PutEntry> entries = request.entries() == null ? null
+                : request.entries().stream()
+                        .map(e -> new PutEntry(e.key(), e.value(), e.ttlMillis()))
+                        .toList();
+        service.putAll(entries);
+    }
+
+    @PostMapping("/entries/batch-get")
+    public BatchGetResponse getAll(@RequestBody BatchKeysRequest request) {
+        List<GetResponse> entries = service.getAll(request.keys()).stream()
+                .map(e -> new GetResponse(e.key(), e.value(), e.ttlRemainingMillis()))
+                .toList();
+        return new BatchGetResponse(entries);
+    }
+
+    @PostMapping("/entries/batch-delete")
+    public BatchRemoveResponse removeAll(@RequestBody BatchKeysRequest request) {
+        return new BatchRemoveResponse(service.removeAll(request.keys()));
+    }
+
+    /**
+     * Long-poll on one key. Answers at once if the key's value is not the
+     * given version (0 for none), otherwise on its next change; 204 if it
+     * does not change within timeoutMillis. Pass the returned version to the
+     * next watch.
+     */
+    @GetMapping("/entries/{key}/watch")
+    public CompletableFuture<ResponseEntity<KeyChange>> watch(
+            @PathVariable String key,
+            @RequestParam(defaultValue = "0") long version,
+            @RequestParam(defaultValue = "30000") long timeoutMillis) {
+        return watchHub.watch(key, version, timeoutMillis)
+                .thenApply(change -> change == null
+                        ? ResponseEntity.noContent().<KeyChange>build()
+                        : ResponseEntity.ok(change));
+    }
+
+    /**
+     * Served from SnapshotCache: the JSON is only rebuilt after the store
+     * changes, and a poll carrying the current ETag in If-None-Match gets 304.
+     */
+    @GetMapping(value = "/snapshot", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> snapshot(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        SnapshotCache.Rendered snapshot = snapshotCache.current();
+        if (matches(ifNoneMatch, snapshot.etag()))
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(snapshot.etag()).build();
+        return ResponseEntity.ok()
+                .eTag(snapshot.etag())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(snapshot.body());
+    }
+
+    @GetMapping(value = "/snapshot", params = "limit")
+    public SnapshotPage snapshotPage(
+            @RequestParam int limit,
+            @RequestParam(required = false) String after) {
+        return service.snapshotPage(after, limit);
+    }
+
+    /**
+     * Entries changed after a version: pass 0 or the version of the last
+     * response. full=true means the journal did not reach back that far and
+     * upserted holds the whole store instead.
+     */
+    @GetMapping("/snapshot/delta")
+    public SnapshotDelta snapshotDelta(@RequestParam long since) {
+        return service.snapshotDelta(since);
+    }
+
+    /**
+     * Newline-delimited JSON, one entry per line, written while iterating so
+     * the full snapshot is never materialised.
+     */
+    @GetMapping(value = "/snapshot/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> snapshotStream(
+            @RequestParam(required = false) String after) {
+        Iterator<SnapshotEntry> entries = service.liveEntries(after);
+        StreamingResponseBody body = out -> {
+            while (entries.hasNext()) {
+                out.write(jsonMapper.writeValueAsBytes(entries.next()));
+                out.write('\n');
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    @GetMapping("/stats")
+    public StoreStats stats() {
+        return service.stats();
+    }
+
+    /** If-None-Match may list several tags, weak ones included, or be "*". */
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null)
+            return false;
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/"))
+                tag = tag.substring(2);
+            if (tag.equals("*") || tag.equals(etag))
+                return true;
+        }
+        return false;
     }
 
     // ---- error mapping ----
@@ -59,6 +253,11 @@ public class ExpiringKeyValueController {
         return ResponseEntity.badRequest().body(new ErrorResponse(ex.getMessage()));
     }
 
+    @ExceptionHandler(IllegalStateException.class)
+    public ResponseEntity<ErrorResponse> handleUnavailable(IllegalStateException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(new ErrorResponse(ex.getMessage()));
+    }
+
     // ---- DTOs (you can move these to expiringkv.api.dto later) ----
     public record PutRequest(String value, long ttlMillis) {
     }
@@ -66,6 +265,37 @@ public class ExpiringKeyValueController {
     public record GetResponse(String key, String value, long ttlRemainingMillis) {
     }
 
+    /** expected is null to require that the key be absent. */
+    public record CompareAndSetRequest(String expected, String value, long ttlMillis) {
+    }
+
+    public record GetAndSetResponse(String key, String previous) {
+    }
+
+    public record IncrementRequest(long delta, long ttlMillis) {
+    }
+
+    public record IncrementResponse(String key, long value) {
+    }
+
+    public record TouchRequest(long ttlMillis) {
+    }
+
+    public record BatchPutEntry(String key, String value, long ttlMillis) {
+    }
+
+    public record BatchPutRequest(List<BatchPutEntry> entries) {
+    }
+
+    public record BatchKeysRequest(List<String> keys) {
+    }
+
+    public record BatchGetResponse(List<GetResponse> entries) {
+    }
+
+    public record BatchRemoveResponse(int removed) {
+    }
+
     public record ErrorResponse(String message) {
     }
 }
\ No newline at end of file
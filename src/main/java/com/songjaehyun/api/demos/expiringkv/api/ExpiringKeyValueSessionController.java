@@ -0,0 +1,143 @@
+package com.songjaehyun.api.demos.expiringkv.api;
+
+import com.songjaehyun.api.demos.expiringkv.api.ExpiringKeyValueController.CompareAndSetRequest;
+import com.songjaehyun.api.demos.expiringkv.api.ExpiringKeyValueController.ErrorResponse;
+import com.songjaehyun.api.demos.expiringkv.api.ExpiringKeyValueController.GetAndSetResponse;
+import com.songjaehyun.api.demos.expiringkv.api.ExpiringKeyValueController.GetResponse;
+import com.songjaehyun.api.demos.expiringkv.api.ExpiringKeyValueController.IncrementRequest;
+import com.songjaehyun.api.demos.expiringkv.api.ExpiringKeyValueController.IncrementResponse;
+import com.songjaehyun.api.demos.expiringkv.api.ExpiringKeyValueController.PutRequest;
+import com.songjaehyun.api.demos.expiringkv.api.ExpiringKeyValueController.TouchRequest;
+import com.songjaehyun.api.demos.expiringkv.application.ExpiringKeyValueSessionManager;
+import com.songjaehyun.api.demos.expiringkv.application.SessionLimitExceededException;
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore.Snapshot;
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore.SnapshotPage;
+import com.songjaehyun.api.demos.expiringkv.domain.StoreStats;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * The expiring key-value demo, isolated per visitor: every session id gets its
+ * own small store (see ExpiringKeyValueSessionManager).
+ */
+@RestController
+@RequestMapping("/api/demos/expiring-kv/sessions/{sid}")
+public class ExpiringKeyValueSessionController {
+
+    private final ExpiringKeyValueSessionManager sessions;
+
+    public ExpiringKeyValueSessionController(ExpiringKeyValueSessionManager sessions) {
+        this.sessions = sessions;
+    }
+
+    @PutMapping("/entries/{key}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void put(
+            @PathVariable String sid,
+            @PathVariable String key,
+            @RequestBody PutRequest request) {
+        sessions.runInSession(sid, s -> s.put(key, request.value(), request.ttlMillis()));
+    }
+
+    @PutMapping("/entries/{key}/if-absent")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void putIfAbsent(
+            @PathVariable String sid,
+            @PathVariable String key,
+            @RequestBody PutRequest request) {
+        sessions.runInSession(sid, s -> s.putIfAbsent(key, request.value(), request.ttlMillis()));
+    }
+
+    @PostMapping("/entries/{key}/compare-and-set")
+    public ResponseEntity<Void> compareAndSet(
+            @PathVariable String sid,
+            @PathVariable String key,
+            @RequestBody CompareAndSetRequest request) {
+        boolean written = sessions.withSession(sid,
+                s -> s.compareAndSet(key, request.expected(), request.value(), request.ttlMillis()));
+        return written ? ResponseEntity.noContent().build() : ResponseEntity.status(HttpStatus.CONFLICT).build();
+    }
+
+    @PostMapping("/entries/{key}/get-and-set")
+    public GetAndSetResponse getAndSet(
+            @PathVariable String sid,
+            @PathVariable String key,
+            @RequestBody PutRequest request) {
+        return new GetAndSetResponse(key,
+                sessions.withSession(sid, s -> s.getAndSet(key, request.value(), request.ttlMillis())));
+    }
+
+    @PostMapping("/entries/{key}/increment")
+    public IncrementResponse incrementBy(
+            @PathVariable String sid,
+            @PathVariable String key,
+            @RequestBody IncrementRequest request) {
+        return new IncrementResponse(key,
+                sessions.withSession(sid, s -> s.incrementBy(key, request.delta(), request.ttlMillis())));
+    }
+
+    @PostMapping("/entries/{key}/touch")
+    public ResponseEntity<Void> touch(
+            @PathVariable String sid,
+            @PathVariable String key,
+            @RequestBody TouchRequest request) {
+        return sessions.withSession(sid, s -> s.touch(key, request.ttlMillis()))
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.notFound().build();
+    }
+
+    @GetMapping("/entries/{key}")
+    public ResponseEntity<GetResponse> get(@PathVariable String sid, @PathVariable String key) {
+        GetResponse response = sessions.withSession(sid, s -> {
+            String value = s.get(key);
+            return value == null ? null : new GetResponse(key, value, s.getRemainingTTL(key));
+        });
+        if (response == null)
+            return ResponseEntity.notFound().build();
+        return ResponseEntity.ok(response);
+    }
+
+    @DeleteMapping("/entries/{key}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void remove(@PathVariable String sid, @PathVariable String key) {
+        sessions.runInSession(sid, s -> s.remove(key));
+    }
+
+    @GetMapping("/snapshot")
+    public Snapshot snapshot(@PathVariable String sid) {
+        return sessions.withSession(sid, s -> s.snapshot());
+    }
+
+    @GetMapping(value = "/snapshot", params = "limit")
+    public SnapshotPage snapshotPage(
+            @PathVariable String sid,
+            @RequestParam int limit,
+            @RequestParam(required = false) String after) {
+        return sessions.withSession(sid, s -> s.snapshotPage(after, limit));
+    }
+
+    @GetMapping("/stats")
+    public StoreStats stats(@PathVariable String sid) {
+        return sessions.withSession(sid, s -> s.stats());
+    }
+
+    /** Drops the session's store; the next call starts from an empty one. */
+    @DeleteMapping
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void release(@PathVariable String sid) {
+        sessions.release(sid);
+    }
+
+    // ---- error mapping ----
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<ErrorResponse> handleBadRequest(IllegalArgumentException ex) {
+        return ResponseEntity.badRequest().body(new ErrorResponse(ex.getMessage()));
+    }
+
+    /** Session cap reached; anything else unexpected stays a 500. */
+    @ExceptionHandler(SessionLimitExceededException.class)
+    public ResponseEntity<ErrorResponse> handleUnavailable(SessionLimitExceededException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(new ErrorResponse(ex.getMessage()));
+    }
+}
@@ -1,25 +1,85 @@
 package com.songjaehyun.api.demos.expiringkv.application;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 import java.util.function.LongSupplier;
 
 import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore;
+import com.songjaehyun.api.demos.expiringkv.domain.KeyValueStore;
+import com.songjaehyun.api.demos.expiringkv.domain.StoreStats;
 import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore.Snapshot;
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore.SnapshotDelta;
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore.SnapshotEntry;
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore.SnapshotPage;
+import com.songjaehyun.api.demos.expiringkv.domain.KeyValueStore.PutEntry;
+import com.songjaehyun.api.demos.expiringkv.persistence.BinarySnapshot;
+import com.songjaehyun.api.demos.expiringkv.persistence.BinarySnapshot.ImportResult;
+import com.songjaehyun.api.demos.expiringkv.persistence.CorruptSnapshotException;
 
+/**
+ * Application-facing operations on a {@link KeyValueStore}: request limits,
+ * dump import/export, and read-through loading.
+ *
+ * <p>
+ * Design of {@link #getOrLoad}:
+ * - Concurrent misses on one key are coalesced: the first caller runs the
+ * loader, the others wait for its result (or its exception) instead of all
+ * hitting the upstream when a popular key expires.
+ * - With refresh-ahead, a hit whose remaining TTL has dropped below the
+ * threshold starts one background reload and still returns the current value
+ * right away, so hot keys are replaced before they expire.
+ * - Loads in flight are tracked per key only while they run; nothing is kept
+ * for keys that are not being loaded.
+ * - The TTL is checked before anything is loaded, so a bad request never
+ * costs an upstream call. A failed background reload has no caller to throw
+ * to; it is counted in {@link #refreshFailures()} instead.
+ */
 public final class ExpiringKeyValueService {
 
-    private final ExpiringKeyValueStore store;
+    // Keeps a single batch from holding segment locks for too long.
+    static final int MAX_BATCH_SIZE = 1000;
+    static final int MAX_PAGE_SIZE = 1000;
+
+    // Loaders usually block on I/O; a virtual thread per refresh is cheap
+    private static final Executor VIRTUAL_THREADS = Thread::startVirtualThread;
+
+    private final KeyValueStore store;
+    private final Executor refreshExecutor;
+    private final ConcurrentHashMap<String, CompletableFuture<String>> loading = new ConcurrentHashMap<>();
+    private final LongAdder refreshFailures = new LongAdder();
 
     public ExpiringKeyValueService() {
         this(System::currentTimeMillis);
     }
 
     public ExpiringKeyValueService(LongSupplier nowMillis) {
-        this.store = new ExpiringKeyValueStore(nowMillis);
+        this(new ExpiringKeyValueStore(nowMillis));
+    }
+
+    public ExpiringKeyValueService(KeyValueStore store) {
+        this(store, VIRTUAL_THREADS);
     }
 
-    public ExpiringKeyValueService(ExpiringKeyValueStore store) {
+    /**
+     * @param refreshExecutor runs refresh-ahead reloads
+     */
+    public ExpiringKeyValueService(KeyValueStore store, Executor refreshExecutor) {
         this.store = Objects.requireNonNull(store);
+        this.refreshExecutor = Objects.requireNonNull(refreshExecutor, "refreshExecutor");
     }
 
     public void put(String key, String value, long ttlMillis) {
@@ -30,6 +90,22 @@ public final class ExpiringKeyValueService {
         store.putIfAbsent(key, value, ttlMillis);
     }
 
+    public boolean compareAndSet(String key, String expected, String newValue, long ttlMillis) {
+        return store.compareAndSet(key, expected, newValue, ttlMillis);
+    }
+
+    public String getAndSet(String key, String value, long ttlMillis) {
+        return store.getAndSet(key, value, ttlMillis);
+    }
+
+    public long incrementBy(String key, long delta, long ttlMillis) {
+        return store.incrementBy(key, delta, ttlMillis);
+    }
+
+    public boolean touch(String key, long ttlMillis) {
+        return store.touch(key, ttlMillis);
+    }
+
     public String get(String key) {
         return store.get(key);
     }
@@ -38,6 +114,130 @@ public final class ExpiringKeyValueService {
         return store.remove(key);
     }
 
+    /**
+     * Read-through get without refresh-ahead.
+     *
+     * @see #getOrLoad(String, Function, long, long)
+     */
+    public String getOrLoad(String key, Function<String, String> loader, long ttlMillis) {
+        return getOrLoad(key, loader, ttlMillis, 0);
+    }
+
+    /**
+     * Returns the live value, or loads, stores and returns it on a miss. Only
+     * one load per key runs at a time; concurrent callers share its outcome.
+     * A loader must not call getOrLoad for its own key.
+     *
+     * @param loader             computes the value; null means there is none
+     *                           and nothing is stored
+     * @param ttlMillis          TTL of loaded values
+     * @param refreshAheadMillis a hit with less TTL left than this starts a
+     *                           background reload; 0 disables refresh-ahead
+     * @throws IllegalArgumentException if ttlMillis is out of the store's
+     *                                  range, or refreshAheadMillis is
+     *                                  negative or not below ttlMillis
+     * @throws RuntimeException         whatever the loader threw
+     */
+    public String getOrLoad(String key, Function<String, String> loader, long ttlMillis,
+            long refreshAheadMillis) {
+        Objects.requireNonNull(loader, "loader");
+        ExpiringKeyValueStore.validateTtl(ttlMillis);
+        if (refreshAheadMillis < 0 || (refreshAheadMillis > 0 && refreshAheadMillis >= ttlMillis))
+            throw new IllegalArgumentException("Refresh-ahead must be >= 0 and below the TTL");
+
+        String value = store.get(key);
+        if (value != null) {
+            if (refreshAheadMillis > 0) {
+                long remaining = store.getRemainingTTL(key);
+                if (remaining >= 0 && remaining < refreshAheadMillis)
+                    refreshAsync(key, loader, ttlMillis);
+            }
+            return value;
+        }
+
+        CompletableFuture<String> mine = new CompletableFuture<>();
+        CompletableFuture<String> running = loading.putIfAbsent(key, mine);
+        if (running != null)
+            return await(running);
+
+        // A load may have finished between the miss and claiming the key
+        value = store.get(key);
+        if (value != null) {
+            loading.remove(key, mine);
+            mine.complete(value);
+            return value;
+        }
+        return load(key, loader, ttlMillis, mine);
+    }
+
+    /** Starts a reload unless one is already running for the key. */
+    private void refreshAsync(String key, Function<String, String> loader, long ttlMillis) {
+        CompletableFuture<String> mine = new CompletableFuture<>();
+        if (loading.putIfAbsent(key, mine) != null)
+            return;
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    load(key, loader, ttlMillis, mine);
+                } catch (RuntimeException e) {
+                    // The current value stays until it expires; the next miss loads again
+                    refreshFailures.increment();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            loading.remove(key, mine);
+            mine.complete(null);
+        }
+    }
+
+    /** Refresh-ahead reloads that threw, since startup. */
+    public long refreshFailures() {
+        return refreshFailures.sum();
+    }
+
+    private String load(String key, Function<String, String> loader, long ttlMillis,
+            CompletableFuture<String> mine) {
+        try {
+            String value = loader.apply(key);
+            if (value != null)
+                store.put(key, value, ttlMillis);
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, mine);
+        }
+    }
+
+    private static String await(CompletableFuture<String> load) {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            if (e.getCause() instanceof Error cause)
+                throw cause;
+            throw e;
+        }
+    }
+
+    public void putAll(List<PutEntry> entries) {
+        requireBatchSize(entries);
+        store.putAll(entries);
+    }
+
+    public List<SnapshotEntry> getAll(Collection<String> keys) {
+        requireBatchSize(keys);
+        return store.getAll(keys);
+    }
+
+    public int removeAll(Collection<String> keys) {
+        requireBatchSize(keys);
+        return store.removeAll(keys);
+    }
+
     public int size() {
         return store.size();
     }
@@ -49,4 +249,83 @@ public final class ExpiringKeyValueService {
     public Snapshot snapshot() {
         return store.snapshot();
     }
+
+    public SnapshotDelta snapshotDelta(long sinceVersion) {
+        return store.snapshotDelta(sinceVersion);
+    }
+
+    public SnapshotPage snapshotPage(String afterKey, int limit) {
+        requirePageSize(limit);
+        return store.snapshotPage(afterKey, limit);
+    }
+
+    public List<SnapshotEntry> range(String fromKey, String toKey, int limit) {
+        requirePageSize(limit);
+        return store.range(fromKey, toKey, limit);
+    }
+
+    public Iterator<SnapshotEntry> liveEntries(String afterKey) {
+        return store.liveEntries(afterKey);
+    }
+
+    public StoreStats stats() {
+        return store.stats();
+    }
+
+    /**
+     * Writes a binary dump of every live entry to out, in key order, without
+     * blocking writers.
+     *
+     * @return number of entries written
+     */
+    public long exportSnapshot(OutputStream out) throws IOException {
+        return BinarySnapshot.export(store.liveEntries(null), out);
+    }
+
+    /**
+     * Loads a binary dump produced by {@link #exportSnapshot}, overwriting
+     * keys that already exist. The stream is spooled to a temporary file so
+     * the import can run off a memory mapping; at most maxBytes are spooled.
+     *
+     * @throws IllegalArgumentException   if the dump is malformed
+     * @throws SnapshotTooLargeException if the stream exceeds maxBytes
+     */
+    public ImportResult importSnapshot(InputStream in, long maxBytes) throws IOException {
+        Path spool = Files.createTempFile("expiring-kv-import", ".ekvd");
+        try {
+            spool(in, spool, maxBytes);
+            return BinarySnapshot.importInto(spool, store);
+        } catch (CorruptSnapshotException e) {
+            throw new IllegalArgumentException("Invalid snapshot: " + e.getMessage(), e);
+        } finally {
+            Files.deleteIfExists(spool);
+        }
+    }
+
+    /** Copies in to the file, giving up as soon as more than maxBytes arrive. */
+    private static void spool(InputStream in, Path file, long maxBytes) throws IOException {
+        byte[] buffer = new byte[64 << 10];
+        long copied = 0;
+        try (OutputStream out = Files.newOutputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                copied += n;
+                if (copied > maxBytes)
+                    throw new SnapshotTooLargeException(maxBytes);
+                out.write(buffer, 0, n);
+            }
+        }
+    }
+
+    private static void requirePageSize(int limit) {
+        if (limit > MAX_PAGE_SIZE)
+            throw new IllegalArgumentException("Limit exceeds maximum of " + MAX_PAGE_SIZE);
+    }
+
+    private static void requireBatchSize(Collection<?> batch) {
+        if (batch == null)
+            throw new IllegalArgumentException("Batch must not be null");
+        if (batch.size() > MAX_BATCH_SIZE)
+            throw new IllegalArgumentException("Batch exceeds maximum of " + MAX_BATCH_SIZE + " entries");
+    }
 }
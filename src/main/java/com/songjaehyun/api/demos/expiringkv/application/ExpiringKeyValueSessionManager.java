@@ -0,0 +1,213 @@
+package com.songjaehyun.api.demos.expiringkv.application;
+
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore;
+import com.songjaehyun.api.demos.expiringkv.domain.StoreObserver;
+import com.songjaehyun.api.demos.expiringkv.domain.StoreOptions;
+import com.songjaehyun.api.shared.session.SessionRegistry;
+import com.songjaehyun.api.shared.session.SessionRemovalListener;
+
+/**
+ * One isolated {@link ExpiringKeyValueStore} per visitor session.
+ *
+ * <p>
+ * Design:
+ * - Stores are created on a session's first call, with the per-session
+ * {@link StoreOptions} (typically an entry and byte cap with LRU eviction), so
+ * one visitor can neither see nor crowd out another, and contention is per
+ * visitor instead of global.
+ * - Every call touches the {@link SessionRegistry}; when the registry drops a
+ * session (idle sweep or explicit removal) its store is released here.
+ * - Callers only reach a store inside {@link #withSession}, which holds a
+ * lease on it. A store is released only once no lease is held, so a store is
+ * never recycled under a request that is still using it. A session removed
+ * while leased is unmapped at once and its store released when the last
+ * lease ends.
+ * - Released stores are reset and parked in a bounded pool, and new sessions
+ * take from the pool first, reusing already grown tables.
+ * - The number of live sessions is capped; past it new sessions are refused
+ * with {@link SessionLimitExceededException}.
+ */
+public final class ExpiringKeyValueSessionManager implements SessionRemovalListener {
+
+    private final SessionRegistry registry;
+    private final LongSupplier nowMillis;
+    private final StoreOptions options;
+    private final int maxSessions;
+    private final int poolSize;
+    private final StoreObserver observer;
+
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final ArrayBlockingQueue<ExpiringKeyValueStore> pool;
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong recycled = new AtomicLong();
+    private final AtomicLong released = new AtomicLong();
+
+    /**
+     * @param options     options for every session's store; should be bounded
+     * @param maxSessions live sessions allowed at once; must be > 0
+     * @param poolSize    released stores kept for reuse; 0 disables pooling
+     */
+    public ExpiringKeyValueSessionManager(SessionRegistry registry, LongSupplier nowMillis,
+            StoreOptions options, int maxSessions, int poolSize) {
+        this(registry, nowMillis, options, maxSessions, poolSize, StoreObserver.NONE);
+    }
+
+    /**
+     * @param observer shared by every session's store, so lock waits and purges
+     *                 are reported in aggregate
+     */
+    public ExpiringKeyValueSessionManager(SessionRegistry registry, LongSupplier nowMillis,
+            StoreOptions options, int maxSessions, int poolSize, StoreObserver observer) {
+        this.registry = Objects.requireNonNull(registry, "registry");
+        this.nowMillis = Objects.requireNonNull(nowMillis, "nowMillis");
+        this.options = Objects.requireNonNull(options, "options");
+        this.observer = Objects.requireNonNull(observer, "observer");
+        if (maxSessions <= 0)
+            throw new IllegalArgumentException("Max sessions must be > 0.");
+        if (poolSize < 0)
+            throw new IllegalArgumentException("Pool size must be >= 0.");
+        this.maxSessions = maxSessions;
+        this.poolSize = poolSize;
+        this.pool = new ArrayBlockingQueue<>(Math.max(1, poolSize));
+        registry.addRemovalListener(this);
+    }
+
+    /**
+     * Runs operation against the session's store, creating it if needed.
+     *
+     * @throws IllegalArgumentException      if sessionId is blank
+     * @throws SessionLimitExceededException if the session is new and the
+     *                                       session cap is reached
+     */
+    public <T> T withSession(String sessionId, Function<ExpiringKeyValueService, T> operation) {
+        Session session = acquire(sessionId);
+        try {
+            return operation.apply(session.service);
+        } finally {
+            if (session.leases.decrementAndGet() == 0 && session.removed)
+                retireIfIdle(session);
+        }
+    }
+
+    public void runInSession(String sessionId, Consumer<ExpiringKeyValueService> operation) {
+        withSession(sessionId, service -> {
+            operation.accept(service);
+            return null;
+        });
+    }
+
+    /**
+     * Drops the session's store: right away if no request is using it,
+     * otherwise as soon as the last one finishes. The next call for the
+     * session starts from an empty store either way.
+     *
+     * @return true if the session had a store
+     */
+    public boolean release(String sessionId) {
+        Session session = sessions.remove(sessionId);
+        if (session == null)
+            return false;
+        // Set before the retire attempt, so a lease ending concurrently sees it
+        session.removed = true;
+        retireIfIdle(session);
+        return true;
+    }
+
+    @Override
+    public void onSessionRemoved(String sessionId) {
+        release(sessionId);
+    }
+
+    /**
+     * @param liveSessions sessions with a store
+     * @param pooledStores released stores waiting for reuse
+     * @param created      stores allocated so far
+     * @param recycled     sessions that got a pooled store instead
+     * @param released     stores released so far
+     */
+    public record SessionStats(int liveSessions, int pooledStores, long created, long recycled, long released) {
+    }
+
+    public SessionStats stats() {
+        return new SessionStats(sessions.size(), pool.size(), created.get(), recycled.get(), released.get());
+    }
+
+    private Session acquire(String sessionId) {
+        if (sessionId == null || sessionId.isBlank())
+            throw new IllegalArgumentException("Session id must not be blank");
+        registry.touch(sessionId);
+
+        while (true) {
+            Session session = sessions.get(sessionId);
+            if (session == null) {
+                // Checked before inserting, so the cap can be overshot by a few racing creators
+                if (sessions.size() >= maxSessions)
+                    throw new SessionLimitExceededException(maxSessions);
+                session = sessions.computeIfAbsent(sessionId, k -> new Session(takeStore()));
+            }
+            if (session.tryLease())
+                return session;
+            // Released between lookup and lease; it is already unmapped, so retry
+        }
+    }
+
+    private ExpiringKeyValueStore takeStore() {
+        ExpiringKeyValueStore pooled = pool.poll();
+        if (pooled != null) {
+            recycled.incrementAndGet();
+            return pooled;
+        }
+        created.incrementAndGet();
+        ExpiringKeyValueStore store = new ExpiringKeyValueStore(nowMillis, options);
+        store.setObserver(observer);
+        return store;
+    }
+
+    /** Releases the session's store unless a lease is held or it is already released. */
+    private void retireIfIdle(Session session) {
+        if (!session.leases.compareAndSet(0, RETIRED))
+            return;
+        recycle(session.store);
+        released.incrementAndGet();
+    }
+
+    private void recycle(ExpiringKeyValueStore store) {
+        if (poolSize == 0)
+            return;
+        store.reset();
+        pool.offer(store);
+    }
+
+    private static final int RETIRED = -1;
+
+    private static final class Session {
+        final ExpiringKeyValueStore store;
+        final ExpiringKeyValueService service;
+        // Requests currently using the store; RETIRED once released
+        final AtomicInteger leases = new AtomicInteger();
+        // Unmapped; the store goes once the leases reach 0
+        volatile boolean removed;
+
+        Session(ExpiringKeyValueStore store) {
+            this.store = store;
+            this.service = new ExpiringKeyValueService(store);
+        }
+
+        boolean tryLease() {
+            for (int n = leases.get(); n != RETIRED; n = leases.get()) {
+                if (leases.compareAndSet(n, n + 1))
+                    return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.songjaehyun.api.demos.expiringkv.application;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import com.songjaehyun.api.demos.expiringkv.domain.ChangeEvent;
+import com.songjaehyun.api.demos.expiringkv.domain.ChangeListener;
+import com.songjaehyun.api.demos.expiringkv.domain.KeyValueStore;
+import com.songjaehyun.api.demos.expiringkv.domain.VersionedEntry;
+
+/**
+ * Long-poll watches on single keys of a {@link KeyValueStore}.
+ *
+ * <p>
+ * Design:
+ * - A watch carries the version of the value the client already has, 0 for
+ * none. If the key's live value has another version, the watch completes at
+ * once with the current state; otherwise it waits for the key's next change.
+ * The watch is registered before the state is read, so no change can slip in
+ * between.
+ * - Waiting holds no thread: a watch is a CompletableFuture completed from the
+ * store's {@link ChangeListener} callback. The callback runs under the store
+ * lock, so completion is handed to another thread.
+ * - An entry whose TTL elapses during the wait is reported as expired at its
+ * deadline, whether or not the store has purged it yet. A watch that sees no
+ * change completes with null after its timeout.
+ * - Watches are capped; past the cap new ones are refused with
+ * IllegalStateException.
+ */
+public final class KeyWatchHub implements ChangeListener {
+
+    public static final long MAX_TIMEOUT_MILLIS = 60_000;
+
+    private final KeyValueStore store;
+    private final LongSupplier nowMillis;
+    private final int maxWatches;
+    private final Executor completions;
+    private final ConcurrentHashMap<String, Set<CompletableFuture<KeyChange>>> watches = new ConcurrentHashMap<>();
+    private final AtomicInteger active = new AtomicInteger();
+
+    /**
+     * @param maxWatches watches allowed to wait at once; must be > 0
+     */
+    public KeyWatchHub(KeyValueStore store, LongSupplier nowMillis, int maxWatches) {
+        this(store, nowMillis, maxWatches, Thread::startVirtualThread);
+    }
+
+    KeyWatchHub(KeyValueStore store, LongSupplier nowMillis, int maxWatches, Executor completions) {
+        this.store = Objects.requireNonNull(store, "store");
+        this.nowMillis = Objects.requireNonNull(nowMillis, "nowMillis");
+        this.completions = Objects.requireNonNull(completions, "completions");
+        if (maxWatches <= 0)
+            throw new IllegalArgumentException("Max watches must be > 0.");
+        this.maxWatches = maxWatches;
+        store.addChangeListener(this);
+    }
+
+    /**
+     * The key's state after a change.
+     *
+     * @param value        the live value; null after a removal or expiration
+     * @param expiryMillis absolute expiry of the value; 0 without one
+     * @param version      version of the value, to pass to the next watch; 0
+     *                     without one
+     */
+    public record KeyChange(String key, ChangeEvent.Type type, String value, long expiryMillis, long version) {
+    }
+
+    /**
+     * Completes with the key's state once it differs from the given version,
+     * or with null if it does not within timeoutMillis.
+     *
+     * @param version version of the value the caller has; 0 for none
+     * @throws IllegalArgumentException if the key is blank, the version is
+     *                                  negative or the timeout out of range
+     * @throws IllegalStateException    if the watch cap is reached
+     */
+    public CompletableFuture<KeyChange> watch(String key, long version, long timeoutMillis) {
+        if (key == null || key.isBlank())
+            throw new IllegalArgumentException("Key must not be null or blank");
+        if (version < 0)
+            throw new IllegalArgumentException("Version must be >= 0.");
+        if (timeoutMillis <= 0 || timeoutMillis > MAX_TIMEOUT_MILLIS)
+            throw new IllegalArgumentException("Timeout must be between 1 and " + MAX_TIMEOUT_MILLIS + " ms");
+        if (active.incrementAndGet() > maxWatches) {
+            active.decrementAndGet();
+            throw new IllegalStateException("Too many watches; try again later");
+        }
+
+        CompletableFuture<KeyChange> watch = new CompletableFuture<>();
+        watches.compute(key, (k, set) -> {
+            if (set == null)
+                set = ConcurrentHashMap.newKeySet();
+            set.add(watch);
+            return set;
+        });
+        watch.whenComplete((change, error) -> {
+            unregister(key, watch);
+            active.decrementAndGet();
+        });
+
+        VersionedEntry current = store.getVersioned(key);
+        if (versionOf(current) != version) {
+            watch.complete(stateOf(key, current));
+            return watch;
+        }
+
+        long wait = timeoutMillis;
+        boolean expiresFirst = false;
+        if (current != null) {
+            long ttl = current.expiryMillis() - nowMillis.getAsLong();
+            if (ttl < wait) {
+                wait = Math.max(0, ttl);
+                expiresFirst = true;
+            }
+        }
+        boolean checkExpiry = expiresFirst;
+        CompletableFuture.delayedExecutor(wait, TimeUnit.MILLISECONDS, completions)
+                .execute(() -> timedOut(key, version, watch, checkExpiry));
+        return watch;
+    }
+
+    public int activeWatches() {
+        return active.get();
+    }
+
+    @Override
+    public void onChange(ChangeEvent event) {
+        Set<CompletableFuture<KeyChange>> waiting = watches.remove(event.key());
+        if (waiting == null)
+            return;
+        boolean put = event.type() == ChangeEvent.Type.PUT;
+        KeyChange change = new KeyChange(event.key(), event.type(), event.value(), event.expiryMillis(),
+                put ? event.version() : 0);
+        completions.execute(() -> {
+            for (CompletableFuture<KeyChange> watch : waiting)
+                watch.complete(change);
+        });
+    }
+
+    private void timedOut(String key, long version, CompletableFuture<KeyChange> watch, boolean checkExpiry) {
+        if (watch.isDone())
+            return;
+        if (checkExpiry) {
+            VersionedEntry current = store.getVersioned(key);
+            if (versionOf(current) != version) {
+                watch.complete(current == null
+                        ? new KeyChange(key, ChangeEvent.Type.EXPIRE, null, 0, 0)
+                        : stateOf(key, current));
+                return;
+            }
+        }
+        watch.complete(null);
+    }
+
+    private void unregister(String key, CompletableFuture<KeyChange> watch) {
+        watches.computeIfPresent(key, (k, set) -> {
+            set.remove(watch);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    private static long versionOf(VersionedEntry entry) {
+        return entry == null ? 0 : entry.version();
+    }
+
+    /** Current state as a change; an absent key reads as removed. */
+    private static KeyChange stateOf(String key, VersionedEntry entry) {
+        if (entry == null)
+            return new KeyChange(key, ChangeEvent.Type.REMOVE, null, 0, 0);
+        return new KeyChange(key, ChangeEvent.Type.PUT, entry.value(), entry.expiryMillis(), entry.version());
+    }
+}
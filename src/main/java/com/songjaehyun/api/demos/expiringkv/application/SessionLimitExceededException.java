@@ -0,0 +1,14 @@
+package com.songjaehyun.api.demos.expiringkv.application;
+
+/**
+ * A new session was refused because the number of live sessions reached its
+ * cap; retrying once others have been released may succeed.
+ */
+public class SessionLimitExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public SessionLimitExceededException(int maxSessions) {
+        super("Too many active sessions (max " + maxSessions + "); try again later");
+    }
+}
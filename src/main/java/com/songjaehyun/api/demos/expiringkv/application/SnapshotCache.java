@@ -0,0 +1,96 @@
+package com.songjaehyun.api.demos.expiringkv.application;
+
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore.Snapshot;
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore.SnapshotEntry;
+import com.songjaehyun.api.demos.expiringkv.domain.KeyValueStore;
+
+/**
+ * The full snapshot of a store, serialized once and reused while its contents
+ * cannot have changed.
+ *
+ * <p>
+ * Design:
+ * - With the store version unchanged, the only way the snapshot's contents
+ * can change is an entry reaching its expiry. So a rendered snapshot stays
+ * valid until the version moves or the clock passes the earliest expiry in
+ * it, and polls in between cost two reads and no serialization.
+ * - The version is read before the snapshot is built. A write racing the build
+ * may or may not be in it, but it moves the version past the recorded one, so
+ * the next call rebuilds; a stale body is never served as current.
+ * - The ETag is the version plus that earliest expiry, which together fix the
+ * set of live entries, prefixed by an epoch so tags from an earlier process
+ * (whose versions restarted at 0) never match.
+ * - One caller rebuilds at a time; the others wait for its result rather than
+ * serializing the same snapshot again.
+ * - nowMillis and ttlRemainingMillis in a reused body are as of when it was
+ * built; expiryMillis is exact.
+ */
+public final class SnapshotCache {
+
+    private final KeyValueStore store;
+    private final LongSupplier nowMillis;
+    private final Function<Snapshot, byte[]> encoder;
+    private final String epoch;
+    private final ReentrantLock rebuild = new ReentrantLock();
+    private volatile Rendered current;
+
+    public SnapshotCache(KeyValueStore store, LongSupplier nowMillis, Function<Snapshot, byte[]> encoder) {
+        this.store = Objects.requireNonNull(store, "store");
+        this.nowMillis = Objects.requireNonNull(nowMillis, "nowMillis");
+        this.encoder = Objects.requireNonNull(encoder, "encoder");
+        this.epoch = Long.toString(nowMillis.getAsLong(), 36);
+    }
+
+    /**
+     * @param etag        quoted entity tag of body
+     * @param body        the encoded snapshot; must not be modified
+     * @param version     store version read before the snapshot was built
+     * @param validUntil  earliest expiry among the entries; Long.MAX_VALUE if
+     *                    there are none
+     */
+    public record Rendered(String etag, byte[] body, long version, long validUntil) {
+    }
+
+    /** The current snapshot, rebuilt only if it may have changed. */
+    public Rendered current() {
+        Rendered cached = current;
+        if (isFresh(cached))
+            return cached;
+
+        rebuild.lock();
+        try {
+            cached = current;
+            if (isFresh(cached))
+                return cached;
+            cached = render();
+            current = cached;
+            return cached;
+        } finally {
+            rebuild.unlock();
+        }
+    }
+
+    private boolean isFresh(Rendered cached) {
+        return cached != null
+                && cached.version() == store.version()
+                && nowMillis.getAsLong() < cached.validUntil();
+    }
+
+    private Rendered render() {
+        long version = store.version();
+        Snapshot snapshot = store.snapshot();
+
+        long validUntil = Long.MAX_VALUE;
+        for (SnapshotEntry entry : snapshot.entries())
+            validUntil = Math.min(validUntil, entry.expiryMillis());
+
+        String etag = "\"" + epoch + "-" + version + "-"
+                + (validUntil == Long.MAX_VALUE ? "0" : Long.toString(validUntil, 36)) + "\"";
+        return new Rendered(etag, encoder.apply(snapshot), version, validUntil);
+    }
+}
@@ -0,0 +1,14 @@
+package com.songjaehyun.api.demos.expiringkv.application;
+
+/**
+ * A snapshot import whose body exceeded the configured byte limit; nothing
+ * was imported.
+ */
+public class SnapshotTooLargeException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public SnapshotTooLargeException(long maxBytes) {
+        super("Snapshot exceeds maximum of " + maxBytes + " bytes");
+    }
+}
@@ -0,0 +1,17 @@
+package com.songjaehyun.api.demos.expiringkv.domain;
+
+/**
+ * One change to a store, as seen by a {@link ChangeListener}.
+ *
+ * @param value        the new value for PUT; null otherwise
+ * @param expiryMillis absolute expiry for PUT; 0 otherwise
+ * @param version      store version right after the change
+ */
+public record ChangeEvent(Type type, String key, String value, long expiryMillis, long version) {
+
+    public enum Type {
+        PUT,
+        REMOVE,
+        EXPIRE
+    }
+}
@@ -0,0 +1,92 @@
+package com.songjaehyun.api.demos.expiringkv.domain;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Bounded ring of the most recent changes of one store segment: the version
+ * each change produced and the key it touched. Backs delta snapshots.
+ *
+ * <p>
+ * Design:
+ * - Only keys are kept. A delta reports the changed keys' state when it is
+ * read, so the journal costs two array slots per change, never a value.
+ * - Changes are recorded under the owning lock as their versions are assigned,
+ * so versions in the ring ascend and a delta finds its start by binary search:
+ * O(log n + changes).
+ * - When full, the oldest change is overwritten and its version becomes the
+ * truncation point; deltas from before it can no longer be answered.
+ * - Not thread-safe; guarded by the owning store's lock.
+ */
+final class ChangeJournal {
+
+    private final long[] versions;
+    private final String[] keys;
+    // Index of the oldest change; the ring holds size changes from there
+    private int head;
+    private int size;
+    // Changes at or below this version may be missing
+    private long truncatedThrough;
+
+    /**
+     * @param capacity changes retained; must be > 0
+     * @param version  current store version; earlier changes are not in the
+     *                 journal
+     */
+    ChangeJournal(int capacity, long version) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Journal capacity must be > 0.");
+        this.versions = new long[capacity];
+        this.keys = new String[capacity];
+        this.truncatedThrough = version;
+    }
+
+    void record(long version, String key) {
+        int tail = (head + size) % versions.length;
+        if (size == versions.length) {
+            truncatedThrough = versions[head];
+            head = (head + 1) % versions.length;
+        } else {
+            size++;
+        }
+        versions[tail] = version;
+        keys[tail] = key;
+    }
+
+    /** Forgets every change, e.g. after the store was emptied at this version. */
+    void clear(long version) {
+        Arrays.fill(keys, null);
+        head = 0;
+        size = 0;
+        truncatedThrough = version;
+    }
+
+    /** Whether every change after sinceVersion is still in the journal. */
+    boolean covers(long sinceVersion) {
+        return sinceVersion >= truncatedThrough;
+    }
+
+    /** Adds the keys changed at versions in (sinceVersion, upToVersion]. */
+    void keysChanged(long sinceVersion, long upToVersion, Set<String> into) {
+        for (int i = firstAfter(sinceVersion); i < size; i++) {
+            int at = (head + i) % versions.length;
+            if (versions[at] > upToVersion)
+                return;
+            into.add(keys[at]);
+        }
+    }
+
+    /** Position, counted from head, of the first change above the version. */
+    private int firstAfter(long version) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (versions[(head + mid) % versions.length] <= version)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+}
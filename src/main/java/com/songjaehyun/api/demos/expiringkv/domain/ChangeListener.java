@@ -0,0 +1,21 @@
+package com.songjaehyun.api.demos.expiringkv.domain;
+
+/**
+ * Observer of every change to a store's contents, expirations included, each
+ * tagged with the store version it produced.
+ *
+ * <p>
+ * Design:
+ * - Called while the owning segment's lock is held, right after the change,
+ * so for any one key events arrive in version order. Implementations must be
+ * fast and must never call back into the store; slow work belongs on another
+ * thread.
+ * - Unlike {@link MutationListener}, expirations are reported, at the moment
+ * the store purges the entry (inline, through a reaper, or on a locked read)
+ * rather than the instant its TTL elapses.
+ * - Capacity evictions are reported as removals.
+ */
+public interface ChangeListener {
+
+    void onChange(ChangeEvent event);
+}
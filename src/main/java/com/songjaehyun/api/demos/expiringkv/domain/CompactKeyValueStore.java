@@ -0,0 +1,1212 @@
+package com.songjaehyun.api.demos.expiringkv.domain;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore.Snapshot;
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore.SnapshotDelta;
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore.SnapshotEntry;
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore.SnapshotPage;
+import com.songjaehyun.api.demos.expiringkv.domain.StoreOptions.Eviction;
+
+/**
+ * Expiring key-value store that keeps entries out of the object graph.
+ *
+ * <p>
+ * Design:
+ * - Keys and values are stored back to back as UTF-8 in large byte[] pages.
+ * An entry is a slot number into parallel primitive arrays (location, key and
+ * value lengths, hash, expiry, version), so a live entry costs its encoded
+ * bytes plus about 60 bytes of array slots, instead of a map node, an entry record, two
+ * Strings and an expiry node. The GC sees a few reference-free arrays instead
+ * of millions of small objects.
+ * - Lookup goes through an open-addressing table of slot numbers with linear
+ * probing and backward-shift deletion, so removals leave no tombstones.
+ * - Expiry is a binary min-heap of slot numbers ordered by the expiry array,
+ * purged lazily by operations like {@link ExpiringKeyValueStore}; the
+ * expiryIndex option does not apply.
+ * - Overwrites and removals leave dead bytes in the pages. Once they outweigh
+ * the live bytes, live records are copied into fresh pages under the lock.
+ * - Pages move during that copy, so every operation, reads included, takes
+ * the lock; lockFreeReads is not supported and the application refuses to
+ * start with it.
+ * - Capacity bounds are enforced in LRU order through primitive prev/next
+ * links; weight is the encoded size of key plus value. TINY_LFU is not
+ * supported.
+ * - There is no sorted key index to walk: ordered reads (snapshots, pages,
+ * ranges) scan every slot and select the keys they need, O(n log k) for k
+ * results. Suited to large stores read mostly by key. The scan takes the lock
+ * for SCAN_CHUNK slots at a time and the selected keys are sorted and then
+ * resolved outside it, so an ordered read never stalls writers for more than
+ * one chunk. Like the other stores' snapshots these reads are weakly
+ * consistent: a key written during the scan may be missed, and a key removed
+ * before it is resolved is left out.
+ * - The optional change journal holds the changed keys as Strings, so its
+ * capacity adds to the object graph what the pages keep out of it.
+ */
+public final class CompactKeyValueStore implements KeyValueStore {
+
+    static final int MAX_PAGE_BYTES = 1 << 20;
+    private static final int FIRST_PAGE_BYTES = 4 << 10;
+    // Dead bytes tolerated regardless of how little is live
+    private static final long MIN_COMPACTION_BYTES = 64 << 10;
+    private static final int INITIAL_SLOTS = 16;
+    private static final int NO_SLOT = -1;
+    // Slots scanned, or keys resolved, per lock hold by an ordered read
+    static final int SCAN_CHUNK = 1024;
+
+    private final LongSupplier nowMillis;
+    private final StoreOptions options;
+    private final boolean bounded;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // ---- slot columns; all guarded by lock and grown together ----
+    private long[] expiry = new long[INITIAL_SLOTS];
+    // Store version that wrote the slot's current value
+    private long[] entryVersion = new long[INITIAL_SLOTS];
+    // page index << 32 | offset of the key; the value follows it
+    private long[] location = new long[INITIAL_SLOTS];
+    private int[] keyBytes = new int[INITIAL_SLOTS];
+    private int[] valueBytes = new int[INITIAL_SLOTS];
+    private int[] hash = new int[INITIAL_SLOTS];
+    // Position in the expiry heap; NO_SLOT marks a free slot
+    private int[] heapIndex = new int[INITIAL_SLOTS];
+    // LRU links; null when the store is unbounded
+    private int[] lruPrev;
+    private int[] lruNext;
+    private int lruHead = NO_SLOT;
+    private int lruTail = NO_SLOT;
+    private int slotsUsed;
+    private int[] freeSlots = new int[INITIAL_SLOTS];
+    private int freeCount;
+
+    // slot + 1 per bucket, 0 when empty; load factor at most 1/2
+    private int[] table = new int[INITIAL_SLOTS * 2];
+    private int size;
+
+    private int[] heap = new int[INITIAL_SLOTS];
+    private int heapSize;
+
+    private ArrayList<byte[]> pages = new ArrayList<>();
+    private int currentPage = NO_SLOT;
+    private int pageOffset;
+    private long liveBytes;
+    private long deadBytes;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+    // Swapped for a longer copy under the lock when a listener is added, so
+    // the write path can iterate them without copying
+    private volatile MutationListener[] listeners = new MutationListener[0];
+    private volatile ChangeListener[] changeListeners = new ChangeListener[0];
+    private volatile StoreObserver observer = StoreObserver.NONE;
+    // Advanced under the lock, read without it
+    private final AtomicLong versions = new AtomicLong();
+    // null when options.journalCapacity() is 0
+    private final ChangeJournal journal;
+
+    public CompactKeyValueStore() {
+        this(System::currentTimeMillis);
+    }
+
+    public CompactKeyValueStore(LongSupplier nowMillis) {
+        this(nowMillis, StoreOptions.defaults());
+    }
+
+    /**
+     * @throws IllegalArgumentException if the options are bounded with an
+     *                                  eviction policy other than LRU
+     */
+    public CompactKeyValueStore(LongSupplier nowMillis, StoreOptions options) {
+        this.nowMillis = Objects.requireNonNull(nowMillis, "nowMillis");
+        this.options = Objects.requireNonNull(options, "options");
+        this.bounded = options.bounded();
+        if (bounded && options.eviction() != Eviction.LRU)
+            throw new IllegalArgumentException("Compact store supports LRU eviction only");
+        this.journal = options.journalCapacity() == 0 ? null : new ChangeJournal(options.journalCapacity(), 0);
+        Arrays.fill(heapIndex, NO_SLOT);
+        if (bounded) {
+            lruPrev = new int[INITIAL_SLOTS];
+            lruNext = new int[INITIAL_SLOTS];
+        }
+    }
+
+    @Override
+    public void put(String key, String value, long ttlMillis) {
+        Encoded e = encodePut(key, value);
+        long ttl = ExpiringKeyValueStore.validateTtl(ttlMillis);
+        long now = nowMillis.getAsLong();
+
+        acquire();
+        try {
+            purgeExpired(now);
+            insert(e, value, now + ttl);
+            compactIfNeeded();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void putIfAbsent(String key, String value, long ttlMillis) {
+        Encoded e = encodePut(key, value);
+        long ttl = ExpiringKeyValueStore.validateTtl(ttlMillis);
+        long now = nowMillis.getAsLong();
+
+        acquire();
+        try {
+            purgeExpired(now);
+            int idx = probe(e.key, e.hash);
+            if (idx >= 0 && expiry[table[idx] - 1] > now)
+                return;
+            insert(e, value, now + ttl);
+            compactIfNeeded();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void putAt(String key, String value, long expiryMillis) {
+        Encoded e = encodePut(key, value);
+        long now = nowMillis.getAsLong();
+        ExpiringKeyValueStore.validateTtl(expiryMillis - now);
+
+        acquire();
+        try {
+            purgeExpired(now);
+            insert(e, value, expiryMillis);
+            compactIfNeeded();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean compareAndSet(String key, String expected, String newValue, long ttlMillis) {
+        Encoded e = encodePut(key, newValue);
+        long ttl = ExpiringKeyValueStore.validateTtl(ttlMillis);
+        long now = nowMillis.getAsLong();
+
+        acquire();
+        try {
+            purgeExpired(now);
+            int slot = liveSlot(e.key, e.hash, now);
+            String current = slot == NO_SLOT ? null : decodeValue(slot);
+            if (!Objects.equals(current, expected))
+                return false;
+            insert(e, newValue, now + ttl);
+            compactIfNeeded();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String getAndSet(String key, String value, long ttlMillis) {
+        Encoded e = encodePut(key, value);
+        long ttl = ExpiringKeyValueStore.validateTtl(ttlMillis);
+        long now = nowMillis.getAsLong();
+
+        acquire();
+        try {
+            purgeExpired(now);
+            int slot = liveSlot(e.key, e.hash, now);
+            String previous = slot == NO_SLOT ? null : decodeValue(slot);
+            insert(e, value, now + ttl);
+            compactIfNeeded();
+            return previous;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long incrementBy(String key, long delta, long ttlMillis) {
+        ExpiringKeyValueStore.requireKey(key);
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        int h = hash(key);
+        long ttl = ExpiringKeyValueStore.validateTtl(ttlMillis);
+        long now = nowMillis.getAsLong();
+
+        acquire();
+        try {
+            purgeExpired(now);
+            int slot = liveSlot(k, h, now);
+            long next = ExpiringKeyValueStore.increment(key, slot == NO_SLOT ? null : decodeValue(slot), delta);
+            long expiryMillis = slot == NO_SLOT ? now + ttl : expiry[slot];
+            String value = Long.toString(next);
+            insert(encodePut(key, value), value, expiryMillis);
+            compactIfNeeded();
+            return next;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Updates the expiry in place; the record itself does not move. */
+    @Override
+    public boolean touch(String key, long ttlMillis) {
+        ExpiringKeyValueStore.requireKey(key);
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        int h = hash(key);
+        long ttl = ExpiringKeyValueStore.validateTtl(ttlMillis);
+        long now = nowMillis.getAsLong();
+
+        acquire();
+        try {
+            purgeExpired(now);
+            int slot = liveSlot(k, h, now);
+            if (slot == NO_SLOT)
+                return false;
+            expiry[slot] = now + ttl;
+            entryVersion[slot] = versions.incrementAndGet();
+            heapUpdate(slot);
+            if (bounded)
+                moveToTail(slot);
+            if (listeners.length > 0 || changesObserved()) {
+                String value = decodeValue(slot);
+                for (MutationListener l : listeners)
+                    l.onPut(key, value, expiry[slot]);
+                publish(ChangeEvent.Type.PUT, key, value, expiry[slot], entryVersion[slot]);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String get(String key) {
+        ExpiringKeyValueStore.requireKey(key);
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        int h = hash(key);
+        long now = nowMillis.getAsLong();
+
+        acquire();
+        try {
+            purgeExpired(now);
+            int slot = lookup(k, h, now);
+            return slot == NO_SLOT ? null : decodeValue(slot);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(String key) {
+        ExpiringKeyValueStore.requireKey(key);
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        int h = hash(key);
+        long now = nowMillis.getAsLong();
+
+        acquire();
+        try {
+            purgeExpired(now);
+            int idx = probe(k, h);
+            if (idx < 0)
+                return false;
+            int slot = table[idx] - 1;
+            boolean live = expiry[slot] > now;
+            removeSlot(slot, idx);
+            notifyRemove(key);
+            compactIfNeeded();
+            return live;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of live entries. Drains the whole expiry backlog so the count is
+     * exact; not meant for hot paths.
+     */
+    @Override
+    public int size() {
+        long now = nowMillis.getAsLong();
+
+        acquire();
+        try {
+            purgeExpired(now, Integer.MAX_VALUE);
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getRemainingTTL(String key) {
+        ExpiringKeyValueStore.requireKey(key);
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        int h = hash(key);
+        long now = nowMillis.getAsLong();
+
+        acquire();
+        try {
+            purgeExpired(now);
+            int idx = probe(k, h);
+            if (idx < 0)
+                return -1;
+            long remaining = expiry[table[idx] - 1] - now;
+            return remaining > 0 ? remaining : -1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Snapshot snapshot() {
+        long now = nowMillis.getAsLong();
+
+        purgeUnderLock(now);
+        List<String> keys = selectKeys(null, false, null, Integer.MAX_VALUE, now);
+        return new Snapshot(now, Collections.unmodifiableList(resolve(keys, now)));
+    }
+
+    /**
+     * Purges, then looks up each journaled key; a full snapshot if the journal
+     * cannot answer.
+     */
+    @Override
+    public SnapshotDelta snapshotDelta(long sinceVersion) {
+        ExpiringKeyValueStore.requireVersion(sinceVersion);
+        long now = nowMillis.getAsLong();
+        long upTo;
+
+        acquire();
+        try {
+            // Expirations reach the journal only when purged, so drain them all
+            purgeExpired(now, Integer.MAX_VALUE);
+            upTo = versions.get();
+            if (sinceVersion <= upTo && journal != null && journal.covers(sinceVersion)) {
+                Set<String> keys = new HashSet<>();
+                journal.keysChanged(sinceVersion, upTo, keys);
+                List<SnapshotEntry> upserted = new ArrayList<>();
+                List<String> removed = new ArrayList<>();
+                for (String key : keys) {
+                    int slot = liveSlot(key.getBytes(StandardCharsets.UTF_8), hash(key), now);
+                    if (slot == NO_SLOT)
+                        removed.add(key);
+                    else
+                        upserted.add(entryAt(key, slot, now));
+                }
+                return SnapshotDelta.changes(now, sinceVersion, upTo, upserted, removed);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return SnapshotDelta.full(sinceVersion, upTo, snapshot());
+    }
+
+    /**
+     * One page of live entries with keys strictly greater than afterKey, in key
+     * order; O(n log limit), since every slot is considered. The next cursor
+     * comes from the selected keys, so a key removed before it is resolved
+     * shortens the page without ending the iteration early.
+     */
+    @Override
+    public SnapshotPage snapshotPage(String afterKey, int limit) {
+        ExpiringKeyValueStore.requireLimit(limit);
+        long now = nowMillis.getAsLong();
+
+        purgeUnderLock(now);
+        // One more than asked, to know whether a next page exists
+        int wanted = limit == Integer.MAX_VALUE ? limit : limit + 1;
+        List<String> keys = selectKeys(afterKey, false, null, wanted, now);
+        String nextCursor = null;
+        if (keys.size() > limit) {
+            keys = keys.subList(0, limit);
+            nextCursor = keys.get(limit - 1);
+        }
+        return new SnapshotPage(now, Collections.unmodifiableList(resolve(keys, now)), nextCursor);
+    }
+
+    /**
+     * Sorts the live keys after afterKey once, then resolves each key under the
+     * lock as the iteration reaches it; keys removed or expired by then are
+     * skipped.
+     */
+    @Override
+    public Iterator<SnapshotEntry> liveEntries(String afterKey) {
+        long now = nowMillis.getAsLong();
+        List<String> keys = selectKeys(afterKey, false, null, Integer.MAX_VALUE, now);
+        return new LiveEntryIterator(keys.iterator(), now);
+    }
+
+    @Override
+    public List<SnapshotEntry> range(String fromKey, String toKey, int limit) {
+        ExpiringKeyValueStore.requireLimit(limit);
+        long now = nowMillis.getAsLong();
+
+        purgeUnderLock(now);
+        return resolve(selectKeys(fromKey, true, toKey, limit, now), now);
+    }
+
+    /**
+     * Puts every entry with one lock acquisition. All entries are validated
+     * and encoded before any is written.
+     */
+    @Override
+    public void putAll(List<PutEntry> entries) {
+        Objects.requireNonNull(entries, "entries");
+        Encoded[] encoded = new Encoded[entries.size()];
+        for (int i = 0; i < encoded.length; i++) {
+            PutEntry e = entries.get(i);
+            if (e == null)
+                throw new IllegalArgumentException("Entry must not be null");
+            encoded[i] = encodePut(e.key(), e.value());
+            ExpiringKeyValueStore.validateTtl(e.ttlMillis());
+        }
+        long now = nowMillis.getAsLong();
+
+        acquire();
+        try {
+            purgeExpired(now);
+            for (int i = 0; i < encoded.length; i++)
+                insert(encoded[i], entries.get(i).value(), now + entries.get(i).ttlMillis());
+            compactIfNeeded();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<SnapshotEntry> getAll(Collection<String> keys) {
+        Objects.requireNonNull(keys, "keys");
+        for (String key : keys)
+            ExpiringKeyValueStore.requireKey(key);
+        long now = nowMillis.getAsLong();
+        List<SnapshotEntry> found = new ArrayList<>(keys.size());
+
+        acquire();
+        try {
+            purgeExpired(now);
+            for (String key : keys) {
+                int slot = lookup(key.getBytes(StandardCharsets.UTF_8), hash(key), now);
+                if (slot != NO_SLOT)
+                    found.add(new SnapshotEntry(key, decodeValue(slot), expiry[slot], expiry[slot] - now));
+            }
+            return found;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int removeAll(Collection<String> keys) {
+        Objects.requireNonNull(keys, "keys");
+        for (String key : keys)
+            ExpiringKeyValueStore.requireKey(key);
+        long now = nowMillis.getAsLong();
+
+        acquire();
+        try {
+            purgeExpired(now);
+            int removed = 0;
+            for (String key : keys) {
+                int idx = probe(key.getBytes(StandardCharsets.UTF_8), hash(key));
+                if (idx < 0)
+                    continue;
+                int slot = table[idx] - 1;
+                if (expiry[slot] > now)
+                    removed++;
+                removeSlot(slot, idx);
+                notifyRemove(key);
+            }
+            compactIfNeeded();
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int reapExpired(int maxEntries) {
+        long now = nowMillis.getAsLong();
+
+        acquire();
+        try {
+            int purged = purgeExpired(now, maxEntries);
+            compactIfNeeded();
+            return purged;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public StoreStats stats() {
+        acquire();
+        try {
+            return new StoreStats(size, heapSize, liveBytes, hits, misses, evictions, expirations);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long version() {
+        return versions.get();
+    }
+
+    @Override
+    public VersionedEntry getVersioned(String key) {
+        ExpiringKeyValueStore.requireKey(key);
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        int h = hash(key);
+        long now = nowMillis.getAsLong();
+
+        acquire();
+        try {
+            purgeExpired(now);
+            int slot = liveSlot(k, h, now);
+            return slot == NO_SLOT ? null
+                    : new VersionedEntry(key, decodeValue(slot), expiry[slot], entryVersion[slot]);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void addChangeListener(ChangeListener listener) {
+        Objects.requireNonNull(listener, "listener");
+        acquire();
+        try {
+            ChangeListener[] current = changeListeners;
+            ChangeListener[] next = Arrays.copyOf(current, current.length + 1);
+            next[current.length] = listener;
+            changeListeners = next;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Approximate heap retained by the store: pages plus slot, table and heap
+     * arrays. Pages include dead bytes not yet compacted away.
+     */
+    public long footprintBytes() {
+        acquire();
+        try {
+            long bytes = 0;
+            for (byte[] page : pages)
+                bytes += page.length;
+            int slotBytes = 8 + 8 + 8 + 4 + 4 + 4 + 4 + 4 + (bounded ? 8 : 0);
+            return bytes + (long) expiry.length * slotBytes + 4L * (table.length + heap.length);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void addMutationListener(MutationListener listener) {
+        Objects.requireNonNull(listener, "listener");
+        acquire();
+        try {
+            MutationListener[] current = listeners;
+            MutationListener[] next = Arrays.copyOf(current, current.length + 1);
+            next[current.length] = listener;
+            listeners = next;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void setObserver(StoreObserver observer) {
+        this.observer = Objects.requireNonNull(observer, "observer");
+    }
+
+    // ---- write path (caller holds the lock) ----
+
+    private void insert(Encoded e, String value, long expiryMillis) {
+        ensureTableCapacity();
+        int idx = probe(e.key, e.hash);
+        int slot;
+        if (idx >= 0) {
+            slot = table[idx] - 1;
+            release(slot);
+            expiry[slot] = expiryMillis;
+            heapUpdate(slot);
+            if (bounded)
+                moveToTail(slot);
+        } else {
+            slot = allocateSlot();
+            table[~idx] = slot + 1;
+            size++;
+            expiry[slot] = expiryMillis;
+            heapPush(slot);
+            if (bounded)
+                linkLast(slot);
+        }
+        int len = e.key.length + e.value.length;
+        long loc = allocate(len);
+        byte[] page = pages.get(pageOf(loc));
+        int off = offsetOf(loc);
+        System.arraycopy(e.key, 0, page, off, e.key.length);
+        System.arraycopy(e.value, 0, page, off + e.key.length, e.value.length);
+        location[slot] = loc;
+        keyBytes[slot] = e.key.length;
+        valueBytes[slot] = e.value.length;
+        hash[slot] = e.hash;
+        entryVersion[slot] = versions.incrementAndGet();
+        liveBytes += len;
+
+        for (MutationListener l : listeners)
+            l.onPut(e.keyString, value, expiryMillis);
+        publish(ChangeEvent.Type.PUT, e.keyString, value, expiryMillis, entryVersion[slot]);
+        if (bounded)
+            evictIfNeeded();
+    }
+
+    private void evictIfNeeded() {
+        while (size > options.maxEntries() || liveBytes > options.maxWeightBytes()) {
+            int victim = lruHead;
+            if (victim == NO_SLOT)
+                return;
+            boolean observed = listeners.length > 0 || changesObserved();
+            String key = observed ? decodeKey(victim) : null;
+            removeSlot(victim, tableIndexOf(victim));
+            evictions++;
+            if (observed)
+                notifyRemove(key);
+            else
+                versions.incrementAndGet();
+        }
+    }
+
+    /** Unlinks the slot from the table, heap and LRU list and frees it. */
+    private void removeSlot(int slot, int idx) {
+        deleteAt(idx);
+        heapRemove(slot);
+        if (bounded)
+            unlink(slot);
+        release(slot);
+        freeSlots[freeCount++] = slot;
+        size--;
+    }
+
+    /** Marks the slot's record dead. */
+    private void release(int slot) {
+        int len = keyBytes[slot] + valueBytes[slot];
+        liveBytes -= len;
+        deadBytes += len;
+    }
+
+    private void notifyRemove(String key) {
+        for (MutationListener l : listeners)
+            l.onRemove(key);
+        publish(ChangeEvent.Type.REMOVE, key, null, 0, versions.incrementAndGet());
+    }
+
+    /** Drops an expired slot and reports the expiration. */
+    private void expire(int slot, int idx) {
+        String key = changesObserved() ? decodeKey(slot) : null;
+        removeSlot(slot, idx);
+        expirations++;
+        long version = versions.incrementAndGet();
+        if (key != null)
+            publish(ChangeEvent.Type.EXPIRE, key, null, 0, version);
+    }
+
+    /** Whether changes need their keys decoded, for listeners or the journal. */
+    private boolean changesObserved() {
+        return changeListeners.length > 0 || journal != null;
+    }
+
+    /** Journals the change and tells the change listeners. */
+    private void publish(ChangeEvent.Type type, String key, String value, long expiryMillis, long version) {
+        if (journal != null)
+            journal.record(version, key);
+        ChangeListener[] current = changeListeners;
+        if (current.length == 0)
+            return;
+        ChangeEvent event = new ChangeEvent(type, key, value, expiryMillis, version);
+        for (ChangeListener l : current)
+            l.onChange(event);
+    }
+
+    /** Compacts the pages once dead bytes outweigh live ones. */
+    private void compactIfNeeded() {
+        if (deadBytes < MIN_COMPACTION_BYTES || deadBytes < liveBytes)
+            return;
+        List<byte[]> old = pages;
+        pages = new ArrayList<>();
+        currentPage = NO_SLOT;
+        pageOffset = 0;
+        deadBytes = 0;
+        for (int s = 0; s < slotsUsed; s++) {
+            if (heapIndex[s] == NO_SLOT)
+                continue;
+            int len = keyBytes[s] + valueBytes[s];
+            long from = location[s];
+            long to = allocate(len);
+            System.arraycopy(old.get(pageOf(from)), offsetOf(from), pages.get(pageOf(to)), offsetOf(to), len);
+            location[s] = to;
+        }
+    }
+
+    /**
+     * Reserves len bytes, in the current page if they fit. Pages start small
+     * and double up to MAX_PAGE_BYTES; a larger record gets a page of its own.
+     */
+    private long allocate(int len) {
+        if (currentPage != NO_SLOT && pageOffset + len <= pages.get(currentPage).length) {
+            long loc = locationOf(currentPage, pageOffset);
+            pageOffset += len;
+            return loc;
+        }
+        if (len > MAX_PAGE_BYTES) {
+            pages.add(new byte[len]);
+            return locationOf(pages.size() - 1, 0);
+        }
+        if (currentPage != NO_SLOT)
+            deadBytes += pages.get(currentPage).length - pageOffset;
+        int pageBytes = currentPage == NO_SLOT ? FIRST_PAGE_BYTES
+                : Math.min(MAX_PAGE_BYTES, pages.get(currentPage).length * 2);
+        pages.add(new byte[Math.max(pageBytes, len)]);
+        currentPage = pages.size() - 1;
+        pageOffset = len;
+        return locationOf(currentPage, 0);
+    }
+
+    private int allocateSlot() {
+        if (freeCount > 0)
+            return freeSlots[--freeCount];
+        if (slotsUsed == expiry.length)
+            growSlots(expiry.length * 2);
+        return slotsUsed++;
+    }
+
+    private void growSlots(int capacity) {
+        expiry = Arrays.copyOf(expiry, capacity);
+        entryVersion = Arrays.copyOf(entryVersion, capacity);
+        location = Arrays.copyOf(location, capacity);
+        keyBytes = Arrays.copyOf(keyBytes, capacity);
+        valueBytes = Arrays.copyOf(valueBytes, capacity);
+        hash = Arrays.copyOf(hash, capacity);
+        int old = heapIndex.length;
+        heapIndex = Arrays.copyOf(heapIndex, capacity);
+        Arrays.fill(heapIndex, old, capacity, NO_SLOT);
+        freeSlots = Arrays.copyOf(freeSlots, capacity);
+        heap = Arrays.copyOf(heap, capacity);
+        if (bounded) {
+            lruPrev = Arrays.copyOf(lruPrev, capacity);
+            lruNext = Arrays.copyOf(lruNext, capacity);
+        }
+    }
+
+    // ---- read path (caller holds the lock) ----
+
+    /**
+     * Live slot for the key, or NO_SLOT; removes an expired entry it runs
+     * into and records the hit or miss.
+     */
+    private int lookup(byte[] k, int h, long now) {
+        int idx = probe(k, h);
+        if (idx < 0) {
+            misses++;
+            return NO_SLOT;
+        }
+        int slot = table[idx] - 1;
+        if (expiry[slot] <= now) {
+            expire(slot, idx);
+            misses++;
+            return NO_SLOT;
+        }
+        hits++;
+        if (bounded)
+            moveToTail(slot);
+        return slot;
+    }
+
+    /** Live slot for the key, or NO_SLOT; no hit/miss accounting. */
+    private int liveSlot(byte[] k, int h, long now) {
+        int idx = probe(k, h);
+        if (idx < 0)
+            return NO_SLOT;
+        int slot = table[idx] - 1;
+        return expiry[slot] > now ? slot : NO_SLOT;
+    }
+
+    private SnapshotEntry entryAt(String key, int slot, long now) {
+        return new SnapshotEntry(key, decodeValue(slot), expiry[slot], expiry[slot] - now);
+    }
+
+    private String decodeKey(int slot) {
+        long loc = location[slot];
+        return new String(pages.get(pageOf(loc)), offsetOf(loc), keyBytes[slot], StandardCharsets.UTF_8);
+    }
+
+    private String decodeValue(int slot) {
+        long loc = location[slot];
+        return new String(pages.get(pageOf(loc)), offsetOf(loc) + keyBytes[slot], valueBytes[slot],
+                StandardCharsets.UTF_8);
+    }
+
+    // ---- ordered reads (caller does not hold the lock) ----
+
+    private void purgeUnderLock(long now) {
+        acquire();
+        try {
+            purgeExpired(now);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Live keys within the bounds, smallest first, at most max of them. Scans
+     * SCAN_CHUNK slots per lock hold and sorts after releasing it.
+     *
+     * @param lower null for unbounded
+     * @param upper exclusive; null for unbounded
+     */
+    private List<String> selectKeys(String lower, boolean lowerInclusive, String upper, int max, long now) {
+        // The smallest keys seen so far, at most max, unless everything is wanted
+        boolean all = max == Integer.MAX_VALUE;
+        List<String> everything = all ? new ArrayList<>() : null;
+        TreeSet<String> smallest = all ? null : new TreeSet<>();
+
+        for (int from = 0;; from += SCAN_CHUNK) {
+            acquire();
+            try {
+                if (from >= slotsUsed)
+                    break;
+                int to = Math.min(slotsUsed, from + SCAN_CHUNK);
+                for (int s = from; s < to; s++) {
+                    if (heapIndex[s] == NO_SLOT || expiry[s] <= now)
+                        continue;
+                    String key = decodeKey(s);
+                    if (lower != null) {
+                        int c = key.compareTo(lower);
+                        if (c < 0 || (c == 0 && !lowerInclusive))
+                            continue;
+                    }
+                    if (upper != null && key.compareTo(upper) >= 0)
+                        continue;
+                    if (all) {
+                        everything.add(key);
+                    } else if (smallest.size() < max || key.compareTo(smallest.last()) < 0) {
+                        if (smallest.add(key) && smallest.size() > max)
+                            smallest.pollLast();
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        if (!all)
+            return new ArrayList<>(smallest);
+        // A key moved to another slot between chunks can be seen twice
+        everything.sort(null);
+        dropAdjacentDuplicates(everything);
+        return everything;
+    }
+
+    /** Live entries of the sorted keys, SCAN_CHUNK lookups per lock hold. */
+    private List<SnapshotEntry> resolve(List<String> keys, long now) {
+        List<SnapshotEntry> entries = new ArrayList<>(keys.size());
+        for (int from = 0; from < keys.size(); from += SCAN_CHUNK) {
+            int to = Math.min(keys.size(), from + SCAN_CHUNK);
+            acquire();
+            try {
+                for (String key : keys.subList(from, to)) {
+                    int slot = liveSlot(key.getBytes(StandardCharsets.UTF_8), hash(key), now);
+                    if (slot != NO_SLOT)
+                        entries.add(entryAt(key, slot, now));
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return entries;
+    }
+
+    private static void dropAdjacentDuplicates(List<String> sorted) {
+        int kept = 0;
+        for (int i = 0; i < sorted.size(); i++) {
+            if (kept == 0 || !sorted.get(i).equals(sorted.get(kept - 1)))
+                sorted.set(kept++, sorted.get(i));
+        }
+        sorted.subList(kept, sorted.size()).clear();
+    }
+
+    // ---- open-addressing table (caller holds the lock) ----
+
+    /**
+     * @return the bucket holding the key, or ~bucket of the empty bucket where
+     *         it would go
+     */
+    private int probe(byte[] k, int h) {
+        int mask = table.length - 1;
+        for (int i = h & mask;; i = (i + 1) & mask) {
+            int slot = table[i] - 1;
+            if (slot < 0)
+                return ~i;
+            if (hash[slot] == h && keyEquals(slot, k))
+                return i;
+        }
+    }
+
+    private boolean keyEquals(int slot, byte[] k) {
+        if (keyBytes[slot] != k.length)
+            return false;
+        long loc = location[slot];
+        int off = offsetOf(loc);
+        return Arrays.equals(pages.get(pageOf(loc)), off, off + k.length, k, 0, k.length);
+    }
+
+    private int tableIndexOf(int slot) {
+        int mask = table.length - 1;
+        int i = hash[slot] & mask;
+        while (table[i] != slot + 1)
+            i = (i + 1) & mask;
+        return i;
+    }
+
+    /**
+     * Backward-shift deletion: entries later in the probe run move up into the
+     * hole when that keeps them reachable from their home bucket.
+     */
+    private void deleteAt(int hole) {
+        int mask = table.length - 1;
+        for (int j = (hole + 1) & mask;; j = (j + 1) & mask) {
+            int slot = table[j] - 1;
+            if (slot < 0)
+                break;
+            int home = hash[slot] & mask;
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                table[hole] = table[j];
+                hole = j;
+            }
+        }
+        table[hole] = 0;
+    }
+
+    private void ensureTableCapacity() {
+        if ((size + 1) * 2 <= table.length)
+            return;
+        int[] next = new int[table.length * 2];
+        int mask = next.length - 1;
+        for (int b : table) {
+            if (b == 0)
+                continue;
+            int i = hash[b - 1] & mask;
+            while (next[i] != 0)
+                i = (i + 1) & mask;
+            next[i] = b;
+        }
+        table = next;
+    }
+
+    // ---- expiry heap (caller holds the lock) ----
+
+    private int purgeExpired(long now) {
+        return purgeExpired(now, options.maxPurgePerOperation());
+    }
+
+    private int purgeExpired(long now, int maxNodes) {
+        int purged = 0;
+        while (purged < maxNodes && heapSize > 0 && expiry[heap[0]] <= now) {
+            int slot = heap[0];
+            expire(slot, tableIndexOf(slot));
+            purged++;
+        }
+        if (purged > 0)
+            observer.purged(purged);
+        return purged;
+    }
+
+    private void heapPush(int slot) {
+        heap[heapSize] = slot;
+        heapIndex[slot] = heapSize;
+        siftUp(heapSize++);
+    }
+
+    private void heapRemove(int slot) {
+        int i = heapIndex[slot];
+        heapIndex[slot] = NO_SLOT;
+        int last = heap[--heapSize];
+        if (i == heapSize)
+            return;
+        heap[i] = last;
+        heapIndex[last] = i;
+        siftDown(siftUp(i));
+    }
+
+    private void heapUpdate(int slot) {
+        siftDown(siftUp(heapIndex[slot]));
+    }
+
+    private int siftUp(int i) {
+        int slot = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (expiry[heap[parent]] <= expiry[slot])
+                break;
+            heap[i] = heap[parent];
+            heapIndex[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = slot;
+        heapIndex[slot] = i;
+        return i;
+    }
+
+    private void siftDown(int i) {
+        int slot = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize)
+                break;
+            if (child + 1 < heapSize && expiry[heap[child + 1]] < expiry[heap[child]])
+                child++;
+            if (expiry[slot] <= expiry[heap[child]])
+                break;
+            heap[i] = heap[child];
+            heapIndex[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = slot;
+        heapIndex[slot] = i;
+    }
+
+    // ---- LRU list (caller holds the lock; bounded stores only) ----
+
+    private void linkLast(int slot) {
+        lruPrev[slot] = lruTail;
+        lruNext[slot] = NO_SLOT;
+        if (lruTail == NO_SLOT)
+            lruHead = slot;
+        else
+            lruNext[lruTail] = slot;
+        lruTail = slot;
+    }
+
+    private void unlink(int slot) {
+        int prev = lruPrev[slot];
+        int next = lruNext[slot];
+        if (prev == NO_SLOT)
+            lruHead = next;
+        else
+            lruNext[prev] = next;
+        if (next == NO_SLOT)
+            lruTail = prev;
+        else
+            lruPrev[next] = prev;
+    }
+
+    private void moveToTail(int slot) {
+        if (slot == lruTail)
+            return;
+        unlink(slot);
+        linkLast(slot);
+    }
+
+    // ---- helpers ----
+
+    /**
+     * Takes the lock, reporting to the observer how long it had to wait.
+     */
+    private void acquire() {
+        if (lock.tryLock())
+            return;
+        long start = System.nanoTime();
+        lock.lock();
+        observer.lockWaited(System.nanoTime() - start);
+    }
+
+    /** Validates a put and encodes it, outside the lock. */
+    private Encoded encodePut(String key, String value) {
+        ExpiringKeyValueStore.requireKey(key);
+        ExpiringKeyValueStore.requireValue(value);
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        byte[] v = value.getBytes(StandardCharsets.UTF_8);
+        long len = (long) k.length + v.length;
+        if (len > options.maxWeightBytes())
+            throw new IllegalArgumentException("Entry exceeds maximum weight of " + options.maxWeightBytes() + " bytes");
+        if (len > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Entry too large");
+        return new Encoded(key, k, v, hash(key));
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static long locationOf(int page, int offset) {
+        return ((long) page << 32) | offset;
+    }
+
+    private static int pageOf(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int offsetOf(long location) {
+        return (int) location;
+    }
+
+    private record Encoded(String keyString, byte[] key, byte[] value, int hash) {
+    }
+
+    /** Resolves each sorted key under the lock as the iteration reaches it. */
+    private final class LiveEntryIterator implements Iterator<SnapshotEntry> {
+        private final Iterator<String> keys;
+        private final long now;
+        private SnapshotEntry next;
+
+        LiveEntryIterator(Iterator<String> keys, long now) {
+            this.keys = keys;
+            this.now = now;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && keys.hasNext())
+                next = resolve(keys.next());
+            return next != null;
+        }
+
+        @Override
+        public SnapshotEntry next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            SnapshotEntry result = next;
+            next = null;
+            return result;
+        }
+
+        private SnapshotEntry resolve(String key) {
+            byte[] k = key.getBytes(StandardCharsets.UTF_8);
+            acquire();
+            try {
+                int idx = probe(k, hash(key));
+                if (idx < 0)
+                    return null;
+                int slot = table[idx] - 1;
+                return expiry[slot] <= now ? null : entryAt(key, slot, now);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.songjaehyun.api.demos.expiringkv.domain;
+
+/**
+ * Decides which key leaves a capacity-bounded store first.
+ *
+ * <p>
+ * Not thread-safe; driven by the owning store under its lock. The policy
+ * keeps its own per-key bookkeeping in step with the store's map.
+ */
+interface EvictionPolicy {
+
+    /** A key was added to the store. */
+    void recordInsert(String key);
+
+    /** A live key was read or overwritten. */
+    void recordAccess(String key);
+
+    /** A key left the store for a reason other than {@link #evict()}. */
+    void recordRemove(String key);
+
+    /**
+     * Chooses a victim, forgets it and returns it.
+     *
+     * @return the key to drop, or null if the policy tracks no keys
+     */
+    String evict();
+}
@@ -1,13 +1,22 @@
 package com.songjaehyun.api.demos.expiringkv.domain;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
 import java.util.Objects;
-import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.LongSupplier;
 
@@ -16,22 +25,69 @@ import java.util.function.LongSupplier;
  *
  * <p>
  * Design:
- * - Backed by a HashMap for O(1) average lookup.
- * - Expirations tracked via a min-heap ordered by expiry time.
- * - Lazy expiration: expired entries are removed during read/write operations.
+ * - Backed by a ConcurrentHashMap for O(1) average lookup, plus a concurrent
+ * skip list of keys so ordered iteration (snapshots, pages) never sorts and
+ * never holds the lock.
+ * - Expirations tracked via an indexed min-heap ordered by expiry time, or
+ * optionally a hierarchical timing wheel (see {@link StoreOptions}). Each key
+ * owns at most one expiry node, updated in place on overwrite and cancelled
+ * on removal.
+ * - Lazy expiration: expired entries are removed during read/write operations,
+ * optionally capped per operation and complemented by an {@link ExpiryReaper}.
+ * - Optional lock-free reads: get() and getRemainingTTL() skip the lock and
+ * decide expiry from the immutable CacheEntry alone; expired entries are then
+ * only removed by writers.
+ * - Optional capacity bounds (entry count and approximate bytes) enforced by
+ * an LRU or W-TinyLFU eviction policy before TTL would remove anything.
+ * Lock-free readers report accesses to the policy only when the lock is
+ * free, trading a little recency precision for never blocking.
+ * - Read-modify-write operations (compareAndSet, getAndSet, incrementBy,
+ * touch) decide and write under one lock acquisition, through the same write
+ * path as put, so listeners see them as puts.
+ * - Optional {@link MutationListener}s see every effective write in order,
+ * under the lock, e.g. to feed a write-ahead log.
+ * - Every change, expirations included, advances a version counter and is
+ * published to {@link ChangeListener}s; each entry remembers the version that
+ * wrote it. A sharded store shares one counter across its segments.
+ * - An optional bounded {@link ChangeJournal} remembers which keys the most
+ * recent changes touched, so delta snapshots cost O(changes) rather than
+ * O(entries).
+ * - An optional {@link StoreObserver} is told about contended lock waits and
+ * purge passes; the uncontended path stays a single tryLock.
  * - TTL is capped at 1 year to prevent overflow and unbounded retention.
  * - Time source is injected via LongSupplier for testability.
  *
  * <p>
  */
-public final class ExpiringKeyValueStore {
+public final class ExpiringKeyValueStore implements KeyValueStore {
 
     private final LongSupplier nowMillis;
+    private final StoreOptions options;
+    private final boolean lockFreeReads;
     private final ReentrantLock lock = new ReentrantLock();
 
-    private final Map<String, CacheEntry> store = new HashMap<>();
-    private final PriorityQueue<ExpiryNode> expiryMinHeap = new PriorityQueue<>(
-            Comparator.comparingLong(en -> en.expiry));
+    // Mutated only under lock; concurrent map so lock-free readers see a
+    // consistent view of each entry.
+    private final Map<String, CacheEntry> store = new ConcurrentHashMap<>();
+    private final NavigableSet<String> keyIndex = new ConcurrentSkipListSet<>();
+    private final ExpiryQueue expiryQueue;
+    private final ExpiryQueue.ExpiredKeyConsumer expireIfCurrent = this::expireIfCurrent;
+
+    // null when the store is unbounded
+    private final EvictionPolicy evictionPolicy;
+    private long weightBytes;
+    private long evictions;
+    private long expirations;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    // Copy-on-write; read on every mutation, written once per registration.
+    private volatile MutationListener[] listeners = new MutationListener[0];
+    private volatile ChangeListener[] changeListeners = new ChangeListener[0];
+    private volatile StoreObserver observer = StoreObserver.NONE;
+    // Advanced under the lock; possibly shared with sibling segments
+    private final AtomicLong versions;
+    // null when options.journalCapacity() is 0
+    private final ChangeJournal journal;
 
     private static final long MAX_TTL_MILLIS = 365L * 24 * 60 * 60 * 1000; // 1 year
 
@@ -40,7 +96,44 @@ public final class ExpiringKeyValueStore {
     }
 
     public ExpiringKeyValueStore(LongSupplier nowMillis) {
+        this(nowMillis, false);
+    }
+
+    /**
+     * @param nowMillis     time source
+     * @param lockFreeReads when true, get() and getRemainingTTL() never take the
+     *                      lock nor purge; readers are wait-free
+     */
+    public ExpiringKeyValueStore(LongSupplier nowMillis, boolean lockFreeReads) {
+        this(nowMillis, StoreOptions.defaults().withLockFreeReads(lockFreeReads));
+    }
+
+    public ExpiringKeyValueStore(LongSupplier nowMillis, StoreOptions options) {
+        this(nowMillis, options, new AtomicLong());
+    }
+
+    /**
+     * @param versions version counter, shared by the segments of a sharded
+     *                 store so that versions are unique and ordered across
+     *                 them
+     */
+    ExpiringKeyValueStore(LongSupplier nowMillis, StoreOptions options, AtomicLong versions) {
         this.nowMillis = Objects.requireNonNull(nowMillis, "nowMillis");
+        this.options = Objects.requireNonNull(options, "options");
+        this.versions = Objects.requireNonNull(versions, "versions");
+        this.lockFreeReads = options.lockFreeReads();
+        this.journal = options.journalCapacity() == 0 ? null
+                : new ChangeJournal(options.journalCapacity(), versions.get());
+        this.expiryQueue = switch (options.expiryIndex()) {
+            case HEAP -> new IndexedExpiryHeap();
+            case TIMING_WHEEL -> new HierarchicalTimingWheel(
+                    options.wheelTickMillis(), MAX_TTL_MILLIS, nowMillis.getAsLong());
+        };
+        this.evictionPolicy = !options.bounded() ? null : switch (options.eviction()) {
+            case LRU -> new LruEvictionPolicy();
+            case TINY_LFU -> new WindowTinyLfuPolicy(
+                    options.maxEntries() == Integer.MAX_VALUE ? 1 << 16 : options.maxEntries());
+        };
     }
 
     /**
@@ -51,23 +144,105 @@ public final class ExpiringKeyValueStore {
      * @param key       the key to the store
      * @param value     the associated value
      * @param ttlMillis time-to-live in milliseconds; must be > 0 and <= 1 year
+     * @throws IllegalArgumentException if the entry alone exceeds maxWeightBytes
      */
+    @Override
     public void put(String key, String value, long ttlMillis) {
         requireKey(key);
         requireValue(value);
+        requireWeight(key, value);
 
         long ttl = validateTtl(ttlMillis);
         long now = nowMillis.getAsLong();
         long expiry = now + ttl;
 
-        lock.lock();
+        acquire();
+        try {
+            purgeExpired(now);
+            insert(key, value, expiry);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Put a key/value that expires at an absolute time, e.g. when replaying a
+     * log or importing a dump. Overwrites an existing key.
+     *
+     * @param expiryMillis absolute expiry; must be in the future and at most 1
+     *                     year away
+     */
+    @Override
+    public void putAt(String key, String value, long expiryMillis) {
+        requireKey(key);
+        requireValue(value);
+        requireWeight(key, value);
+
+        long now = nowMillis.getAsLong();
+        validateTtl(expiryMillis - now);
+
+        acquire();
         try {
             purgeExpired(now);
+            insert(key, value, expiryMillis);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void setObserver(StoreObserver observer) {
+        this.observer = Objects.requireNonNull(observer, "observer");
+    }
+
+    @Override
+    public void addMutationListener(MutationListener listener) {
+        Objects.requireNonNull(listener, "listener");
+        acquire();
+        try {
+            MutationListener[] current = listeners;
+            MutationListener[] next = Arrays.copyOf(current, current.length + 1);
+            next[current.length] = listener;
+            listeners = next;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void addChangeListener(ChangeListener listener) {
+        Objects.requireNonNull(listener, "listener");
+        acquire();
+        try {
+            ChangeListener[] current = changeListeners;
+            ChangeListener[] next = Arrays.copyOf(current, current.length + 1);
+            next[current.length] = listener;
+            changeListeners = next;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long version() {
+        return versions.get();
+    }
+
+    /**
+     * Locked like get(), purging first, so an expiration it runs into is
+     * published before the answer.
+     */
+    @Override
+    public VersionedEntry getVersioned(String key) {
+        requireKey(key);
+
+        long now = nowMillis.getAsLong();
 
-            ExpiryNode expn = new ExpiryNode(key, expiry);
-            CacheEntry entry = new CacheEntry(value, expiry);
-            store.put(key, entry);
-            expiryMinHeap.offer(expn);
+        acquire();
+        try {
+            purgeExpired(now);
+            CacheEntry entry = liveEntry(key, now);
+            return entry == null ? null : new VersionedEntry(key, entry.value, entry.expiry, entry.version);
         } finally {
             lock.unlock();
         }
@@ -80,49 +255,167 @@ public final class ExpiringKeyValueStore {
      * @param key
      * @return
      */
+    @Override
     public String get(String key) {
         requireKey(key);
 
         long now = nowMillis.getAsLong();
 
-        lock.lock();
+        if (lockFreeReads) {
+            CacheEntry entry = readLockFree(key, now);
+            if (entry != null && evictionPolicy != null && lock.tryLock()) {
+                try {
+                    evictionPolicy.recordAccess(key);
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return entry == null ? null : entry.value;
+        }
+
+        acquire();
         try {
             purgeExpired(now);
 
-            CacheEntry entry = store.get(key);
-            if (entry == null)
-                return null;
-            if (entry.isExpiredAt(now)) {
-                store.remove(key);
+            CacheEntry entry = readLocked(key, now);
+            return entry == null ? null : entry.value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Puts every entry with one lock acquisition and one purge.
+     * All entries are validated before any is written, so an invalid entry
+     * rejects the whole batch.
+     *
+     * @throws IllegalArgumentException if any entry is invalid
+     */
+    @Override
+    public void putAll(List<PutEntry> entries) {
+        Objects.requireNonNull(entries, "entries");
+        for (PutEntry e : entries)
+            checkPut(e);
+
+        long now = nowMillis.getAsLong();
+
+        acquire();
+        try {
+            purgeExpired(now);
+            for (PutEntry e : entries)
+                insert(e.key(), e.value(), now + e.ttlMillis());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Looks up every key with at most one lock acquisition and one purge.
+     *
+     * @return live entries in the order of the requested keys; absent or
+     *         expired keys are omitted
+     */
+    @Override
+    public List<SnapshotEntry> getAll(Collection<String> keys) {
+        Objects.requireNonNull(keys, "keys");
+        for (String key : keys)
+            requireKey(key);
+
+        long now = nowMillis.getAsLong();
+        List<SnapshotEntry> found = new ArrayList<>(keys.size());
+
+        if (lockFreeReads) {
+            for (String key : keys) {
+                CacheEntry entry = readLockFree(key, now);
+                if (entry != null)
+                    found.add(new SnapshotEntry(key, entry.value, entry.expiry, entry.expiry - now));
+            }
+            if (evictionPolicy != null && !found.isEmpty() && lock.tryLock()) {
+                try {
+                    for (SnapshotEntry e : found)
+                        evictionPolicy.recordAccess(e.key());
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return found;
+        }
+
+        acquire();
+        try {
+            purgeExpired(now);
+            for (String key : keys) {
+                CacheEntry entry = readLocked(key, now);
+                if (entry != null)
+                    found.add(new SnapshotEntry(key, entry.value, entry.expiry, entry.expiry - now));
+            }
+            return found;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes every key with one lock acquisition and one purge.
+     *
+     * @return number of live entries removed
+     */
+    @Override
+    public int removeAll(Collection<String> keys) {
+        Objects.requireNonNull(keys, "keys");
+        for (String key : keys)
+            requireKey(key);
+
+        long now = nowMillis.getAsLong();
 
-                return null;
+        acquire();
+        try {
+            purgeExpired(now);
+            int removed = 0;
+            for (String key : keys) {
+                CacheEntry entry = removeEntry(key);
+                if (entry == null)
+                    continue;
+                notifyRemove(key);
+                if (!entry.isExpiredAt(now))
+                    removed++;
             }
-            return entry.value;
+            return removed;
         } finally {
             lock.unlock();
         }
     }
 
+    @Override
     public boolean remove(String key) {
         requireKey(key);
 
         long now = nowMillis.getAsLong();
 
-        lock.lock();
+        acquire();
         try {
             purgeExpired(now);
-            return store.remove(key) != null;
+            CacheEntry removed = removeEntry(key);
+            if (removed == null)
+                return false;
+            notifyRemove(key);
+            return !removed.isExpiredAt(now);
         } finally {
             lock.unlock();
         }
     }
 
+    /**
+     * Number of live entries. Drains the whole expiry backlog regardless of
+     * maxPurgePerOperation so the count is exact; not meant for hot paths.
+     */
+    @Override
     public int size() {
         long now = nowMillis.getAsLong();
 
-        lock.lock();
+        acquire();
         try {
-            purgeExpired(now);
+            purgeExpired(now, Integer.MAX_VALUE);
             return this.store.size();
         } finally {
             lock.unlock();
@@ -137,12 +430,18 @@ public final class ExpiringKeyValueStore {
      *         or has expired
      * @throws IllegalArgumentException if the key is null or blank
      */
+    @Override
     public long getRemainingTTL(String key) {
         requireKey(key);
 
         long now = nowMillis.getAsLong();
 
-        lock.lock();
+        if (lockFreeReads) {
+            CacheEntry entry = store.get(key);
+            return entry == null || entry.isExpiredAt(now) ? -1 : entry.expiry - now;
+        }
+
+        acquire();
         try {
             purgeExpired(now);
 
@@ -168,68 +467,491 @@ public final class ExpiringKeyValueStore {
      * @throws IllegalArgumentException if key/value is invalid or TTL is out of
      *                                  range
      */
+    @Override
     public void putIfAbsent(String key, String value, long ttl) {
         requireKey(key);
         requireValue(value);
+        requireWeight(key, value);
 
         long validatedTtl = validateTtl(ttl);
         long now = nowMillis.getAsLong();
 
-        lock.lock();
+        acquire();
         try {
             purgeExpired(now);
-            if (store.get(key) == null) {
+            CacheEntry existing = store.get(key);
+            if (existing == null || existing.isExpiredAt(now)) {
                 long expiry = now + validatedTtl;
-                CacheEntry newEntry = new CacheEntry(value, expiry);
-                store.put(key, newEntry);
-                ExpiryNode newExpiry = new ExpiryNode(key, expiry);
-                expiryMinHeap.offer(newExpiry);
+                insert(key, value, expiry);
             }
         } finally {
             lock.unlock();
         }
     }
 
+    @Override
+    public boolean compareAndSet(String key, String expected, String newValue, long ttlMillis) {
+        requireKey(key);
+        requireValue(newValue);
+        requireWeight(key, newValue);
+
+        long ttl = validateTtl(ttlMillis);
+        long now = nowMillis.getAsLong();
+
+        acquire();
+        try {
+            purgeExpired(now);
+            CacheEntry existing = liveEntry(key, now);
+            String current = existing == null ? null : existing.value;
+            if (!Objects.equals(current, expected))
+                return false;
+            insert(key, newValue, now + ttl);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String getAndSet(String key, String value, long ttlMillis) {
+        requireKey(key);
+        requireValue(value);
+        requireWeight(key, value);
+
+        long ttl = validateTtl(ttlMillis);
+        long now = nowMillis.getAsLong();
+
+        acquire();
+        try {
+            purgeExpired(now);
+            CacheEntry existing = liveEntry(key, now);
+            insert(key, value, now + ttl);
+            return existing == null ? null : existing.value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long incrementBy(String key, long delta, long ttlMillis) {
+        requireKey(key);
+
+        long ttl = validateTtl(ttlMillis);
+        long now = nowMillis.getAsLong();
+
+        acquire();
+        try {
+            purgeExpired(now);
+            CacheEntry existing = liveEntry(key, now);
+            long next = increment(key, existing == null ? null : existing.value, delta);
+            String value = Long.toString(next);
+            requireWeight(key, value);
+            insert(key, value, existing == null ? now + ttl : existing.expiry);
+            return next;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean touch(String key, long ttlMillis) {
+        requireKey(key);
+
+        long ttl = validateTtl(ttlMillis);
+        long now = nowMillis.getAsLong();
+
+        acquire();
+        try {
+            purgeExpired(now);
+            CacheEntry existing = liveEntry(key, now);
+            if (existing == null)
+                return false;
+            insert(key, existing.value, now + ttl);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
     /**
      * Immutable snapshot for frontend
      * Entries sorted by key
      * Includes remaining TTL
+     * Only the purge runs under the lock; entries are then read in key order
+     * from the sorted index without blocking writers, so a write racing with
+     * the copy may or may not be included.
      * 
      * @return Returns immutable snapshot of active entries.
      */
+    @Override
     public Snapshot snapshot() {
         long now = nowMillis.getAsLong();
-        lock.lock();
+        purgeUnderLock(now);
+
+        List<SnapshotEntry> entries = new ArrayList<>();
+        entriesAfter(null, now).forEachRemaining(entries::add);
+
+        return new Snapshot(now, Collections.unmodifiableList(entries));
+    }
+
+    /**
+     * The live state of every key changed after sinceVersion, answered from
+     * the journal under one lock acquisition. Falls back to a full snapshot
+     * when the journal is disabled or no longer reaches back that far.
+     * Drains the whole expiry backlog first, regardless of
+     * maxPurgePerOperation: expirations reach the journal only when purged,
+     * and an expired key left unpurged would be in neither list.
+     */
+    @Override
+    public SnapshotDelta snapshotDelta(long sinceVersion) {
+        requireVersion(sinceVersion);
+        long now = nowMillis.getAsLong();
+        purgeAllUnderLock(now);
+        long upTo = versions.get();
+
+        if (sinceVersion <= upTo) {
+            List<SnapshotEntry> upserted = new ArrayList<>();
+            List<String> removed = new ArrayList<>();
+            if (changedSince(sinceVersion, upTo, now, upserted, removed))
+                return SnapshotDelta.changes(now, sinceVersion, upTo, upserted, removed);
+        }
+        return SnapshotDelta.full(sinceVersion, upTo, snapshot());
+    }
+
+    /**
+     * Adds the current state of keys changed at versions in (sinceVersion,
+     * upToVersion]: live ones to upserted, the rest to removed. Keys may have
+     * changed again since upToVersion; the newer state is reported, and the
+     * change again by the next delta.
+     *
+     * @return false, adding nothing, if the journal cannot answer
+     */
+    boolean changedSince(long sinceVersion, long upToVersion, long now,
+            List<SnapshotEntry> upserted, List<String> removed) {
+        acquire();
+        try {
+            if (journal == null || !journal.covers(sinceVersion))
+                return false;
+            Set<String> keys = new HashSet<>();
+            journal.keysChanged(sinceVersion, upToVersion, keys);
+            for (String key : keys) {
+                CacheEntry entry = liveEntry(key, now);
+                if (entry == null)
+                    removed.add(key);
+                else
+                    upserted.add(new SnapshotEntry(key, entry.value, entry.expiry, entry.expiry - now));
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * One page of live entries with keys strictly greater than afterKey, in key
+     * order. Lock-free apart from the initial purge; cost is O(log n + limit).
+     *
+     * @param afterKey exclusive lower bound; null starts at the first key
+     * @param limit    maximum entries to return; must be > 0
+     */
+    @Override
+    public SnapshotPage snapshotPage(String afterKey, int limit) {
+        requireLimit(limit);
+        long now = nowMillis.getAsLong();
+        purgeUnderLock(now);
+        return SnapshotPage.collect(now, entriesAfter(afterKey, now), limit);
+    }
+
+    /**
+     * Lazily iterates live entries with keys greater than afterKey, in key
+     * order, without holding the lock. Suited to streaming large stores.
+     */
+    @Override
+    public Iterator<SnapshotEntry> liveEntries(String afterKey) {
+        return entriesAfter(afterKey, nowMillis.getAsLong());
+    }
+
+    /**
+     * Live entries with fromKey <= key < toKey, in key order; O(log n + k).
+     *
+     * @param fromKey inclusive lower bound; null for unbounded
+     * @param toKey   exclusive upper bound; null for unbounded
+     * @param limit   maximum entries to return; must be > 0
+     */
+    @Override
+    public List<SnapshotEntry> range(String fromKey, String toKey, int limit) {
+        requireLimit(limit);
+        long now = nowMillis.getAsLong();
+        purgeUnderLock(now);
+
+        List<SnapshotEntry> entries = new ArrayList<>(Math.min(limit, 256));
+        Iterator<SnapshotEntry> it = entriesBetween(fromKey, toKey, now);
+        while (entries.size() < limit && it.hasNext())
+            entries.add(it.next());
+        return entries;
+    }
+
+    Iterator<SnapshotEntry> entriesAfter(String afterKey, long now) {
+        Iterator<String> keys = afterKey == null
+                ? keyIndex.iterator()
+                : keyIndex.tailSet(afterKey, false).iterator();
+        return new LiveEntryIterator(keys, now);
+    }
+
+    Iterator<SnapshotEntry> entriesBetween(String fromKey, String toKey, long now) {
+        NavigableSet<String> view = keyIndex;
+        if (fromKey != null)
+            view = view.tailSet(fromKey, true);
+        if (toKey != null)
+            view = view.headSet(toKey, false);
+        return new LiveEntryIterator(view.iterator(), now);
+    }
+
+    void purgeUnderLock(long now) {
+        acquire();
         try {
             purgeExpired(now);
+        } finally {
+            lock.unlock();
+        }
+    }
 
-            List<SnapshotEntry> entries = new ArrayList<>(store.size());
-            for (Map.Entry<String, CacheEntry> entry : store.entrySet()) {
-                String key = entry.getKey();
-                CacheEntry ce = entry.getValue();
-                long remaining = Math.max(0L, ce.expiry - now);
-                entries.add(new SnapshotEntry(key, ce.value, ce.expiry, remaining));
-            }
-            entries.sort((a, b) -> a.key().compareTo(b.key()));
+    /** Like {@link #purgeUnderLock(long)}, without the per-operation cap. */
+    void purgeAllUnderLock(long now) {
+        acquire();
+        try {
+            purgeExpired(now, Integer.MAX_VALUE);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int reapExpired(int maxEntries) {
+        long now = nowMillis.getAsLong();
+
+        acquire();
+        try {
+            return purgeExpired(now, maxEntries);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int purgeExpired(long now) {
+        return purgeExpired(now, options.maxPurgePerOperation());
+    }
+
+    private int purgeExpired(long now, int maxNodes) {
+        int purged = expiryQueue.pollExpired(now, maxNodes, expireIfCurrent);
+        if (purged > 0)
+            observer.purged(purged);
+        return purged;
+    }
+
+    /**
+     * Takes the lock, reporting to the observer how long it had to wait.
+     * Uncontended acquisitions cost nothing extra.
+     */
+    private void acquire() {
+        if (lock.tryLock())
+            return;
+        long start = System.nanoTime();
+        lock.lock();
+        observer.lockWaited(System.nanoTime() - start);
+    }
+
+    /**
+     * Empties the store and zeroes its statistics so that it can be handed out
+     * again, e.g. by a per-session pool. Internal tables keep the capacity they
+     * grew to. Callers must make sure nobody else still uses the store.
+     *
+     * @throws IllegalStateException if mutation listeners are registered;
+     *                               they would see removals meant for no one
+     */
+    public void reset() {
+        acquire();
+        try {
+            if (listeners.length > 0 || changeListeners.length > 0)
+                throw new IllegalStateException("Cannot reset a store with mutation listeners");
+            if (!store.isEmpty())
+                versions.incrementAndGet();
+            if (journal != null)
+                journal.clear(versions.get());
+            for (String key : keyIndex)
+                removeEntry(key);
+            hits.reset();
+            misses.reset();
+            evictions = 0;
+            expirations = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
 
-            return new Snapshot(now, Collections.unmodifiableList(entries));
+    @Override
+    public StoreStats stats() {
+        acquire();
+        try {
+            return new StoreStats(store.size(), expiryQueue.size(), weightBytes,
+                    hits.sum(), misses.sum(), evictions, expirations);
         } finally {
             lock.unlock();
         }
     }
 
-    private void purgeExpired(long now) {
-        while (!this.expiryMinHeap.isEmpty() && this.expiryMinHeap.peek().expiry <= now) {
-            ExpiryNode en = expiryMinHeap.poll();
-            CacheEntry ce = this.store.get(en.key);
+    /** Lock-free lookup; records hit/miss but never mutates. */
+    private CacheEntry readLockFree(String key, long now) {
+        CacheEntry entry = store.get(key);
+        if (entry == null || entry.isExpiredAt(now)) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry;
+    }
+
+    /** Locked lookup; removes an expired entry it runs into. Caller holds the lock. */
+    private CacheEntry readLocked(String key, long now) {
+        CacheEntry entry = store.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (entry.isExpiredAt(now)) {
+            removeEntry(key);
+            expired(key);
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        if (evictionPolicy != null)
+            evictionPolicy.recordAccess(key);
+        return entry;
+    }
+
+    /** The key's entry if it is live; no hit/miss accounting. Caller holds the lock. */
+    private CacheEntry liveEntry(String key, long now) {
+        CacheEntry entry = store.get(key);
+        return entry == null || entry.isExpiredAt(now) ? null : entry;
+    }
+
+    /**
+     * Single write path: keeps map, expiry index, weight and eviction policy in
+     * step, then evicts until the capacity bounds hold again. Caller holds the
+     * lock.
+     */
+    private void insert(String key, String value, long expiry) {
+        CacheEntry entry = new CacheEntry(value, expiry, versions.incrementAndGet());
+        CacheEntry previous = store.put(key, entry);
+        if (previous == null)
+            keyIndex.add(key);
+        expiryQueue.schedule(key, entry.expiry);
+        weightBytes += weigh(key, entry.value) - (previous == null ? 0 : weigh(key, previous.value));
+        for (MutationListener l : listeners)
+            l.onPut(key, entry.value, entry.expiry);
+        publish(ChangeEvent.Type.PUT, key, entry.value, entry.expiry, entry.version);
+
+        if (evictionPolicy == null)
+            return;
+        if (previous == null)
+            evictionPolicy.recordInsert(key);
+        else
+            evictionPolicy.recordAccess(key);
+        evictIfNeeded();
+    }
+
+    private void evictIfNeeded() {
+        while (store.size() > options.maxEntries() || weightBytes > options.maxWeightBytes()) {
+            String victim = evictionPolicy.evict();
+            if (victim == null)
+                return;
+            detach(victim);
+            evictions++;
+            notifyRemove(victim);
+        }
+    }
+
+    /** Removes the key everywhere, including the eviction policy. Caller holds the lock. */
+    private CacheEntry removeEntry(String key) {
+        CacheEntry removed = detach(key);
+        if (removed != null && evictionPolicy != null)
+            evictionPolicy.recordRemove(key);
+        return removed;
+    }
+
+    private void notifyRemove(String key) {
+        for (MutationListener l : listeners)
+            l.onRemove(key);
+        publish(ChangeEvent.Type.REMOVE, key, null, 0, versions.incrementAndGet());
+    }
 
-            if (ce == null)
-                continue;
-            if (ce.expiry != en.expiry)
-                continue;
+    private void expired(String key) {
+        expirations++;
+        publish(ChangeEvent.Type.EXPIRE, key, null, 0, versions.incrementAndGet());
+    }
+
+    /** Journals the change and tells the change listeners. Caller holds the lock. */
+    private void publish(ChangeEvent.Type type, String key, String value, long expiry, long version) {
+        if (journal != null)
+            journal.record(version, key);
+        ChangeListener[] current = changeListeners;
+        if (current.length == 0)
+            return;
+        ChangeEvent event = new ChangeEvent(type, key, value, expiry, version);
+        for (ChangeListener l : current)
+            l.onChange(event);
+    }
 
-            store.remove(en.key);
+    private CacheEntry detach(String key) {
+        CacheEntry removed = store.remove(key);
+        if (removed != null) {
+            keyIndex.remove(key);
+            expiryQueue.cancel(key);
+            weightBytes -= weigh(key, removed.value);
         }
+        return removed;
+    }
+
+    /**
+     * The queue keeps one node per key in step with the map, so a polled node
+     * always matches its entry; the expiry check is purely defensive.
+     */
+    private void expireIfCurrent(String key, long expiry) {
+        CacheEntry ce = this.store.get(key);
+
+        if (ce == null)
+            return;
+        if (ce.expiry != expiry)
+            return;
+
+        removeEntry(key);
+        expired(key);
+    }
+
+    /**
+     * Approximate footprint of an entry: two bytes per char of key and value.
+     */
+    static long weigh(String key, String value) {
+        return 2L * (key.length() + value.length());
+    }
+
+    /**
+     * Full validation of a put, without touching the store. Lets a composite
+     * store reject a batch before writing to any segment.
+     */
+    void checkPut(PutEntry entry) {
+        if (entry == null)
+            throw new IllegalArgumentException("Entry must not be null");
+        requireKey(entry.key());
+        requireValue(entry.value());
+        requireWeight(entry.key(), entry.value());
+        validateTtl(entry.ttlMillis());
+    }
+
+    private void requireWeight(String key, String value) {
+        if (weigh(key, value) > options.maxWeightBytes())
+            throw new IllegalArgumentException("Entry exceeds maximum weight of " + options.maxWeightBytes() + " bytes");
     }
 
     /**
@@ -239,7 +961,7 @@ public final class ExpiringKeyValueStore {
      * @param ttl
      * @return
      */
-    private static long validateTtl(long ttl) {
+    public static long validateTtl(long ttl) {
         if (ttl <= 0) {
             throw new IllegalArgumentException("TTL must be > 0.");
         }
@@ -251,23 +973,87 @@ public final class ExpiringKeyValueStore {
         return ttl;
     }
 
-    private static void requireKey(String key) {
+    /**
+     * current + delta, treating a missing value as 0.
+     *
+     * @throws IllegalArgumentException if current is not a decimal long or the
+     *                                  sum overflows
+     */
+    static long increment(String key, String current, long delta) {
+        long base = 0;
+        if (current != null) {
+            try {
+                base = Long.parseLong(current);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Value of " + key + " is not an integer");
+            }
+        }
+        try {
+            return Math.addExact(base, delta);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Increment of " + key + " overflows");
+        }
+    }
+
+    static void requireLimit(int limit) {
+        if (limit <= 0)
+            throw new IllegalArgumentException("Limit must be > 0.");
+    }
+
+    static void requireVersion(long version) {
+        if (version < 0)
+            throw new IllegalArgumentException("Version must be >= 0.");
+    }
+
+    static void requireKey(String key) {
         if (key == null || key.isBlank())
             throw new IllegalArgumentException("Key must not be null or blank");
     }
 
-    private static void requireValue(String value) {
+    static void requireValue(String value) {
         if (value == null)
             throw new IllegalArgumentException("Value must not be null");
     }
 
-    private record CacheEntry(String value, long expiry) {
+    private record CacheEntry(String value, long expiry, long version) {
         boolean isExpiredAt(long now) {
             return now >= expiry;
         }
     }
 
-    private record ExpiryNode(String key, long expiry) {
+    /**
+     * Walks the sorted key index and resolves each key against the map,
+     * skipping keys that were removed or have expired in the meantime.
+     */
+    private final class LiveEntryIterator implements Iterator<SnapshotEntry> {
+        private final Iterator<String> keys;
+        private final long now;
+        private SnapshotEntry next;
+
+        LiveEntryIterator(Iterator<String> keys, long now) {
+            this.keys = keys;
+            this.now = now;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && keys.hasNext()) {
+                String key = keys.next();
+                CacheEntry ce = store.get(key);
+                if (ce != null && !ce.isExpiredAt(now))
+                    next = new SnapshotEntry(key, ce.value, ce.expiry, ce.expiry - now);
+            }
+            return next != null;
+        }
+
+        @Override
+        public SnapshotEntry next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            SnapshotEntry result = next;
+            next = null;
+            return result;
+        }
     }
 
     // ----------------------------
@@ -286,4 +1072,57 @@ public final class ExpiringKeyValueStore {
             long expiryMillis,
             long ttlRemainingMillis) {
     }
+
+    /**
+     * Changes after sinceVersion, up to and including version.
+     *
+     * @param version  pass as sinceVersion to fetch the next delta
+     * @param full     true if the journal could not answer: upserted then
+     *                 holds every live entry and replaces the caller's view
+     * @param upserted live entries of changed keys, in key order
+     * @param removed  changed keys that are no longer live, in key order
+     */
+    public record SnapshotDelta(
+            long nowMillis,
+            long sinceVersion,
+            long version,
+            boolean full,
+            List<SnapshotEntry> upserted,
+            List<String> removed) {
+        public SnapshotDelta {
+            upserted = Objects.requireNonNull(upserted, "upserted");
+            removed = Objects.requireNonNull(removed, "removed");
+        }
+
+        static SnapshotDelta changes(long now, long sinceVersion, long version,
+                List<SnapshotEntry> upserted, List<String> removed) {
+            upserted.sort(Comparator.comparing(SnapshotEntry::key));
+            Collections.sort(removed);
+            return new SnapshotDelta(now, sinceVersion, version, false,
+                    Collections.unmodifiableList(upserted), Collections.unmodifiableList(removed));
+        }
+
+        static SnapshotDelta full(long sinceVersion, long version, Snapshot snapshot) {
+            return new SnapshotDelta(snapshot.nowMillis(), sinceVersion, version, true,
+                    snapshot.entries(), List.of());
+        }
+    }
+
+    /**
+     * @param nextCursor pass as afterKey to fetch the following page; null when
+     *                   this is the last page
+     */
+    public record SnapshotPage(long nowMillis, List<SnapshotEntry> entries, String nextCursor) {
+        public SnapshotPage {
+            entries = Objects.requireNonNull(entries, "entries");
+        }
+
+        static SnapshotPage collect(long now, Iterator<SnapshotEntry> it, int limit) {
+            List<SnapshotEntry> entries = new ArrayList<>(Math.min(limit, 256));
+            while (entries.size() < limit && it.hasNext())
+                entries.add(it.next());
+            String nextCursor = it.hasNext() ? entries.get(entries.size() - 1).key() : null;
+            return new SnapshotPage(now, Collections.unmodifiableList(entries), nextCursor);
+        }
+    }
 }
@@ -0,0 +1,34 @@
+package com.songjaehyun.api.demos.expiringkv.domain;
+
+/**
+ * Schedules keys by absolute expiry and hands back the ones that are due.
+ *
+ * <p>
+ * Not thread-safe; callers guard it with the owning store's lock. Each key
+ * owns at most one node: scheduling an already scheduled key moves its node,
+ * and removed keys must be cancelled, so size() never exceeds the number of
+ * live keys.
+ */
+interface ExpiryQueue {
+
+    /** Schedules the key, replacing any previous expiry for it. */
+    void schedule(String key, long expiry);
+
+    /** @return true if the key had a node */
+    boolean cancel(String key);
+
+    /**
+     * Removes up to maxNodes due nodes (expiry <= now) and reports each one.
+     *
+     * @return the number of nodes removed
+     */
+    int pollExpired(long now, int maxNodes, ExpiredKeyConsumer consumer);
+
+    /** Number of scheduled nodes. */
+    int size();
+
+    @FunctionalInterface
+    interface ExpiredKeyConsumer {
+        void accept(String key, long expiry);
+    }
+}
@@ -0,0 +1,83 @@
+package com.songjaehyun.api.demos.expiringkv.domain;
+
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background expiry for a {@link KeyValueStore}.
+ *
+ * <p>
+ * Every tick the reaper asks the store to remove at most maxPerTick due
+ * entries. Combined with {@link StoreOptions#maxPurgePerOperation()} this
+ * keeps expiry work off the request path and bounds how long any single
+ * request can hold a store lock, while still reclaiming memory for entries
+ * that are never read again. A failing pass is counted and remembered rather
+ * than thrown, so a reaper that keeps failing shows up in {@link #failures()}.
+ */
+public final class ExpiryReaper implements AutoCloseable {
+
+    private final KeyValueStore store;
+    private final long tickMillis;
+    private final int maxPerTick;
+    private final ScheduledExecutorService executor;
+    private final AtomicLong failures = new AtomicLong();
+    private volatile RuntimeException lastFailure;
+
+    /**
+     * @param store      the store to reap
+     * @param tickMillis delay between reaping passes; must be > 0
+     * @param maxPerTick upper bound on entries processed per pass; must be > 0
+     */
+    public ExpiryReaper(KeyValueStore store, long tickMillis, int maxPerTick) {
+        this.store = Objects.requireNonNull(store, "store");
+        if (tickMillis <= 0)
+            throw new IllegalArgumentException("Reaper tick must be > 0.");
+        if (maxPerTick <= 0)
+            throw new IllegalArgumentException("Reaper batch size must be > 0.");
+        this.tickMillis = tickMillis;
+        this.maxPerTick = maxPerTick;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "expiring-kv-reaper");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public void start() {
+        executor.scheduleWithFixedDelay(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * One reaping pass. Exceptions are recorded, not thrown, so that a single
+     * failure does not cancel the periodic task.
+     *
+     * @return number of expiry nodes processed
+     */
+    int tick() {
+        try {
+            return store.reapExpired(maxPerTick);
+        } catch (RuntimeException e) {
+            lastFailure = e;
+            failures.incrementAndGet();
+            return 0;
+        }
+    }
+
+    /** Passes that threw so far. */
+    public long failures() {
+        return failures.get();
+    }
+
+    /** What the most recent failing pass threw; null if none has. */
+    public RuntimeException lastFailure() {
+        return lastFailure;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,79 @@
+package com.songjaehyun.api.demos.expiringkv.domain;
+
+/**
+ * 4-bit Count-Min sketch used by {@link WindowTinyLfuPolicy} to estimate how
+ * often a key has been seen recently.
+ *
+ * <p>
+ * Design:
+ * - Each long packs sixteen 4-bit counters; an item maps to one counter in
+ * each of four rows (four longs), and its estimate is the minimum.
+ * - After sampleSize increments every counter is halved, so the estimate
+ * tracks recent popularity rather than all-time popularity (aging).
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_TABLE_SIZE = 1 << 22;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int expectedEntries) {
+        int n = Math.max(16, Math.min(MAX_TABLE_SIZE, expectedEntries));
+        n = Integer.highestOneBit(n - 1) << 1;
+        this.table = new long[n];
+        this.tableMask = n - 1;
+        this.sampleSize = 10 * n;
+    }
+
+    int frequency(Object item) {
+        int hash = spread(item.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    void increment(Object item) {
+        int hash = spread(item.hashCode());
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int shift = (start + i) << 2;
+            if (((table[index] >>> shift) & 0xfL) != 0xfL) {
+                table[index] += 1L << shift;
+                added = true;
+            }
+        }
+        if (added && ++additions == sampleSize)
+            reset();
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++)
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        additions >>>= 1;
+    }
+
+    private int indexOf(int hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        h += h >>> 32;
+        return ((int) h) & tableMask;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
@@ -0,0 +1,262 @@
+package com.songjaehyun.api.demos.expiringkv.domain;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hierarchical timing wheel (Varghese &amp; Lauck) used as an alternative to
+ * the expiry min-heap.
+ *
+ * <p>
+ * Design:
+ * - Time is quantised into ticks of tickMillis; an entry becomes due on the
+ * first tick at or after its expiry (never early, at most one tick late).
+ * - Level 0 has 64 one-tick slots, level 1 has 64 slots of 64 ticks, and so on
+ * until the configured horizon fits. Scheduling is O(1).
+ * - Advancing the clock drains the current level-0 slot into a ready list and,
+ * on block boundaries, cascades the matching higher-level slot one level down.
+ * Every node cascades at most once per level, so expiry is amortised O(1).
+ * - Empty stretches of the wheel are skipped a whole block at a time, so a long
+ * idle gap costs O(levels * 64) rather than O(elapsed ticks).
+ * - pollExpired() hands out at most maxNodes ready nodes per call; the rest
+ * stay queued, which bounds the work done by any single caller.
+ * - Slots are doubly linked and nodes are indexed by key, so rescheduling and
+ * cancelling are O(1) unlink + relink.
+ *
+ * <p>
+ * Not thread-safe; guarded by the owning store's lock.
+ */
+final class HierarchicalTimingWheel implements ExpiryQueue {
+
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int READY = -1;
+
+    private final long tickMillis;
+    private final long maxDeltaTicks;
+    private final int levels;
+
+    private final Map<String, Node> index = new HashMap<>();
+    private final Node[][] slots;
+    private final int[] levelCounts;
+
+    private Node readyHead;
+    private Node readyTail;
+
+    private long currentTick;
+
+    /**
+     * @param tickMillis    resolution; must be > 0
+     * @param horizonMillis largest expected distance between now and an expiry
+     * @param startMillis   current time, used to seed the wheel position
+     */
+    HierarchicalTimingWheel(long tickMillis, long horizonMillis, long startMillis) {
+        if (tickMillis <= 0)
+            throw new IllegalArgumentException("Tick must be > 0.");
+        this.tickMillis = tickMillis;
+        this.maxDeltaTicks = Math.max(1, ceilDiv(horizonMillis, tickMillis));
+
+        // The top level must not wrap within the horizon: 63 * 64^(L-1) >= maxDeltaTicks
+        int l = 1;
+        long span = SLOT_MASK;
+        while (span < maxDeltaTicks && l * BITS < 62) {
+            span <<= BITS;
+            l++;
+        }
+        this.levels = l;
+        this.slots = new Node[levels][SLOTS];
+        this.levelCounts = new int[levels];
+        this.currentTick = Math.floorDiv(startMillis, tickMillis);
+    }
+
+    @Override
+    public void schedule(String key, long expiry) {
+        Node node = index.get(key);
+        if (node == null) {
+            node = new Node(key);
+            index.put(key, node);
+        } else {
+            unlink(node);
+        }
+        node.expiry = expiry;
+        node.expiryTick = ceilDiv(expiry, tickMillis);
+        place(node);
+    }
+
+    @Override
+    public boolean cancel(String key) {
+        Node node = index.remove(key);
+        if (node == null)
+            return false;
+        unlink(node);
+        return true;
+    }
+
+    @Override
+    public int pollExpired(long now, int maxNodes, ExpiredKeyConsumer consumer) {
+        advanceTo(Math.floorDiv(now, tickMillis));
+
+        int polled = 0;
+        while (polled < maxNodes && readyHead != null) {
+            Node node = readyHead;
+            unlink(node);
+            index.remove(node.key);
+            polled++;
+            consumer.accept(node.key, node.expiry);
+        }
+        return polled;
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    int levels() {
+        return levels;
+    }
+
+    private void advanceTo(long targetTick) {
+        while (currentTick < targetTick) {
+            int lowest = lowestNonEmptyLevel();
+            if (lowest < 0) {
+                currentTick = targetTick;
+                return;
+            }
+
+            // Nothing lives below `lowest`, so no work happens before its next boundary.
+            long next = ((currentTick >>> (BITS * lowest)) + 1) << (BITS * lowest);
+            if (next > targetTick) {
+                currentTick = targetTick;
+                return;
+            }
+            currentTick = next;
+            onTick();
+        }
+    }
+
+    private void onTick() {
+        int top = 0;
+        for (int l = 1; l < levels; l++) {
+            if ((currentTick & ((1L << (BITS * l)) - 1)) != 0)
+                break;
+            top = l;
+        }
+        for (int l = top; l >= 1; l--)
+            cascade(l, (int) ((currentTick >>> (BITS * l)) & SLOT_MASK));
+
+        int slot = (int) (currentTick & SLOT_MASK);
+        Node node = slots[0][slot];
+        slots[0][slot] = null;
+        while (node != null) {
+            Node next = node.next;
+            levelCounts[0]--;
+            appendReady(node);
+            node = next;
+        }
+    }
+
+    private void cascade(int level, int slot) {
+        Node node = slots[level][slot];
+        slots[level][slot] = null;
+        while (node != null) {
+            Node next = node.next;
+            levelCounts[level]--;
+            place(node);
+            node = next;
+        }
+    }
+
+    private void place(Node node) {
+        long delta = node.expiryTick - currentTick;
+        if (delta <= 0) {
+            appendReady(node);
+            return;
+        }
+
+        long tick = delta > maxDeltaTicks ? currentTick + maxDeltaTicks : node.expiryTick;
+
+        // Lowest level whose parent block is shared with the current tick; that
+        // guarantees the slot is ahead of the current position at this level.
+        int level = levels - 1;
+        for (int l = 0; l < levels - 1; l++) {
+            if ((tick >>> (BITS * (l + 1))) == (currentTick >>> (BITS * (l + 1)))) {
+                level = l;
+                break;
+            }
+        }
+
+        int slot = (int) ((tick >>> (BITS * level)) & SLOT_MASK);
+        node.level = level;
+        node.slot = slot;
+        node.prev = null;
+        node.next = slots[level][slot];
+        if (node.next != null)
+            node.next.prev = node;
+        slots[level][slot] = node;
+        levelCounts[level]++;
+    }
+
+    private void appendReady(Node node) {
+        node.level = READY;
+        node.prev = readyTail;
+        node.next = null;
+        if (readyTail == null)
+            readyHead = node;
+        else
+            readyTail.next = node;
+        readyTail = node;
+    }
+
+    private void unlink(Node node) {
+        Node prev = node.prev;
+        Node next = node.next;
+        if (node.level == READY) {
+            if (prev == null)
+                readyHead = next;
+            else
+                prev.next = next;
+            if (next == null)
+                readyTail = prev;
+            else
+                next.prev = prev;
+        } else {
+            if (prev == null)
+                slots[node.level][node.slot] = next;
+            else
+                prev.next = next;
+            if (next != null)
+                next.prev = prev;
+            levelCounts[node.level]--;
+        }
+        node.prev = null;
+        node.next = null;
+    }
+
+    private int lowestNonEmptyLevel() {
+        for (int l = 0; l < levels; l++) {
+            if (levelCounts[l] > 0)
+                return l;
+        }
+        return -1;
+    }
+
+    private static long ceilDiv(long x, long y) {
+        return -Math.floorDiv(-x, y);
+    }
+
+    private static final class Node {
+        final String key;
+        long expiry;
+        long expiryTick;
+        int level;
+        int slot;
+        Node prev;
+        Node next;
+
+        Node(String key) {
+            this.key = key;
+        }
+    }
+}
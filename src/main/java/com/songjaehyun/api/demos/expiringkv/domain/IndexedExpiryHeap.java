@@ -0,0 +1,131 @@
+package com.songjaehyun.api.demos.expiringkv.domain;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Binary min-heap ordered by expiry time with a key -> node index.
+ *
+ * <p>
+ * Each node tracks its own position in the array, so rescheduling a key is an
+ * in-place decrease/increase-key and cancelling one is an O(log n) removal.
+ * A key therefore owns at most one node and the heap never holds more nodes
+ * than there are live keys.
+ */
+final class IndexedExpiryHeap implements ExpiryQueue {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Map<String, Node> index = new HashMap<>();
+    private Node[] heap = new Node[INITIAL_CAPACITY];
+    private int size;
+
+    @Override
+    public void schedule(String key, long expiry) {
+        Node node = index.get(key);
+        if (node == null) {
+            node = new Node(key, expiry);
+            index.put(key, node);
+            if (size == heap.length)
+                heap = Arrays.copyOf(heap, size * 2);
+            node.pos = size;
+            heap[size++] = node;
+            siftUp(node.pos);
+            return;
+        }
+
+        long previous = node.expiry;
+        node.expiry = expiry;
+        if (expiry < previous)
+            siftUp(node.pos);
+        else if (expiry > previous)
+            siftDown(node.pos);
+    }
+
+    @Override
+    public boolean cancel(String key) {
+        Node node = index.remove(key);
+        if (node == null)
+            return false;
+        removeAt(node.pos);
+        return true;
+    }
+
+    @Override
+    public int pollExpired(long now, int maxNodes, ExpiredKeyConsumer consumer) {
+        int polled = 0;
+        while (polled < maxNodes && size > 0 && heap[0].expiry <= now) {
+            Node node = heap[0];
+            removeAt(0);
+            index.remove(node.key);
+            polled++;
+            consumer.accept(node.key, node.expiry);
+        }
+        return polled;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private void removeAt(int pos) {
+        int last = --size;
+        Node moved = heap[last];
+        heap[last] = null;
+        if (pos == last)
+            return;
+
+        heap[pos] = moved;
+        moved.pos = pos;
+        siftDown(pos);
+        if (heap[pos] == moved)
+            siftUp(pos);
+    }
+
+    private void siftUp(int pos) {
+        Node node = heap[pos];
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            Node p = heap[parent];
+            if (p.expiry <= node.expiry)
+                break;
+            heap[pos] = p;
+            p.pos = pos;
+            pos = parent;
+        }
+        heap[pos] = node;
+        node.pos = pos;
+    }
+
+    private void siftDown(int pos) {
+        Node node = heap[pos];
+        int half = size >>> 1;
+        while (pos < half) {
+            int child = 2 * pos + 1;
+            int right = child + 1;
+            if (right < size && heap[right].expiry < heap[child].expiry)
+                child = right;
+            Node c = heap[child];
+            if (node.expiry <= c.expiry)
+                break;
+            heap[pos] = c;
+            c.pos = pos;
+            pos = child;
+        }
+        heap[pos] = node;
+        node.pos = pos;
+    }
+
+    private static final class Node {
+        final String key;
+        long expiry;
+        int pos;
+
+        Node(String key, long expiry) {
+            this.key = key;
+            this.expiry = expiry;
+        }
+    }
+}
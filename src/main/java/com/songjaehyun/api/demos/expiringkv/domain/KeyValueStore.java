@@ -0,0 +1,204 @@
+package com.songjaehyun.api.demos.expiringkv.domain;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore.Snapshot;
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore.SnapshotEntry;
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore.SnapshotDelta;
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore.SnapshotPage;
+
+/**
+ * Common contract for the expiring key-value demo stores.
+ *
+ * <p>
+ * Implementations:
+ * - {@link ExpiringKeyValueStore}: single map + min-heap guarded by one lock.
+ * - {@link ShardedExpiringKeyValueStore}: N independent segments selected by
+ * key hash, so unrelated keys never contend on the same lock.
+ * - {@link CompactKeyValueStore}: entries packed as UTF-8 into byte pages
+ * behind primitive arrays; several times denser, one lock.
+ *
+ * <p>
+ * All implementations share the same validation rules (non-blank key,
+ * non-null value, 0 < TTL <= 1 year) and throw
+ * {@link IllegalArgumentException} on violation.
+ */
+public interface KeyValueStore {
+
+    void put(String key, String value, long ttlMillis);
+
+    void putIfAbsent(String key, String value, long ttlMillis);
+
+    /**
+     * Put with an absolute expiry instead of a TTL; same bounds apply to the
+     * time remaining.
+     */
+    void putAt(String key, String value, long expiryMillis);
+
+    // ---- atomic read-modify-write; each is one lock acquisition ----
+
+    /**
+     * Writes newValue with a fresh TTL only if the live value equals expected.
+     *
+     * @param expected null to require that the key be absent or expired
+     * @return true if the value was written
+     */
+    boolean compareAndSet(String key, String expected, String newValue, long ttlMillis);
+
+    /**
+     * Writes value with a fresh TTL.
+     *
+     * @return the previous live value, or null if there was none
+     */
+    String getAndSet(String key, String value, long ttlMillis);
+
+    /**
+     * Adds delta to the decimal long held by key. An absent or expired key
+     * counts as 0 and is created with ttlMillis; a live one keeps its expiry.
+     *
+     * @return the new value
+     * @throws IllegalArgumentException if the value is not a decimal long or
+     *                                  the result overflows
+     */
+    long incrementBy(String key, long delta, long ttlMillis);
+
+    /**
+     * Gives a live entry a new TTL, counted from now, without changing its
+     * value; extends or shortens it.
+     *
+     * @return false if the key is absent or expired
+     */
+    boolean touch(String key, long ttlMillis);
+
+    String get(String key);
+
+    boolean remove(String key);
+
+    int size();
+
+    long getRemainingTTL(String key);
+
+    Snapshot snapshot();
+
+    /**
+     * Cursor-based page of live entries with keys strictly greater than
+     * afterKey (null for the first page), in key order.
+     */
+    SnapshotPage snapshotPage(String afterKey, int limit);
+
+    /**
+     * Live state of the keys changed after sinceVersion (a version() or a
+     * previous delta's version), or a full snapshot flagged as such when the
+     * store no longer knows what changed since then. Purges every expired
+     * entry first, however many, so all entries past their expiry show up as
+     * removed.
+     *
+     * @throws IllegalArgumentException if sinceVersion is negative
+     */
+    SnapshotDelta snapshotDelta(long sinceVersion);
+
+    /**
+     * Lazy, weakly consistent iteration over live entries in key order,
+     * starting after afterKey (null for the beginning). Does not hold any lock
+     * between elements.
+     */
+    Iterator<SnapshotEntry> liveEntries(String afterKey);
+
+    /**
+     * Live entries with fromKey <= key < toKey, in key order.
+     *
+     * @param fromKey inclusive lower bound; null for unbounded
+     * @param toKey   exclusive upper bound; null for unbounded
+     * @param limit   maximum entries to return; must be > 0
+     */
+    List<SnapshotEntry> range(String fromKey, String toKey, int limit);
+
+    /**
+     * Live entries whose key starts with prefix, in key order. Equivalent to a
+     * range over [prefix, {@link #prefixEnd(String)}).
+     */
+    default List<SnapshotEntry> scan(String prefix, int limit) {
+        if (prefix == null)
+            throw new IllegalArgumentException("Prefix must not be null");
+        return range(prefix, prefixEnd(prefix), limit);
+    }
+
+    /**
+     * Smallest string greater than every string starting with prefix, or null
+     * if there is none (prefix made only of U+FFFF).
+     */
+    static String prefixEnd(String prefix) {
+        for (int i = prefix.length() - 1; i >= 0; i--) {
+            char c = prefix.charAt(i);
+            if (c != Character.MAX_VALUE)
+                return prefix.substring(0, i) + (char) (c + 1);
+        }
+        return null;
+    }
+
+    /**
+     * Batch put; one lock acquisition per segment. The batch is validated as a
+     * whole before anything is written.
+     */
+    void putAll(List<PutEntry> entries);
+
+    /**
+     * Batch get; one lock acquisition per segment.
+     *
+     * @return live entries in request order; missing keys are omitted
+     */
+    List<SnapshotEntry> getAll(Collection<String> keys);
+
+    /**
+     * Batch remove; one lock acquisition per segment.
+     *
+     * @return number of live entries removed
+     */
+    int removeAll(Collection<String> keys);
+
+    /**
+     * Removes up to maxEntries due expiry nodes. Intended for a background
+     * {@link ExpiryReaper}; regular operations purge on their own.
+     *
+     * @return the number of expiry nodes processed
+     */
+    int reapExpired(int maxEntries);
+
+    /** Structural counters, read without purging. */
+    StoreStats stats();
+
+    /**
+     * Registers a listener for every subsequent effective write. Listeners
+     * cannot be removed; register them while wiring the store.
+     */
+    void addMutationListener(MutationListener listener);
+
+    /**
+     * Version of the store's contents. Increases with every change,
+     * expirations included, and never goes back.
+     */
+    long version();
+
+    /**
+     * The key's live entry with the version that wrote its value, or null.
+     * Not counted as a hit or a miss.
+     */
+    VersionedEntry getVersioned(String key);
+
+    /**
+     * Registers a listener for every subsequent change, expirations included.
+     * Listeners cannot be removed; register them while wiring the store.
+     */
+    void addChangeListener(ChangeListener listener);
+
+    /**
+     * Replaces the observer of lock waits and purges; {@link StoreObserver#NONE}
+     * by default.
+     */
+    void setObserver(StoreObserver observer);
+
+    record PutEntry(String key, String value, long ttlMillis) {
+    }
+}
@@ -0,0 +1,37 @@
+package com.songjaehyun.api.demos.expiringkv.domain;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Least-recently-used eviction backed by an access-ordered LinkedHashMap.
+ */
+final class LruEvictionPolicy implements EvictionPolicy {
+
+    private final LinkedHashMap<String, Boolean> order = new LinkedHashMap<>(16, 0.75f, true);
+
+    @Override
+    public void recordInsert(String key) {
+        order.put(key, Boolean.TRUE);
+    }
+
+    @Override
+    public void recordAccess(String key) {
+        order.get(key);
+    }
+
+    @Override
+    public void recordRemove(String key) {
+        order.remove(key);
+    }
+
+    @Override
+    public String evict() {
+        Iterator<String> it = order.keySet().iterator();
+        if (!it.hasNext())
+            return null;
+        String victim = it.next();
+        it.remove();
+        return victim;
+    }
+}
@@ -0,0 +1,24 @@
+package com.songjaehyun.api.demos.expiringkv.domain;
+
+/**
+ * Observer of the writes a store applies, in the order it applies them.
+ *
+ * <p>
+ * Design:
+ * - Called while the owning segment's lock is held, so for any one key the
+ * callbacks arrive in exactly the order the writes took effect. Implementations
+ * must be fast and must never call back into the store.
+ * - Reports effective changes only: a putIfAbsent that found a live entry
+ * reports nothing, one that inserted reports an onPut. Capacity evictions are
+ * reported as removals; TTL expirations are not reported at all, since the
+ * absolute expiry carried by onPut already says when the entry stops existing.
+ */
+public interface MutationListener {
+
+    /**
+     * @param expiryMillis absolute expiry, in the store clock's milliseconds
+     */
+    void onPut(String key, String value, long expiryMillis);
+
+    void onRemove(String key);
+}
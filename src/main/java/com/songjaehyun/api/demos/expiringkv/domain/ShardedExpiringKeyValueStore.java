@@ -0,0 +1,438 @@
+package com.songjaehyun.api.demos.expiringkv.domain;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore.Snapshot;
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore.SnapshotDelta;
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore.SnapshotEntry;
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore.SnapshotPage;
+
+/**
+ * Lock-striped expiring key-value store.
+ *
+ * <p>
+ * Design:
+ * - Keys are spread over a power-of-two number of {@link ExpiringKeyValueStore}
+ * segments, each with its own map, expiry heap and lock.
+ * - Single-key operations touch exactly one segment, so throughput scales with
+ * the number of cores instead of serializing on one lock.
+ * - size() and snapshot() aggregate across segments; they are not atomic with
+ * respect to concurrent writers on other segments.
+ * - Batch operations group keys by segment and take each segment lock once.
+ * A batch is atomic per segment, not across segments.
+ * - All segments draw versions from one shared counter, so versions are
+ * unique and ordered store-wide.
+ * - Each segment journals its own changes (see {@link StoreOptions}). A delta
+ * reads the shared counter first, then each segment under its lock: any
+ * version up to that reading was assigned under some segment's lock, so by
+ * the time that lock is taken the change is in the journal.
+ *
+ * <p>
+ */
+public final class ShardedExpiringKeyValueStore implements KeyValueStore {
+
+    private static final int MAX_SHARDS = 1 << 16;
+
+    private final LongSupplier nowMillis;
+    private final ExpiringKeyValueStore[] shards;
+    private final int mask;
+    private final AtomicLong versions = new AtomicLong();
+
+    // Rotates the starting segment of reapExpired so a small budget still
+    // reaches every segment over successive calls.
+    private final AtomicInteger reapCursor = new AtomicInteger();
+
+    public ShardedExpiringKeyValueStore() {
+        this(System::currentTimeMillis);
+    }
+
+    public ShardedExpiringKeyValueStore(LongSupplier nowMillis) {
+        this(nowMillis, defaultShardCount());
+    }
+
+    public ShardedExpiringKeyValueStore(LongSupplier nowMillis, int shardCount) {
+        this(nowMillis, shardCount, false);
+    }
+
+    /**
+     * @param nowMillis     time source shared by all segments
+     * @param shardCount    requested number of segments; rounded up to the next
+     *                      power of two
+     * @param lockFreeReads passed to every segment; see
+     *                      {@link ExpiringKeyValueStore#ExpiringKeyValueStore(LongSupplier, boolean)}
+     */
+    public ShardedExpiringKeyValueStore(LongSupplier nowMillis, int shardCount, boolean lockFreeReads) {
+        this(nowMillis, shardCount, StoreOptions.defaults().withLockFreeReads(lockFreeReads));
+    }
+
+    /**
+     * @param nowMillis  time source shared by all segments
+     * @param shardCount requested number of segments; rounded up to the next
+     *                   power of two
+     * @param options    applied to every segment, with capacity bounds split
+     *                   evenly between segments
+     * @throws IllegalArgumentException if shardCount is not in [1, 65536]
+     */
+    public ShardedExpiringKeyValueStore(LongSupplier nowMillis, int shardCount, StoreOptions options) {
+        this.nowMillis = Objects.requireNonNull(nowMillis, "nowMillis");
+        if (shardCount < 1 || shardCount > MAX_SHARDS)
+            throw new IllegalArgumentException("Shard count must be between 1 and " + MAX_SHARDS);
+
+        int n = Integer.highestOneBit(shardCount);
+        if (n < shardCount)
+            n <<= 1;
+
+        StoreOptions segmentOptions = options.dividedAmong(n);
+        this.shards = new ExpiringKeyValueStore[n];
+        for (int i = 0; i < n; i++)
+            shards[i] = new ExpiringKeyValueStore(nowMillis, segmentOptions, versions);
+        this.mask = n - 1;
+    }
+
+    /**
+     * Four segments per available core keeps the chance of two hot keys
+     * sharing a lock low without wasting memory on idle segments.
+     */
+    public static int defaultShardCount() {
+        return Math.min(MAX_SHARDS, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    @Override
+    public void put(String key, String value, long ttlMillis) {
+        shardFor(key).put(key, value, ttlMillis);
+    }
+
+    @Override
+    public void putIfAbsent(String key, String value, long ttlMillis) {
+        shardFor(key).putIfAbsent(key, value, ttlMillis);
+    }
+
+    @Override
+    public void putAt(String key, String value, long expiryMillis) {
+        shardFor(key).putAt(key, value, expiryMillis);
+    }
+
+    @Override
+    public boolean compareAndSet(String key, String expected, String newValue, long ttlMillis) {
+        return shardFor(key).compareAndSet(key, expected, newValue, ttlMillis);
+    }
+
+    @Override
+    public String getAndSet(String key, String value, long ttlMillis) {
+        return shardFor(key).getAndSet(key, value, ttlMillis);
+    }
+
+    @Override
+    public long incrementBy(String key, long delta, long ttlMillis) {
+        return shardFor(key).incrementBy(key, delta, ttlMillis);
+    }
+
+    @Override
+    public boolean touch(String key, long ttlMillis) {
+        return shardFor(key).touch(key, ttlMillis);
+    }
+
+    @Override
+    public String get(String key) {
+        return shardFor(key).get(key);
+    }
+
+    @Override
+    public long version() {
+        return versions.get();
+    }
+
+    @Override
+    public VersionedEntry getVersioned(String key) {
+        return shardFor(key).getVersioned(key);
+    }
+
+    /**
+     * Registered on every segment; events for different segments may be
+     * delivered concurrently and so slightly out of version order.
+     */
+    @Override
+    public void addChangeListener(ChangeListener listener) {
+        for (ExpiringKeyValueStore shard : shards)
+            shard.addChangeListener(listener);
+    }
+
+    @Override
+    public boolean remove(String key) {
+        return shardFor(key).remove(key);
+    }
+
+    @Override
+    public int size() {
+        int total = 0;
+        for (ExpiringKeyValueStore shard : shards)
+            total += shard.size();
+        return total;
+    }
+
+    @Override
+    public long getRemainingTTL(String key) {
+        return shardFor(key).getRemainingTTL(key);
+    }
+
+    /**
+     * Each segment already iterates in key order, so the segment iterators are
+     * merged lazily instead of concatenated and sorted.
+     */
+    @Override
+    public Snapshot snapshot() {
+        long now = nowMillis.getAsLong();
+
+        List<SnapshotEntry> entries = new ArrayList<>();
+        mergedEntriesAfter(null, now).forEachRemaining(entries::add);
+
+        return new Snapshot(now, Collections.unmodifiableList(entries));
+    }
+
+    /**
+     * Purges every segment, then merges their journals; a full snapshot if any
+     * segment cannot answer.
+     */
+    @Override
+    public SnapshotDelta snapshotDelta(long sinceVersion) {
+        ExpiringKeyValueStore.requireVersion(sinceVersion);
+        long now = nowMillis.getAsLong();
+        // Expirations reach the journals only when purged, so drain them all
+        for (ExpiringKeyValueStore shard : shards)
+            shard.purgeAllUnderLock(now);
+        long upTo = versions.get();
+
+        if (sinceVersion <= upTo) {
+            List<SnapshotEntry> upserted = new ArrayList<>();
+            List<String> removed = new ArrayList<>();
+            boolean answered = true;
+            for (ExpiringKeyValueStore shard : shards) {
+                if (!shard.changedSince(sinceVersion, upTo, now, upserted, removed)) {
+                    answered = false;
+                    break;
+                }
+            }
+            if (answered)
+                return SnapshotDelta.changes(now, sinceVersion, upTo, upserted, removed);
+        }
+        return SnapshotDelta.full(sinceVersion, upTo, snapshot());
+    }
+
+    /**
+     * k-way merge over the segments; O(shards + limit * log shards).
+     */
+    @Override
+    public SnapshotPage snapshotPage(String afterKey, int limit) {
+        ExpiringKeyValueStore.requireLimit(limit);
+        long now = nowMillis.getAsLong();
+        return SnapshotPage.collect(now, mergedEntriesAfter(afterKey, now), limit);
+    }
+
+    @Override
+    public Iterator<SnapshotEntry> liveEntries(String afterKey) {
+        return mergedEntriesAfter(afterKey, nowMillis.getAsLong());
+    }
+
+    @Override
+    public List<SnapshotEntry> range(String fromKey, String toKey, int limit) {
+        ExpiringKeyValueStore.requireLimit(limit);
+        long now = nowMillis.getAsLong();
+
+        List<Iterator<SnapshotEntry>> runs = new ArrayList<>(shards.length);
+        for (ExpiringKeyValueStore shard : shards) {
+            shard.purgeUnderLock(now);
+            runs.add(shard.entriesBetween(fromKey, toKey, now));
+        }
+
+        Iterator<SnapshotEntry> it = new MergingIterator(runs);
+        List<SnapshotEntry> entries = new ArrayList<>(Math.min(limit, 256));
+        while (entries.size() < limit && it.hasNext())
+            entries.add(it.next());
+        return entries;
+    }
+
+    private Iterator<SnapshotEntry> mergedEntriesAfter(String afterKey, long now) {
+        List<Iterator<SnapshotEntry>> runs = new ArrayList<>(shards.length);
+        for (ExpiringKeyValueStore shard : shards) {
+            shard.purgeUnderLock(now);
+            runs.add(shard.entriesAfter(afterKey, now));
+        }
+        return new MergingIterator(runs);
+    }
+
+    /**
+     * Validates the whole batch up front so that a bad entry cannot leave
+     * earlier segments written and later ones not.
+     */
+    @Override
+    public void putAll(List<PutEntry> entries) {
+        Objects.requireNonNull(entries, "entries");
+        List<List<PutEntry>> groups = emptyGroups();
+        for (PutEntry e : entries) {
+            int shard = shardIndex(e == null ? null : e.key());
+            shards[shard].checkPut(e);
+            groups.get(shard).add(e);
+        }
+        for (int i = 0; i < shards.length; i++) {
+            if (!groups.get(i).isEmpty())
+                shards[i].putAll(groups.get(i));
+        }
+    }
+
+    @Override
+    public List<SnapshotEntry> getAll(Collection<String> keys) {
+        Objects.requireNonNull(keys, "keys");
+        List<List<String>> groups = groupKeys(keys);
+
+        Map<String, SnapshotEntry> found = new HashMap<>();
+        for (int i = 0; i < shards.length; i++) {
+            if (groups.get(i).isEmpty())
+                continue;
+            for (SnapshotEntry e : shards[i].getAll(groups.get(i)))
+                found.put(e.key(), e);
+        }
+
+        List<SnapshotEntry> ordered = new ArrayList<>(found.size());
+        for (String key : keys) {
+            SnapshotEntry e = found.get(key);
+            if (e != null)
+                ordered.add(e);
+        }
+        return ordered;
+    }
+
+    @Override
+    public int removeAll(Collection<String> keys) {
+        Objects.requireNonNull(keys, "keys");
+        List<List<String>> groups = groupKeys(keys);
+
+        int removed = 0;
+        for (int i = 0; i < shards.length; i++) {
+            if (!groups.get(i).isEmpty())
+                removed += shards[i].removeAll(groups.get(i));
+        }
+        return removed;
+    }
+
+    @Override
+    public int reapExpired(int maxEntries) {
+        int start = reapCursor.getAndIncrement();
+        int processed = 0;
+        for (int i = 0; i < shards.length && processed < maxEntries; i++)
+            processed += shards[(start + i) & mask].reapExpired(maxEntries - processed);
+        return processed;
+    }
+
+    @Override
+    public StoreStats stats() {
+        StoreStats total = StoreStats.EMPTY;
+        for (ExpiringKeyValueStore shard : shards)
+            total = total.plus(shard.stats());
+        return total;
+    }
+
+    /**
+     * Registered on every segment; callbacks for different segments may run
+     * concurrently, callbacks for one key never do.
+     */
+    @Override
+    public void addMutationListener(MutationListener listener) {
+        for (ExpiringKeyValueStore shard : shards)
+            shard.addMutationListener(listener);
+    }
+
+    @Override
+    public void setObserver(StoreObserver observer) {
+        for (ExpiringKeyValueStore shard : shards)
+            shard.setObserver(observer);
+    }
+
+    /**
+     * Null keys are routed to segment 0 so that the segment's own validation
+     * reports them consistently with the unsharded store.
+     */
+    private ExpiringKeyValueStore shardFor(String key) {
+        return shards[shardIndex(key)];
+    }
+
+    private int shardIndex(String key) {
+        if (key == null)
+            return 0;
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private <T> List<List<T>> emptyGroups() {
+        List<List<T>> groups = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++)
+            groups.add(new ArrayList<>());
+        return groups;
+    }
+
+    /** Validates every key before any segment is touched. */
+    private List<List<String>> groupKeys(Collection<String> keys) {
+        List<List<String>> groups = emptyGroups();
+        for (String key : keys) {
+            ExpiringKeyValueStore.requireKey(key);
+            groups.get(shardIndex(key)).add(key);
+        }
+        return groups;
+    }
+
+    /** Merges key-sorted iterators into one key-sorted iterator. */
+    private static final class MergingIterator implements Iterator<SnapshotEntry> {
+        private final PriorityQueue<Run> heads = new PriorityQueue<>(
+                (a, b) -> a.head.key().compareTo(b.head.key()));
+
+        MergingIterator(List<Iterator<SnapshotEntry>> runs) {
+            for (Iterator<SnapshotEntry> it : runs) {
+                if (it.hasNext())
+                    heads.add(new Run(it.next(), it));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public SnapshotEntry next() {
+            Run run = heads.poll();
+            if (run == null)
+                throw new NoSuchElementException();
+            SnapshotEntry result = run.head;
+            if (run.rest.hasNext()) {
+                run.head = run.rest.next();
+                heads.add(run);
+            }
+            return result;
+        }
+
+        private static final class Run {
+            SnapshotEntry head;
+            final Iterator<SnapshotEntry> rest;
+
+            Run(SnapshotEntry head, Iterator<SnapshotEntry> rest) {
+                this.head = head;
+                this.rest = rest;
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.songjaehyun.api.demos.expiringkv.domain;
+
+/**
+ * Receives internal timings of a store, e.g. to feed metrics.
+ *
+ * <p>
+ * Called on hot paths, possibly under the store's lock: implementations must
+ * be fast, must not allocate and must not call back into the store. Arguments
+ * are primitives so that reporting never boxes.
+ */
+public interface StoreObserver {
+
+    /** Reports nothing; the default for every store. */
+    StoreObserver NONE = new StoreObserver() {
+    };
+
+    /**
+     * A caller found the lock held and waited this long for it. Uncontended
+     * acquisitions are not reported.
+     */
+    default void lockWaited(long nanos) {
+    }
+
+    /** One purge pass removed this many expiry nodes; passes that removed none are not reported. */
+    default void purged(int nodes) {
+    }
+}
@@ -0,0 +1,132 @@
+package com.songjaehyun.api.demos.expiringkv.domain;
+
+/**
+ * Tuning knobs for {@link ExpiringKeyValueStore}. Immutable; use
+ * {@link #defaults()} and the with* methods to derive variants.
+ *
+ * @param lockFreeReads        get() and getRemainingTTL() skip the lock and
+ *                             never purge
+ * @param expiryIndex          structure used to find due entries
+ * @param wheelTickMillis      resolution of the timing wheel; ignored for
+ *                             {@link ExpiryIndex#HEAP}
+ * @param maxPurgePerOperation upper bound on expirations processed inline by a
+ *                             single operation; the remainder is left to the
+ *                             next operation or to an {@link ExpiryReaper}
+ * @param maxEntries           capacity bound on live entries;
+ *                             Integer.MAX_VALUE disables it
+ * @param maxWeightBytes       capacity bound on the approximate size of keys
+ *                             plus values; Long.MAX_VALUE disables it
+ * @param eviction             policy used once either bound is exceeded
+ * @param journalCapacity      recent changes kept to answer delta snapshots;
+ *                             0 disables the journal, so every delta is a
+ *                             full snapshot
+ */
+public record StoreOptions(
+        boolean lockFreeReads,
+        ExpiryIndex expiryIndex,
+        long wheelTickMillis,
+        int maxPurgePerOperation,
+        int maxEntries,
+        long maxWeightBytes,
+        Eviction eviction,
+        int journalCapacity) {
+
+    public enum ExpiryIndex {
+        /** Binary min-heap ordered by expiry: O(log n) schedule and expire. */
+        HEAP,
+        /** Hierarchical timing wheel: O(1) schedule and expire, tick-granular. */
+        TIMING_WHEEL
+    }
+
+    public enum Eviction {
+        /** Least recently used. */
+        LRU,
+        /** Frequency-aware admission (W-TinyLFU); resists scans and bursts. */
+        TINY_LFU
+    }
+
+    public StoreOptions {
+        if (expiryIndex == null)
+            throw new IllegalArgumentException("Expiry index must not be null");
+        if (eviction == null)
+            throw new IllegalArgumentException("Eviction must not be null");
+        if (wheelTickMillis <= 0)
+            throw new IllegalArgumentException("Wheel tick must be > 0.");
+        if (maxPurgePerOperation <= 0)
+            throw new IllegalArgumentException("Max purge per operation must be > 0.");
+        if (maxEntries <= 0)
+            throw new IllegalArgumentException("Max entries must be > 0.");
+        if (maxWeightBytes <= 0)
+            throw new IllegalArgumentException("Max weight must be > 0.");
+        if (journalCapacity < 0)
+            throw new IllegalArgumentException("Journal capacity must be >= 0.");
+    }
+
+    /**
+     * Matches the historical behaviour: locked reads, heap index, unbounded
+     * inline purge, no capacity bound, no journal.
+     */
+    public static StoreOptions defaults() {
+        return new StoreOptions(false, ExpiryIndex.HEAP, 10, Integer.MAX_VALUE,
+                Integer.MAX_VALUE, Long.MAX_VALUE, Eviction.TINY_LFU, 0);
+    }
+
+    public StoreOptions withLockFreeReads(boolean lockFreeReads) {
+        return new StoreOptions(lockFreeReads, expiryIndex, wheelTickMillis, maxPurgePerOperation,
+                maxEntries, maxWeightBytes, eviction, journalCapacity);
+    }
+
+    public StoreOptions withExpiryIndex(ExpiryIndex expiryIndex) {
+        return new StoreOptions(lockFreeReads, expiryIndex, wheelTickMillis, maxPurgePerOperation,
+                maxEntries, maxWeightBytes, eviction, journalCapacity);
+    }
+
+    public StoreOptions withWheelTickMillis(long wheelTickMillis) {
+        return new StoreOptions(lockFreeReads, expiryIndex, wheelTickMillis, maxPurgePerOperation,
+                maxEntries, maxWeightBytes, eviction, journalCapacity);
+    }
+
+    public StoreOptions withMaxPurgePerOperation(int maxPurgePerOperation) {
+        return new StoreOptions(lockFreeReads, expiryIndex, wheelTickMillis, maxPurgePerOperation,
+                maxEntries, maxWeightBytes, eviction, journalCapacity);
+    }
+
+    public StoreOptions withMaxEntries(int maxEntries) {
+        return new StoreOptions(lockFreeReads, expiryIndex, wheelTickMillis, maxPurgePerOperation,
+                maxEntries, maxWeightBytes, eviction, journalCapacity);
+    }
+
+    public StoreOptions withMaxWeightBytes(long maxWeightBytes) {
+        return new StoreOptions(lockFreeReads, expiryIndex, wheelTickMillis, maxPurgePerOperation,
+                maxEntries, maxWeightBytes, eviction, journalCapacity);
+    }
+
+    public StoreOptions withEviction(Eviction eviction) {
+        return new StoreOptions(lockFreeReads, expiryIndex, wheelTickMillis, maxPurgePerOperation,
+                maxEntries, maxWeightBytes, eviction, journalCapacity);
+    }
+
+    public StoreOptions withJournalCapacity(int journalCapacity) {
+        return new StoreOptions(lockFreeReads, expiryIndex, wheelTickMillis, maxPurgePerOperation,
+                maxEntries, maxWeightBytes, eviction, journalCapacity);
+    }
+
+    /** Whether either capacity bound is set, so the eviction policy applies. */
+    public boolean bounded() {
+        return maxEntries != Integer.MAX_VALUE || maxWeightBytes != Long.MAX_VALUE;
+    }
+
+    /**
+     * Splits the capacity bounds and the journal evenly across segments
+     * (rounding up) so that a sharded store honours roughly the same overall
+     * budget.
+     */
+    StoreOptions dividedAmong(int segments) {
+        int entries = maxEntries == Integer.MAX_VALUE ? maxEntries
+                : (int) Math.max(1, ((long) maxEntries + segments - 1) / segments);
+        long weight = maxWeightBytes == Long.MAX_VALUE ? maxWeightBytes
+                : Math.max(1, (maxWeightBytes + segments - 1) / segments);
+        int journal = (int) (((long) journalCapacity + segments - 1) / segments);
+        return withMaxEntries(entries).withMaxWeightBytes(weight).withJournalCapacity(journal);
+    }
+}
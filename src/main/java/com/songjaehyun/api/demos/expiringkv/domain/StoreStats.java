@@ -0,0 +1,41 @@
+package com.songjaehyun.api.demos.expiringkv.domain;
+
+/**
+ * Point-in-time counters of a store.
+ *
+ * @param entries     entries held in the map, including expired ones not yet
+ *                    purged
+ * @param expiryNodes nodes held by the expiry index; never exceeds entries
+ * @param weightBytes approximate size of all keys plus values
+ * @param hits        get() calls that found a live entry
+ * @param misses      get() calls that found nothing
+ * @param evictions   entries dropped to honour a capacity bound
+ * @param expirations entries removed because their TTL elapsed
+ */
+public record StoreStats(
+        int entries,
+        int expiryNodes,
+        long weightBytes,
+        long hits,
+        long misses,
+        long evictions,
+        long expirations) {
+
+    public static final StoreStats EMPTY = new StoreStats(0, 0, 0, 0, 0, 0, 0);
+
+    public double hitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 1.0 : (double) hits / requests;
+    }
+
+    public StoreStats plus(StoreStats other) {
+        return new StoreStats(
+                entries + other.entries,
+                expiryNodes + other.expiryNodes,
+                weightBytes + other.weightBytes,
+                hits + other.hits,
+                misses + other.misses,
+                evictions + other.evictions,
+                expirations + other.expirations);
+    }
+}
@@ -0,0 +1,7 @@
+package com.songjaehyun.api.demos.expiringkv.domain;
+
+/**
+ * A live entry together with the store version that wrote its current value.
+ */
+public record VersionedEntry(String key, String value, long expiryMillis, long version) {
+}
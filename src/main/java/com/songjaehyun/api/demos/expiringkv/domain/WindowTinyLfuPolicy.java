@@ -0,0 +1,191 @@
+package com.songjaehyun.api.demos.expiringkv.domain;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * W-TinyLFU eviction (Einziger, Friedman &amp; Manes).
+ *
+ * <p>
+ * Design:
+ * - New keys enter a small LRU admission window (~1% of entries).
+ * - Keys leaving the window become candidates for the main region, a
+ * segmented LRU split into probation and protected (80%) segments.
+ * - When space is needed, the newest candidate competes with the probation
+ * LRU victim; the one with the lower {@link FrequencySketch} estimate is
+ * evicted. One-hit wonders therefore cannot flush frequently used keys.
+ * - A hit in probation promotes the key to protected; protected overflow is
+ * demoted back to probation.
+ */
+final class WindowTinyLfuPolicy implements EvictionPolicy {
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final Map<String, Node> nodes = new HashMap<>();
+    private final FrequencySketch sketch;
+    private final Deque window = new Deque();
+    private final Deque probation = new Deque();
+    private final Deque protectedSegment = new Deque();
+
+    /**
+     * @param expectedEntries sizes the frequency sketch
+     */
+    WindowTinyLfuPolicy(int expectedEntries) {
+        this.sketch = new FrequencySketch(expectedEntries);
+    }
+
+    @Override
+    public void recordInsert(String key) {
+        Node node = nodes.get(key);
+        if (node != null) {
+            recordAccess(key);
+            return;
+        }
+        sketch.increment(key);
+        node = new Node(key);
+        node.region = WINDOW;
+        nodes.put(key, node);
+        window.addLast(node);
+    }
+
+    @Override
+    public void recordAccess(String key) {
+        sketch.increment(key);
+        Node node = nodes.get(key);
+        if (node == null)
+            return;
+
+        switch (node.region) {
+            case WINDOW -> window.moveToBack(node);
+            case PROBATION -> {
+                probation.remove(node);
+                node.region = PROTECTED;
+                protectedSegment.addLast(node);
+                demoteProtectedOverflow();
+            }
+            default -> protectedSegment.moveToBack(node);
+        }
+    }
+
+    @Override
+    public void recordRemove(String key) {
+        Node node = nodes.remove(key);
+        if (node != null)
+            dequeOf(node).remove(node);
+    }
+
+    @Override
+    public String evict() {
+        if (nodes.isEmpty())
+            return null;
+
+        // Window overflow moves into probation; the last one moved is the candidate.
+        Node candidate = null;
+        int windowMax = windowMax();
+        while (window.size > windowMax) {
+            Node node = window.pollFirst();
+            node.region = PROBATION;
+            probation.addLast(node);
+            candidate = node;
+        }
+
+        Node loser;
+        if (candidate == null) {
+            loser = probation.head != null ? probation.head
+                    : protectedSegment.head != null ? protectedSegment.head
+                            : window.head;
+        } else {
+            Node victim = probation.head;
+            if (victim == candidate)
+                victim = protectedSegment.head;
+            if (victim == null)
+                loser = candidate;
+            else
+                loser = sketch.frequency(candidate.key) > sketch.frequency(victim.key) ? victim : candidate;
+        }
+
+        nodes.remove(loser.key);
+        dequeOf(loser).remove(loser);
+        return loser.key;
+    }
+
+    private int windowMax() {
+        return Math.max(1, nodes.size() / 100);
+    }
+
+    private void demoteProtectedOverflow() {
+        int protectedMax = Math.max(1, (nodes.size() - windowMax()) * 8 / 10);
+        while (protectedSegment.size > protectedMax) {
+            Node node = protectedSegment.pollFirst();
+            node.region = PROBATION;
+            probation.addLast(node);
+        }
+    }
+
+    private Deque dequeOf(Node node) {
+        return switch (node.region) {
+            case WINDOW -> window;
+            case PROBATION -> probation;
+            default -> protectedSegment;
+        };
+    }
+
+    private static final class Node {
+        final String key;
+        int region;
+        Node prev;
+        Node next;
+
+        Node(String key) {
+            this.key = key;
+        }
+    }
+
+    /** Intrusive doubly linked list, head = least recently used. */
+    private static final class Deque {
+        Node head;
+        Node tail;
+        int size;
+
+        void addLast(Node node) {
+            node.prev = tail;
+            node.next = null;
+            if (tail == null)
+                head = node;
+            else
+                tail.next = node;
+            tail = node;
+            size++;
+        }
+
+        Node pollFirst() {
+            Node node = head;
+            if (node != null)
+                remove(node);
+            return node;
+        }
+
+        void remove(Node node) {
+            if (node.prev == null)
+                head = node.next;
+            else
+                node.prev.next = node.next;
+            if (node.next == null)
+                tail = node.prev;
+            else
+                node.next.prev = node.prev;
+            node.prev = null;
+            node.next = null;
+            size--;
+        }
+
+        void moveToBack(Node node) {
+            if (tail == node)
+                return;
+            remove(node);
+            addLast(node);
+        }
+    }
+}
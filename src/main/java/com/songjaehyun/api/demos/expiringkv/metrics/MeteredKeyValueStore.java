@@ -0,0 +1,388 @@
+package com.songjaehyun.api.demos.expiringkv.metrics;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import com.songjaehyun.api.demos.expiringkv.domain.ChangeListener;
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore.Snapshot;
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore.SnapshotDelta;
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore.SnapshotEntry;
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore.SnapshotPage;
+import com.songjaehyun.api.demos.expiringkv.domain.KeyValueStore;
+import com.songjaehyun.api.demos.expiringkv.domain.MutationListener;
+import com.songjaehyun.api.demos.expiringkv.domain.StoreObserver;
+import com.songjaehyun.api.demos.expiringkv.domain.StoreStats;
+import com.songjaehyun.api.demos.expiringkv.domain.VersionedEntry;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Publishes a {@link KeyValueStore}'s behaviour to Micrometer.
+ *
+ * <p>
+ * Design:
+ * - Every operation is timed into a per-operation latency histogram
+ * (expiringkv.store.operation, tag op). A call costs two nanoTime() reads and
+ * one record() on a pre-registered timer; nothing is allocated.
+ * - Contended lock waits and purge passes come from the delegate through
+ * {@link StoreTimings}, installed as its {@link StoreObserver}.
+ * - Hits, misses, evictions and expirations are counters, and entries, expiry
+ * nodes and weight are gauges. All of them read {@link StoreStats}, which the
+ * store keeps anyway. Stats are sampled at most once a second, so a scrape
+ * takes each segment lock once, not once per meter.
+ * - Iteration (liveEntries), maintenance (reapExpired) and versioning
+ * (version, getVersioned) pass through untimed.
+ */
+public final class MeteredKeyValueStore implements KeyValueStore, AutoCloseable {
+
+    private static final long STATS_MAX_AGE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final KeyValueStore delegate;
+    private final Timer put;
+    private final Timer putIfAbsent;
+    private final Timer putAt;
+    private final Timer compareAndSet;
+    private final Timer getAndSet;
+    private final Timer incrementBy;
+    private final Timer touch;
+    private final Timer get;
+    private final Timer remove;
+    private final Timer getRemainingTtl;
+    private final Timer putAll;
+    private final Timer getAll;
+    private final Timer removeAll;
+    private final Timer range;
+    private final Timer snapshot;
+    private final Timer snapshotPage;
+    private final Timer snapshotDelta;
+
+    private volatile StoreStats sampled = StoreStats.EMPTY;
+    private volatile long sampledAtNanos = System.nanoTime() - STATS_MAX_AGE_NANOS;
+
+    /**
+     * @param store name of the store, used as the "store" tag
+     */
+    public MeteredKeyValueStore(KeyValueStore delegate, MeterRegistry registry, String store) {
+        this.delegate = Objects.requireNonNull(delegate, "delegate");
+        Objects.requireNonNull(registry, "registry");
+
+        this.put = timer(registry, store, "put");
+        this.putIfAbsent = timer(registry, store, "put_if_absent");
+        this.putAt = timer(registry, store, "put_at");
+        this.compareAndSet = timer(registry, store, "compare_and_set");
+        this.getAndSet = timer(registry, store, "get_and_set");
+        this.incrementBy = timer(registry, store, "increment_by");
+        this.touch = timer(registry, store, "touch");
+        this.get = timer(registry, store, "get");
+        this.remove = timer(registry, store, "remove");
+        this.getRemainingTtl = timer(registry, store, "get_remaining_ttl");
+        this.putAll = timer(registry, store, "put_all");
+        this.getAll = timer(registry, store, "get_all");
+        this.removeAll = timer(registry, store, "remove_all");
+        this.range = timer(registry, store, "range");
+        this.snapshot = timer(registry, store, "snapshot");
+        this.snapshotPage = timer(registry, store, "snapshot_page");
+        this.snapshotDelta = timer(registry, store, "snapshot_delta");
+
+        delegate.setObserver(new StoreTimings(registry, store));
+
+        counter(registry, store, "expiringkv.store.hits", "get() calls that found a live entry", StoreStats::hits);
+        counter(registry, store, "expiringkv.store.misses", "get() calls that found nothing", StoreStats::misses);
+        counter(registry, store, "expiringkv.store.evictions", "Entries dropped to honour a capacity bound",
+                StoreStats::evictions);
+        counter(registry, store, "expiringkv.store.expirations", "Entries removed because their TTL elapsed",
+                StoreStats::expirations);
+        gauge(registry, store, "expiringkv.store.entries", "Entries in the map, including unpurged expired ones",
+                StoreStats::entries);
+        gauge(registry, store, "expiringkv.store.expiry.nodes", "Nodes in the expiry index",
+                StoreStats::expiryNodes);
+        Gauge.builder("expiringkv.store.weight", this, m -> m.sample().weightBytes())
+                .description("Approximate size of all keys and values")
+                .baseUnit("bytes")
+                .tag("store", store)
+                .register(registry);
+    }
+
+    private static Timer timer(MeterRegistry registry, String store, String op) {
+        return Timer.builder("expiringkv.store.operation")
+                .description("Latency of store operations")
+                .tag("store", store)
+                .tag("op", op)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private void counter(MeterRegistry registry, String store, String name, String description,
+            StatsField field) {
+        FunctionCounter.builder(name, this, m -> field.read(m.sample()))
+                .description(description)
+                .tag("store", store)
+                .register(registry);
+    }
+
+    private void gauge(MeterRegistry registry, String store, String name, String description, StatsField field) {
+        Gauge.builder(name, this, m -> field.read(m.sample()))
+                .description(description)
+                .tag("store", store)
+                .register(registry);
+    }
+
+    @FunctionalInterface
+    private interface StatsField {
+        double read(StoreStats stats);
+    }
+
+    /** The delegate's stats, at most STATS_MAX_AGE_NANOS old. */
+    private StoreStats sample() {
+        long now = System.nanoTime();
+        if (now - sampledAtNanos >= STATS_MAX_AGE_NANOS) {
+            sampled = delegate.stats();
+            sampledAtNanos = now;
+        }
+        return sampled;
+    }
+
+    @Override
+    public void close() {
+        if (!(delegate instanceof AutoCloseable closeable))
+            return;
+        try {
+            closeable.close();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            if (e instanceof InterruptedException)
+                Thread.currentThread().interrupt();
+            throw new IllegalStateException("Failed to close store", e);
+        }
+    }
+
+    // ----------------------------
+    // Timed operations
+    // ----------------------------
+
+    @Override
+    public void put(String key, String value, long ttlMillis) {
+        long start = System.nanoTime();
+        try {
+            delegate.put(key, value, ttlMillis);
+        } finally {
+            put.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void putIfAbsent(String key, String value, long ttlMillis) {
+        long start = System.nanoTime();
+        try {
+            delegate.putIfAbsent(key, value, ttlMillis);
+        } finally {
+            putIfAbsent.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void putAt(String key, String value, long expiryMillis) {
+        long start = System.nanoTime();
+        try {
+            delegate.putAt(key, value, expiryMillis);
+        } finally {
+            putAt.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public boolean compareAndSet(String key, String expected, String newValue, long ttlMillis) {
+        long start = System.nanoTime();
+        try {
+            return delegate.compareAndSet(key, expected, newValue, ttlMillis);
+        } finally {
+            compareAndSet.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public String getAndSet(String key, String value, long ttlMillis) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getAndSet(key, value, ttlMillis);
+        } finally {
+            getAndSet.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public long incrementBy(String key, long delta, long ttlMillis) {
+        long start = System.nanoTime();
+        try {
+            return delegate.incrementBy(key, delta, ttlMillis);
+        } finally {
+            incrementBy.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public boolean touch(String key, long ttlMillis) {
+        long start = System.nanoTime();
+        try {
+            return delegate.touch(key, ttlMillis);
+        } finally {
+            touch.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public String get(String key) {
+        long start = System.nanoTime();
+        try {
+            return delegate.get(key);
+        } finally {
+            get.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public boolean remove(String key) {
+        long start = System.nanoTime();
+        try {
+            return delegate.remove(key);
+        } finally {
+            remove.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public long getRemainingTTL(String key) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getRemainingTTL(key);
+        } finally {
+            getRemainingTtl.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void putAll(List<PutEntry> entries) {
+        long start = System.nanoTime();
+        try {
+            delegate.putAll(entries);
+        } finally {
+            putAll.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public List<SnapshotEntry> getAll(Collection<String> keys) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getAll(keys);
+        } finally {
+            getAll.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public int removeAll(Collection<String> keys) {
+        long start = System.nanoTime();
+        try {
+            return delegate.removeAll(keys);
+        } finally {
+            removeAll.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public List<SnapshotEntry> range(String fromKey, String toKey, int limit) {
+        long start = System.nanoTime();
+        try {
+            return delegate.range(fromKey, toKey, limit);
+        } finally {
+            range.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public Snapshot snapshot() {
+        long start = System.nanoTime();
+        try {
+            return delegate.snapshot();
+        } finally {
+            snapshot.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public SnapshotPage snapshotPage(String afterKey, int limit) {
+        long start = System.nanoTime();
+        try {
+            return delegate.snapshotPage(afterKey, limit);
+        } finally {
+            snapshotPage.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public SnapshotDelta snapshotDelta(long sinceVersion) {
+        long start = System.nanoTime();
+        try {
+            return delegate.snapshotDelta(sinceVersion);
+        } finally {
+            snapshotDelta.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // ----------------------------
+    // Untimed: iteration, maintenance, wiring
+    // ----------------------------
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public Iterator<SnapshotEntry> liveEntries(String afterKey) {
+        return delegate.liveEntries(afterKey);
+    }
+
+    @Override
+    public int reapExpired(int maxEntries) {
+        return delegate.reapExpired(maxEntries);
+    }
+
+    @Override
+    public StoreStats stats() {
+        return delegate.stats();
+    }
+
+    @Override
+    public long version() {
+        return delegate.version();
+    }
+
+    @Override
+    public VersionedEntry getVersioned(String key) {
+        return delegate.getVersioned(key);
+    }
+
+    @Override
+    public void addChangeListener(ChangeListener listener) {
+        delegate.addChangeListener(listener);
+    }
+
+    @Override
+    public void addMutationListener(MutationListener listener) {
+        delegate.addMutationListener(listener);
+    }
+
+    @Override
+    public void setObserver(StoreObserver observer) {
+        delegate.setObserver(observer);
+    }
+}
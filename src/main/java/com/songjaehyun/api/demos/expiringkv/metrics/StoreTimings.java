@@ -0,0 +1,47 @@
+package com.songjaehyun.api.demos.expiringkv.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import com.songjaehyun.api.demos.expiringkv.domain.StoreObserver;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Records a store's contended lock waits and purge passes as Micrometer
+ * histograms, tagged with the store's name.
+ *
+ * <p>
+ * Meters are registered once; each report is a single record() on an
+ * existing meter, which does not allocate.
+ */
+public final class StoreTimings implements StoreObserver {
+
+    private final Timer lockWait;
+    private final DistributionSummary purged;
+
+    public StoreTimings(MeterRegistry registry, String store) {
+        this.lockWait = Timer.builder("expiringkv.store.lock.wait")
+                .description("Time spent waiting for a contended store lock")
+                .tag("store", store)
+                .publishPercentileHistogram()
+                .register(registry);
+        this.purged = DistributionSummary.builder("expiringkv.store.purged")
+                .description("Expiry nodes removed per purge pass that removed any")
+                .baseUnit("entries")
+                .tag("store", store)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    @Override
+    public void lockWaited(long nanos) {
+        lockWait.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void purged(int nodes) {
+        purged.record(nodes);
+    }
+}
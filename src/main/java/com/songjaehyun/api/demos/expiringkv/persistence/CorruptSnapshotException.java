@@ -0,0 +1,20 @@
+package com.songjaehyun.api.demos.expiringkv.persistence;
+
+import java.io.IOException;
+
+/**
+ * A {@link BinarySnapshot} dump that is not a dump, is truncated, or fails a
+ * block checksum. Distinguishes bad input from I/O failures.
+ */
+public final class CorruptSnapshotException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CorruptSnapshotException(String message) {
+        super(message);
+    }
+
+    public CorruptSnapshotException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,37 @@
+package com.songjaehyun.api.demos.expiringkv.persistence;
+
+import java.nio.file.Path;
+
+/**
+ * Settings for {@link DurableKeyValueStore}.
+ *
+ * @param directory                where log segments and the snapshot live;
+ *                                 created if missing
+ * @param fsyncPolicy              when appended records are forced to disk
+ * @param flushIntervalMillis      longest a record waits in memory before the
+ *                                 log writer picks it up
+ * @param fsyncIntervalMillis      minimum spacing of fsyncs under
+ *                                 {@link FsyncPolicy#INTERVAL}
+ * @param compactionIntervalMillis delay between compacted snapshots; each one
+ *                                 lets the log segments it covers be deleted
+ */
+public record DurabilityOptions(
+        Path directory,
+        FsyncPolicy fsyncPolicy,
+        long flushIntervalMillis,
+        long fsyncIntervalMillis,
+        long compactionIntervalMillis) {
+
+    public DurabilityOptions {
+        if (directory == null)
+            throw new IllegalArgumentException("Directory must not be null");
+        if (fsyncPolicy == null)
+            throw new IllegalArgumentException("Fsync policy must not be null");
+        if (flushIntervalMillis <= 0)
+            throw new IllegalArgumentException("Flush interval must be > 0.");
+        if (fsyncIntervalMillis <= 0)
+            throw new IllegalArgumentException("Fsync interval must be > 0.");
+        if (compactionIntervalMillis <= 0)
+            throw new IllegalArgumentException("Compaction interval must be > 0.");
+    }
+}
@@ -0,0 +1,354 @@
+package com.songjaehyun.api.demos.expiringkv.persistence;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import com.songjaehyun.api.demos.expiringkv.domain.ChangeListener;
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore.Snapshot;
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore.SnapshotDelta;
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore.SnapshotEntry;
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore.SnapshotPage;
+import com.songjaehyun.api.demos.expiringkv.domain.KeyValueStore;
+import com.songjaehyun.api.demos.expiringkv.domain.MutationListener;
+import com.songjaehyun.api.demos.expiringkv.domain.StoreObserver;
+import com.songjaehyun.api.demos.expiringkv.domain.StoreStats;
+import com.songjaehyun.api.demos.expiringkv.domain.VersionedEntry;
+
+/**
+ * Makes any {@link KeyValueStore} survive restarts.
+ *
+ * <p>
+ * Design:
+ * - On construction the delegate is rebuilt from the last compacted snapshot
+ * plus every log segment written after it. Puts carry absolute expiries, so a
+ * put that has expired by replay time is applied as a removal instead.
+ * - Afterwards a {@link WriteAheadLog} is registered as the delegate's
+ * {@link MutationListener}; writes are logged in the order the delegate
+ * applied them, and under {@link FsyncPolicy#ALWAYS} a write returns only once
+ * it is durable.
+ * - Periodically the log is rotated and the live entries are written to a new
+ * snapshot, after which the segments it covers are deleted. The snapshot is
+ * taken without blocking writers: anything that races with it is also in the
+ * newer segment, and replaying puts and removes in order is idempotent.
+ * A failed pass leaves the log growing until one succeeds, so failures are
+ * counted in {@link #compactionFailures()}.
+ * - Reads go straight to the delegate.
+ */
+public final class DurableKeyValueStore implements KeyValueStore, AutoCloseable {
+
+    private final KeyValueStore delegate;
+    private final Path directory;
+    private final WriteAheadLog wal;
+    private final RecoveryStats recovery;
+    private final ReentrantLock compactionLock = new ReentrantLock();
+    private final ScheduledExecutorService compactor;
+    private final AtomicLong compactionFailures = new AtomicLong();
+    private volatile Exception lastCompactionFailure;
+
+    /**
+     * @param delegate  an empty store with no listeners; owned by this
+     *                  instance from now on
+     * @param nowMillis the delegate's time source, used to skip expired
+     *                  entries during recovery
+     * @throws IOException if the directory or its files cannot be read
+     */
+    public DurableKeyValueStore(KeyValueStore delegate, LongSupplier nowMillis, DurabilityOptions options)
+            throws IOException {
+        this.delegate = Objects.requireNonNull(delegate, "delegate");
+        Objects.requireNonNull(nowMillis, "nowMillis");
+        Objects.requireNonNull(options, "options");
+        this.directory = Files.createDirectories(options.directory());
+
+        long started = System.nanoTime();
+        Replayer replayer = new Replayer(nowMillis.getAsLong());
+
+        SnapshotFile.Loaded snapshot = SnapshotFile.load(directory, replayer);
+        long logRecords = 0;
+        int torn = 0;
+        long nextSegment = snapshot.firstSegment();
+        for (long segment : WriteAheadLog.segments(directory)) {
+            Path file = WriteAheadLog.segmentPath(directory, segment);
+            if (segment < snapshot.firstSegment()) {
+                Files.delete(file);
+                continue;
+            }
+            LogRecords.ReplayResult result = LogRecords.replay(file, 0, replayer);
+            logRecords += result.records();
+            if (result.torn())
+                torn++;
+            nextSegment = segment + 1;
+        }
+
+        this.recovery = new RecoveryStats(snapshot.entries(), logRecords, replayer.skippedExpired, torn,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+
+        // Always a fresh segment: never append behind a torn tail
+        this.wal = new WriteAheadLog(directory, nextSegment, options);
+        delegate.addMutationListener(wal);
+
+        this.compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "expiring-kv-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = options.compactionIntervalMillis();
+        compactor.scheduleWithFixedDelay(this::compactQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public RecoveryStats recovery() {
+        return recovery;
+    }
+
+    /**
+     * Writes a compacted snapshot and deletes the log segments it supersedes.
+     * Runs on a schedule; callable directly, e.g. before a planned shutdown.
+     *
+     * @return number of entries in the snapshot
+     * @throws IOException if the snapshot cannot be written; the log is left
+     *                     untouched and remains authoritative
+     */
+    public long compact() throws IOException {
+        compactionLock.lock();
+        try {
+            long firstSegment = wal.rotate();
+            long written = SnapshotFile.write(directory, firstSegment, delegate.liveEntries(null));
+            for (long segment : WriteAheadLog.segments(directory)) {
+                if (segment < firstSegment)
+                    Files.deleteIfExists(WriteAheadLog.segmentPath(directory, segment));
+            }
+            return written;
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    /** Scheduled compaction passes that failed so far. */
+    public long compactionFailures() {
+        return compactionFailures.get();
+    }
+
+    /** What the most recent failed pass threw; null if none has. */
+    public Exception lastCompactionFailure() {
+        return lastCompactionFailure;
+    }
+
+    /** Records failures instead of throwing, so one bad pass does not cancel the schedule. */
+    void compactQuietly() {
+        try {
+            compact();
+        } catch (IOException | RuntimeException e) {
+            // the log still holds everything; the next pass retries
+            lastCompactionFailure = e;
+            compactionFailures.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void close() {
+        compactor.shutdownNow();
+        compactionLock.lock();
+        try {
+            wal.close();
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    // ----------------------------
+    // Writes: delegate, then wait for durability if the policy asks for it
+    // ----------------------------
+
+    @Override
+    public void put(String key, String value, long ttlMillis) {
+        delegate.put(key, value, ttlMillis);
+        wal.awaitDurable();
+    }
+
+    @Override
+    public void putIfAbsent(String key, String value, long ttlMillis) {
+        delegate.putIfAbsent(key, value, ttlMillis);
+        wal.awaitDurable();
+    }
+
+    @Override
+    public void putAt(String key, String value, long expiryMillis) {
+        delegate.putAt(key, value, expiryMillis);
+        wal.awaitDurable();
+    }
+
+    @Override
+    public boolean compareAndSet(String key, String expected, String newValue, long ttlMillis) {
+        boolean written = delegate.compareAndSet(key, expected, newValue, ttlMillis);
+        wal.awaitDurable();
+        return written;
+    }
+
+    @Override
+    public String getAndSet(String key, String value, long ttlMillis) {
+        String previous = delegate.getAndSet(key, value, ttlMillis);
+        wal.awaitDurable();
+        return previous;
+    }
+
+    @Override
+    public long incrementBy(String key, long delta, long ttlMillis) {
+        long value = delegate.incrementBy(key, delta, ttlMillis);
+        wal.awaitDurable();
+        return value;
+    }
+
+    @Override
+    public boolean touch(String key, long ttlMillis) {
+        boolean touched = delegate.touch(key, ttlMillis);
+        wal.awaitDurable();
+        return touched;
+    }
+
+    @Override
+    public boolean remove(String key) {
+        boolean removed = delegate.remove(key);
+        wal.awaitDurable();
+        return removed;
+    }
+
+    @Override
+    public void putAll(List<PutEntry> entries) {
+        delegate.putAll(entries);
+        wal.awaitDurable();
+    }
+
+    @Override
+    public int removeAll(Collection<String> keys) {
+        int removed = delegate.removeAll(keys);
+        wal.awaitDurable();
+        return removed;
+    }
+
+    // ----------------------------
+    // Reads and maintenance: straight to the delegate
+    // ----------------------------
+
+    @Override
+    public String get(String key) {
+        return delegate.get(key);
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public long getRemainingTTL(String key) {
+        return delegate.getRemainingTTL(key);
+    }
+
+    @Override
+    public Snapshot snapshot() {
+        return delegate.snapshot();
+    }
+
+    @Override
+    public SnapshotPage snapshotPage(String afterKey, int limit) {
+        return delegate.snapshotPage(afterKey, limit);
+    }
+
+    @Override
+    public SnapshotDelta snapshotDelta(long sinceVersion) {
+        return delegate.snapshotDelta(sinceVersion);
+    }
+
+    @Override
+    public Iterator<SnapshotEntry> liveEntries(String afterKey) {
+        return delegate.liveEntries(afterKey);
+    }
+
+    @Override
+    public List<SnapshotEntry> range(String fromKey, String toKey, int limit) {
+        return delegate.range(fromKey, toKey, limit);
+    }
+
+    @Override
+    public List<SnapshotEntry> getAll(Collection<String> keys) {
+        return delegate.getAll(keys);
+    }
+
+    @Override
+    public int reapExpired(int maxEntries) {
+        return delegate.reapExpired(maxEntries);
+    }
+
+    @Override
+    public StoreStats stats() {
+        return delegate.stats();
+    }
+
+    @Override
+    public long version() {
+        return delegate.version();
+    }
+
+    @Override
+    public VersionedEntry getVersioned(String key) {
+        return delegate.getVersioned(key);
+    }
+
+    @Override
+    public void addChangeListener(ChangeListener listener) {
+        delegate.addChangeListener(listener);
+    }
+
+    @Override
+    public void addMutationListener(MutationListener listener) {
+        delegate.addMutationListener(listener);
+    }
+
+    @Override
+    public void setObserver(StoreObserver observer) {
+        delegate.setObserver(observer);
+    }
+
+    /**
+     * Applies recovered records to the delegate before the log is attached,
+     * so replay is not logged again.
+     */
+    private final class Replayer implements LogRecords.Visitor {
+        private final long now;
+        private long skippedExpired;
+
+        Replayer(long now) {
+            this.now = now;
+        }
+
+        @Override
+        public void put(String key, String value, long expiryMillis) {
+            if (expiryMillis > now) {
+                try {
+                    delegate.putAt(key, value, expiryMillis);
+                    return;
+                } catch (IllegalArgumentException e) {
+                    // out of bounds under the current clock or options
+                }
+            }
+            // The record still supersedes whatever an older one put there
+            delegate.remove(key);
+            skippedExpired++;
+        }
+
+        @Override
+        public void remove(String key) {
+            delegate.remove(key);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.songjaehyun.api.demos.expiringkv.persistence;
+
+/**
+ * When the write-ahead log forces written records to stable storage.
+ */
+public enum FsyncPolicy {
+    /**
+     * fsync every group commit; a write returns only once its group is
+     * durable. Concurrent writers share one fsync.
+     */
+    ALWAYS,
+    /**
+     * fsync at most once per fsync interval; a write returns immediately and
+     * a crash may lose up to one interval of acknowledged writes.
+     */
+    INTERVAL,
+    /**
+     * Never fsync explicitly; the OS flushes the page cache when it sees fit.
+     * Survives a process crash, not a machine crash.
+     */
+    NEVER
+}
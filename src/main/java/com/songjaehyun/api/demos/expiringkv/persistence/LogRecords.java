@@ -0,0 +1,170 @@
+package com.songjaehyun.api.demos.expiringkv.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Record framing of write-ahead log segments.
+ *
+ * <p>
+ * Layout (big-endian):
+ * - frame: int payloadLength, int crc32(payload), payload
+ * - put payload: byte 1, long expiryMillis, int keyLength, key, int
+ * valueLength, value
+ * - remove payload: byte 2, int keyLength, key
+ * Strings are UTF-8. A frame that is cut short or fails its checksum marks the
+ * end of the readable file: everything before it is trusted, nothing after.
+ */
+final class LogRecords {
+
+    static final byte PUT = 1;
+    static final byte REMOVE = 2;
+
+    static final int FRAME_HEADER_BYTES = 8;
+
+    // Files are mapped in windows so a multi-gigabyte file needs no single
+    // mapping larger than this; a record is never larger than one window.
+    private static final long MAP_WINDOW_BYTES = 1L << 30;
+    private static final int MAX_PAYLOAD_BYTES = (int) MAP_WINDOW_BYTES - FRAME_HEADER_BYTES;
+
+    private LogRecords() {
+    }
+
+    interface Visitor {
+        void put(String key, String value, long expiryMillis);
+
+        void remove(String key);
+    }
+
+    static int putFrameSize(byte[] key, byte[] value) {
+        return FRAME_HEADER_BYTES + 1 + 8 + 4 + key.length + 4 + value.length;
+    }
+
+    static int removeFrameSize(byte[] key) {
+        return FRAME_HEADER_BYTES + 1 + 4 + key.length;
+    }
+
+    /** Caller guarantees dst has {@link #putFrameSize} bytes remaining. */
+    static void writePut(ByteBuffer dst, CRC32 crc, byte[] key, byte[] value, long expiryMillis) {
+        int start = beginFrame(dst);
+        dst.put(PUT).putLong(expiryMillis).putInt(key.length).put(key).putInt(value.length).put(value);
+        endFrame(dst, crc, start);
+    }
+
+    /** Caller guarantees dst has {@link #removeFrameSize} bytes remaining. */
+    static void writeRemove(ByteBuffer dst, CRC32 crc, byte[] key) {
+        int start = beginFrame(dst);
+        dst.put(REMOVE).putInt(key.length).put(key);
+        endFrame(dst, crc, start);
+    }
+
+    private static int beginFrame(ByteBuffer dst) {
+        int start = dst.position();
+        dst.position(start + FRAME_HEADER_BYTES);
+        return start;
+    }
+
+    private static void endFrame(ByteBuffer dst, CRC32 crc, int start) {
+        int payloadStart = start + FRAME_HEADER_BYTES;
+        int length = dst.position() - payloadStart;
+        crc.reset();
+        crc.update(dst.slice(payloadStart, length));
+        dst.putInt(start, length).putInt(start + 4, (int) crc.getValue());
+    }
+
+    /**
+     * @param records intact records replayed
+     * @param torn    true if replay stopped at a cut-short or corrupt frame
+     *                before the end of the file
+     */
+    record ReplayResult(long records, boolean torn) {
+    }
+
+    /**
+     * Replays every intact record of file from offset on, mapping the file
+     * read-only in windows.
+     */
+    static ReplayResult replay(Path file, long offset, Visitor visitor) throws IOException {
+        CRC32 crc = new CRC32();
+        long records = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = offset;
+            while (position < size) {
+                long window = Math.min(size - position, MAP_WINDOW_BYTES);
+                long windowEnd = position + window;
+                MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, position, window);
+                int consumed = 0;
+                int frame;
+                while ((frame = readFrame(buf, consumed, crc, visitor)) > 0) {
+                    consumed += frame;
+                    records++;
+                }
+                position += consumed;
+                // Remap from the first incomplete frame unless it cannot get
+                // any more complete: it is cut off by the end of the file, or
+                // already spans a whole window.
+                if (frame < 0 || (position < size && (windowEnd == size || consumed == 0)))
+                    return new ReplayResult(records, true);
+            }
+        }
+        return new ReplayResult(records, false);
+    }
+
+    /**
+     * @return frame size if a record was read, 0 if the buffer ends inside the
+     *         frame, -1 if the frame is corrupt
+     */
+    private static int readFrame(ByteBuffer buf, int at, CRC32 crc, Visitor visitor) {
+        if (buf.limit() - at < FRAME_HEADER_BYTES)
+            return 0;
+        int length = buf.getInt(at);
+        int checksum = buf.getInt(at + 4);
+        if (length <= 0 || length > MAX_PAYLOAD_BYTES)
+            return -1;
+        if (buf.limit() - at - FRAME_HEADER_BYTES < length)
+            return 0;
+
+        ByteBuffer payload = buf.slice(at + FRAME_HEADER_BYTES, length);
+        crc.reset();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != checksum)
+            return -1;
+
+        byte type = payload.get();
+        if (type == PUT && payload.remaining() >= 8) {
+            long expiry = payload.getLong();
+            String key = readString(payload);
+            String value = key == null ? null : readString(payload);
+            if (value == null || payload.hasRemaining())
+                return -1;
+            visitor.put(key, value, expiry);
+        } else if (type == REMOVE) {
+            String key = readString(payload);
+            if (key == null || payload.hasRemaining())
+                return -1;
+            visitor.remove(key);
+        } else {
+            return -1;
+        }
+        return FRAME_HEADER_BYTES + length;
+    }
+
+    /** @return the string, or null if the length prefix does not fit */
+    private static String readString(ByteBuffer buf) {
+        if (buf.remaining() < 4)
+            return null;
+        int length = buf.getInt();
+        if (length < 0 || length > buf.remaining())
+            return null;
+        byte[] bytes = new byte[length];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,19 @@
+package com.songjaehyun.api.demos.expiringkv.persistence;
+
+/**
+ * What {@link DurableKeyValueStore} found when it started.
+ *
+ * @param snapshotEntries entries loaded from the compacted snapshot
+ * @param logRecords      records replayed from log segments
+ * @param skippedExpired  puts whose absolute expiry had already passed
+ * @param tornSegments    files whose tail was incomplete or failed its
+ *                        checksum; replay of that file stopped there
+ * @param elapsedMillis   wall time spent recovering
+ */
+public record RecoveryStats(
+        long snapshotEntries,
+        long logRecords,
+        long skippedExpired,
+        int tornSegments,
+        long elapsedMillis) {
+}
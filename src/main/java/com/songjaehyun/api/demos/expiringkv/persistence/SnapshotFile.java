@@ -0,0 +1,96 @@
+package com.songjaehyun.api.demos.expiringkv.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore.SnapshotEntry;
+
+/**
+ * Compacted snapshot: a header naming the first log segment that is not
+ * covered, followed by a {@link BinarySnapshot} dump of the live entries.
+ *
+ * <p>
+ * Design:
+ * - Written to a temporary file, forced, then atomically renamed over the
+ * previous snapshot, so a crash mid-write leaves the old snapshot intact.
+ * - Read back through {@link BinarySnapshot#read}, i.e. memory-mapped, which
+ * lets recovery stream millions of entries without read() copies.
+ */
+final class SnapshotFile {
+
+    static final String FILE_NAME = "snapshot.bin";
+    private static final String TEMP_NAME = "snapshot.bin.tmp";
+
+    private static final int MAGIC = 0x454b5653; // "EKVS"
+    // 2: the body is a BinarySnapshot dump; version 1 held LogRecords frames
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 4 + 4 + 8;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * @param firstSegment first log segment whose records are not reflected in
+     *                     entries
+     * @return number of entries written
+     */
+    static long write(Path directory, long firstSegment, Iterator<SnapshotEntry> entries) throws IOException {
+        Path temp = directory.resolve(TEMP_NAME);
+        long written;
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putLong(firstSegment).flip();
+            while (header.hasRemaining())
+                channel.write(header);
+            written = BinarySnapshot.export(entries, channel);
+            channel.force(true);
+        }
+
+        Files.move(temp, directory.resolve(FILE_NAME),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return written;
+    }
+
+    /**
+     * @param firstSegment first log segment not covered by the snapshot; 0
+     *                     when there was no snapshot
+     * @param entries      entries replayed
+     */
+    record Loaded(long firstSegment, long entries) {
+    }
+
+    /**
+     * Replays the snapshot in directory, if there is one. Written whole,
+     * forced and renamed: a damaged snapshot means the disk is lying, not that
+     * we crashed, so it fails recovery rather than being half-loaded.
+     */
+    static Loaded load(Path directory, LogRecords.Visitor visitor) throws IOException {
+        Path file = directory.resolve(FILE_NAME);
+        if (!Files.exists(file))
+            return new Loaded(0, 0);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // keep reading
+            }
+        }
+        header.flip();
+        if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC)
+            throw new IOException("Not a snapshot file: " + file);
+        int version = header.getInt();
+        if (version != VERSION)
+            throw new IOException("Unsupported snapshot version " + version + " (expected " + VERSION + "): " + file);
+        long firstSegment = header.getLong();
+
+        return new Loaded(firstSegment, BinarySnapshot.read(file, HEADER_BYTES, visitor));
+    }
+}
@@ -0,0 +1,346 @@
+package com.songjaehyun.api.demos.expiringkv.persistence;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import com.songjaehyun.api.demos.expiringkv.domain.MutationListener;
+
+/**
+ * Append-only, group-committed log of store mutations, split into numbered
+ * segment files.
+ *
+ * <p>
+ * Design:
+ * - Registered as a {@link MutationListener}, so appends happen under the
+ * store's segment lock and the log order per key matches the store. An append
+ * only encodes into an in-memory buffer; it never touches the disk.
+ * - One writer thread swaps the buffer out and writes it with a single
+ * FileChannel call, then fsyncs according to the {@link FsyncPolicy}. Every
+ * append that arrived while the previous batch was being written or forced
+ * goes out in the next batch, so concurrent writers share one fsync.
+ * - An idle writer parks without a timeout; the first append into an empty
+ * buffer wakes it, and it then gathers appends for up to the flush interval.
+ * It only wakes on a timer while forced-but-not-yet-synced data waits for
+ * its {@link FsyncPolicy#INTERVAL} fsync.
+ * - Under {@link FsyncPolicy#ALWAYS}, {@link #awaitDurable()} blocks the
+ * calling thread until its own last append is forced. It is called after the
+ * store lock is released, so waiting never blocks other keys.
+ * - {@link #rotate()} starts a new segment; everything appended before it
+ * returns lives in older segments, which a snapshot can then supersede.
+ */
+final class WriteAheadLog implements MutationListener, AutoCloseable {
+
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int INITIAL_BUFFER_BYTES = 64 * 1024;
+
+    private final Path directory;
+    private final FsyncPolicy fsyncPolicy;
+    private final long flushIntervalNanos;
+    private final long fsyncIntervalNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition hasWork = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+    private final CRC32 crc = new CRC32();
+    // A request appends and awaits on the same thread, also a virtual one
+    private final ThreadLocal<long[]> lastAppend = ThreadLocal.withInitial(() -> new long[1]);
+
+    // Guarded by lock
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+    private ByteBuffer spare = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+    private long appendedSeq;
+    private long flushedSeq;
+    private long segment;
+    private boolean rotateRequested;
+    private boolean flushRequested;
+    private boolean idle;
+    private boolean closed;
+    private boolean stopped;
+    private IOException failure;
+
+    // Owned by the writer thread
+    private FileChannel channel;
+    private long lastFsyncNanos = System.nanoTime();
+    private boolean unsynced;
+
+    private final Thread writer;
+
+    /**
+     * @param segment number of the first segment to write; must be greater
+     *                than every existing segment
+     */
+    WriteAheadLog(Path directory, long segment, DurabilityOptions options) throws IOException {
+        this.directory = directory;
+        this.fsyncPolicy = options.fsyncPolicy();
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(options.flushIntervalMillis());
+        this.fsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(options.fsyncIntervalMillis());
+        this.segment = segment;
+        this.channel = openSegment(segment);
+        this.writer = new Thread(this::runWriter, "expiring-kv-wal");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void onPut(String key, String value, long expiryMillis) {
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        byte[] v = value.getBytes(StandardCharsets.UTF_8);
+        lock.lock();
+        try {
+            if (stopped || failure != null)
+                return;
+            ensureCapacity(LogRecords.putFrameSize(k, v));
+            LogRecords.writePut(pending, crc, k, v, expiryMillis);
+            lastAppend.get()[0] = ++appendedSeq;
+            wakeIdleWriter();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void onRemove(String key) {
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        lock.lock();
+        try {
+            if (stopped || failure != null)
+                return;
+            ensureCapacity(LogRecords.removeFrameSize(k));
+            LogRecords.writeRemove(pending, crc, k);
+            lastAppend.get()[0] = ++appendedSeq;
+            wakeIdleWriter();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until the calling thread's last append is on stable storage. A
+     * no-op unless the policy is {@link FsyncPolicy#ALWAYS}.
+     *
+     * @throws UncheckedIOException if the log can no longer be written
+     */
+    void awaitDurable() {
+        if (fsyncPolicy != FsyncPolicy.ALWAYS)
+            return;
+        long seq = lastAppend.get()[0];
+        lock.lock();
+        try {
+            if (flushedSeq < seq) {
+                flushRequested = true;
+                hasWork.signal();
+            }
+            while (flushedSeq < seq && failure == null && !stopped)
+                flushed.awaitUninterruptibly();
+            throwIfFailed();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the current segment after flushing and forcing it, and starts the
+     * next one.
+     *
+     * @return number of the new segment
+     */
+    long rotate() {
+        lock.lock();
+        try {
+            throwIfFailed();
+            if (closed)
+                throw new IllegalStateException("Write-ahead log is closed");
+            rotateRequested = true;
+            hasWork.signal();
+            while (rotateRequested && failure == null)
+                flushed.awaitUninterruptibly();
+            throwIfFailed();
+            return segment;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Flushes and forces everything appended so far, then stops the writer. */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            hasWork.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runWriter() {
+        while (true) {
+            ByteBuffer batch;
+            long seq;
+            boolean rotate;
+            boolean stop;
+
+            lock.lock();
+            try {
+                boolean parked = false;
+                while (pending.position() == 0 && !rotateRequested && !closed) {
+                    idle = true;
+                    parked = true;
+                    if (!unsynced || fsyncPolicy != FsyncPolicy.INTERVAL) {
+                        hasWork.await();
+                        continue;
+                    }
+                    long untilFsync = fsyncIntervalNanos - (System.nanoTime() - lastFsyncNanos);
+                    if (untilFsync <= 0)
+                        break;
+                    hasWork.awaitNanos(untilFsync);
+                }
+                idle = false;
+                // Woken by an append: let others join the batch unless someone awaits it
+                long waitNanos = parked && pending.position() > 0 ? flushIntervalNanos : 0;
+                while (!flushRequested && !rotateRequested && !closed && waitNanos > 0)
+                    waitNanos = hasWork.awaitNanos(waitNanos);
+                flushRequested = false;
+                batch = pending;
+                pending = spare;
+                seq = appendedSeq;
+                rotate = rotateRequested;
+                stop = closed;
+            } catch (InterruptedException e) {
+                continue;
+            } finally {
+                lock.unlock();
+            }
+
+            IOException error = null;
+            try {
+                write(batch, rotate || stop);
+                if (rotate) {
+                    channel.close();
+                    channel = openSegment(segment + 1);
+                }
+            } catch (IOException e) {
+                error = e;
+            }
+
+            lock.lock();
+            try {
+                batch.clear();
+                spare = batch;
+                flushedSeq = seq;
+                if (rotate) {
+                    segment++;
+                    rotateRequested = false;
+                }
+                if (error != null)
+                    failure = error;
+                if (stop || error != null)
+                    stopped = true;
+                flushed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            if (stop || error != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // already failed or already forced
+                }
+                return;
+            }
+        }
+    }
+
+    private void write(ByteBuffer batch, boolean force) throws IOException {
+        batch.flip();
+        if (batch.hasRemaining())
+            unsynced = true;
+        while (batch.hasRemaining())
+            channel.write(batch);
+        if (!unsynced)
+            return;
+
+        long now = System.nanoTime();
+        boolean due = switch (fsyncPolicy) {
+            case ALWAYS -> true;
+            case INTERVAL -> now - lastFsyncNanos >= fsyncIntervalNanos;
+            case NEVER -> false;
+        };
+        if (due || force) {
+            channel.force(false);
+            lastFsyncNanos = now;
+            unsynced = false;
+        }
+    }
+
+    /** Signals the writer if it parked on an empty buffer; caller holds lock. */
+    private void wakeIdleWriter() {
+        if (idle) {
+            idle = false;
+            hasWork.signal();
+        }
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (pending.remaining() >= bytes)
+            return;
+        int needed = pending.position() + bytes;
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(needed, pending.capacity() * 2));
+        pending.flip();
+        grown.put(pending);
+        pending = grown;
+    }
+
+    private void throwIfFailed() {
+        if (failure != null)
+            throw new UncheckedIOException("Write-ahead log failed", failure);
+    }
+
+    private FileChannel openSegment(long number) throws IOException {
+        return FileChannel.open(segmentPath(directory, number),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    static Path segmentPath(Path directory, long number) {
+        return directory.resolve(SEGMENT_PREFIX + String.format("%016d", number) + SEGMENT_SUFFIX);
+    }
+
+    /** Existing segment numbers, ascending. */
+    static List<Long> segments(Path directory) throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(p -> p.getFileName().toString())
+                    .filter(n -> n.startsWith(SEGMENT_PREFIX) && n.endsWith(SEGMENT_SUFFIX))
+                    .forEach(n -> {
+                        try {
+                            numbers.add(Long.parseLong(
+                                    n.substring(SEGMENT_PREFIX.length(), n.length() - SEGMENT_SUFFIX.length())));
+                        } catch (NumberFormatException ignored) {
+                            // not one of ours
+                        }
+                    });
+        }
+        numbers.sort(null);
+        return numbers;
+    }
+}
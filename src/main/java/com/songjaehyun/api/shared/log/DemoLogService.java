@@ -1,52 +1,289 @@
 package com.songjaehyun.api.shared.log;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Deque;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
 
-import org.springframework.stereotype.Component;
-
-@Component
+/**
+ * Recent demo calls per session, capped at MAX_EVENTS_PER_SESSION each.
+ *
+ * <p>
+ * Every demo call posts here, so appends are lock-free and reads never block
+ * writers; see {@link EventRing}.
+ *
+ * <p>
+ * Memory is bounded globally as well: once the events or approximate bytes
+ * retained across all sessions exceed their budget, the least recently used
+ * sessions are dropped until usage is back under 90% of it. Only one appender
+ * evicts at a time; the others carry on. Idle sessions are dropped through
+ * {@link #evictIdle(long)}, driven by a sweeper.
+ */
 public class DemoLogService {
 
+    // Evict down to this fraction of the budget, so evictions come in batches
+    private static final double EVICTION_LOW_WATERMARK = 0.9;
+
     private final int MAX_EVENTS_PER_SESSION;
+    private final long maxTotalEvents;
+    private final long maxTotalBytes;
+    private final LongSupplier nowMillis;
+
+    private final ConcurrentHashMap<String, EventRing> logs = new ConcurrentHashMap<>();
+    // Copy-on-write; read on every append, written once per registration.
+    private volatile LogAppendListener[] listeners = new LogAppendListener[0];
+    // Serializes addAppendListener copies; append() reads listeners without it
+    private final ReentrantLock listenerLock = new ReentrantLock();
 
-    private final ConcurrentHashMap<String, Deque<LogEvent>> logs = new ConcurrentHashMap<>();
+    // Running totals; an append racing with a removal can skew them slightly,
+    // so reconcile() recomputes them from the rings.
+    private final AtomicLong totalEvents = new AtomicLong();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong capacityEvictions = new AtomicLong();
+    private final AtomicLong idleEvictions = new AtomicLong();
+    private final LongAdder appends = new LongAdder();
+    private final LongAdder reads = new LongAdder();
+    private final ReentrantLock evictionLock = new ReentrantLock();
 
     DemoLogService() {
-        MAX_EVENTS_PER_SESSION = 300;
+        this(300);
     }
 
     DemoLogService(int max) {
-        MAX_EVENTS_PER_SESSION = max;
+        this(max, Long.MAX_VALUE, Long.MAX_VALUE, System::currentTimeMillis);
+    }
+
+    /**
+     * @param maxEventsPerSession ring capacity of each session
+     * @param maxTotalEvents      budget of events across all sessions
+     * @param maxTotalBytes       budget of approximate event bytes across all
+     *                            sessions
+     */
+    public DemoLogService(int maxEventsPerSession, long maxTotalEvents, long maxTotalBytes,
+            LongSupplier nowMillis) {
+        if (maxEventsPerSession <= 0)
+            throw new IllegalArgumentException("Max events per session must be > 0.");
+        if (maxTotalEvents <= 0)
+            throw new IllegalArgumentException("Max total events must be > 0.");
+        if (maxTotalBytes <= 0)
+            throw new IllegalArgumentException("Max total bytes must be > 0.");
+        MAX_EVENTS_PER_SESSION = maxEventsPerSession;
+        this.maxTotalEvents = maxTotalEvents;
+        this.maxTotalBytes = maxTotalBytes;
+        this.nowMillis = Objects.requireNonNull(nowMillis, "nowMillis");
     }
 
     public void append(String sessionId, LogEvent event) {
-        Deque<LogEvent> q = logs.computeIfAbsent(sessionId, k -> new ArrayDeque<>());
-        synchronized (q) {
-            q.addLast(event);
-            while (q.size() > MAX_EVENTS_PER_SESSION)
-                q.removeFirst();
+        appends.increment();
+        long now = nowMillis.getAsLong();
+        EventRing ring = logs.get(sessionId);
+        if (ring == null)
+            ring = logs.computeIfAbsent(sessionId, k -> new EventRing(MAX_EVENTS_PER_SESSION, now));
+
+        long eventBytes = estimateBytes(event);
+        long overwritten = ring.append(event, eventBytes, now);
+        if (overwritten != EventRing.NOT_STORED) {
+            if (overwritten == EventRing.NOTHING_OVERWRITTEN)
+                totalEvents.incrementAndGet();
+            long bytes = totalBytes.addAndGet(eventBytes - Math.max(0, overwritten));
+            if (bytes > maxTotalBytes || totalEvents.get() > maxTotalEvents)
+                evictForCapacity();
+        }
+
+        for (LogAppendListener l : listeners)
+            l.onAppend(sessionId);
+    }
+
+    public void addAppendListener(LogAppendListener listener) {
+        Objects.requireNonNull(listener, "listener");
+        listenerLock.lock();
+        try {
+            LogAppendListener[] next = Arrays.copyOf(listeners, listeners.length + 1);
+            next[listeners.length] = listener;
+            listeners = next;
+        } finally {
+            listenerLock.unlock();
         }
     }
 
     public List<LogEvent> get(String sessionId) {
-        Deque<LogEvent> q = logs.get(sessionId);
-        if (q == null)
+        reads.increment();
+        EventRing ring = logs.get(sessionId);
+        if (ring == null)
             return List.of();
-        synchronized (q) {
-            return new ArrayList<>(q);
-        }
+        ring.touch(nowMillis.getAsLong());
+        return ring.snapshot();
+    }
+
+    /**
+     * Events appended after the one with sequence afterSeq; 0 returns
+     * everything retained. Sequences increase by one per append within a
+     * session and restart after {@link #clear(String)}.
+     */
+    public LogSlice since(String sessionId, long afterSeq) {
+        reads.increment();
+        EventRing ring = logs.get(sessionId);
+        if (ring == null)
+            return LogSlice.EMPTY;
+        ring.touch(nowMillis.getAsLong());
+        return ring.since(afterSeq);
     }
 
     public void clear(String sessionId) {
-        logs.remove(sessionId);
+        EventRing ring = logs.remove(sessionId);
+        if (ring != null)
+            release(ring);
     }
 
     public int count(String sessionId) {
-        Deque<LogEvent> q = logs.get(sessionId);
-        return q == null ? 0 : q.size();
+        EventRing ring = logs.get(sessionId);
+        return ring == null ? 0 : ring.size();
+    }
+
+    /**
+     * Drops every session whose log was neither written nor read since
+     * cutoffMillis.
+     *
+     * @return number of sessions dropped
+     */
+    public int evictIdle(long cutoffMillis) {
+        return evictIdle(cutoffMillis, sid -> false);
+    }
+
+    /**
+     * As {@link #evictIdle(long)}, but keeps the logs of sessions for which
+     * keep answers true, e.g. sessions still registered elsewhere.
+     *
+     * @return number of sessions dropped
+     */
+    public int evictIdle(long cutoffMillis, Predicate<String> keep) {
+        int evicted = 0;
+        for (Map.Entry<String, EventRing> e : logs.entrySet()) {
+            EventRing ring = e.getValue();
+            if (ring.lastAccessMillis() < cutoffMillis && !keep.test(e.getKey())
+                    && logs.remove(e.getKey(), ring)) {
+                release(ring);
+                evicted++;
+            }
+        }
+        idleEvictions.addAndGet(evicted);
+        return evicted;
+    }
+
+    /** Recomputes the running totals from the rings that are still live. */
+    public void reconcile() {
+        evictionLock.lock();
+        try {
+            long events = 0;
+            long bytes = 0;
+            for (EventRing ring : logs.values()) {
+                events += ring.size();
+                bytes += ring.bytes();
+            }
+            totalEvents.set(events);
+            totalBytes.set(bytes);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public LogStats stats() {
+        return new LogStats(logs.size(), totalEvents.get(), totalBytes.get(),
+                capacityEvictions.get(), idleEvictions.get(), appends.sum(), reads.sum());
+    }
+
+    /**
+     * @param sessions          sessions with a retained log
+     * @param retainedEvents    events across all sessions
+     * @param retainedBytes     approximate bytes of those events
+     * @param capacityEvictions sessions dropped to stay within the budget
+     * @param idleEvictions     sessions dropped for inactivity
+     * @param appends           events appended so far
+     * @param reads             get() and since() calls so far
+     */
+    public record LogStats(int sessions, long retainedEvents, long retainedBytes,
+            long capacityEvictions, long idleEvictions, long appends, long reads) {
+    }
+
+    private void evictForCapacity() {
+        if (!evictionLock.tryLock())
+            return;
+        try {
+            long eventTarget = (long) (maxTotalEvents * EVICTION_LOW_WATERMARK);
+            long byteTarget = (long) (maxTotalBytes * EVICTION_LOW_WATERMARK);
+            if (totalEvents.get() <= eventTarget && totalBytes.get() <= byteTarget)
+                return;
+
+            // Access times keep moving; sort on a stable copy of them
+            List<Candidate> oldestFirst = new ArrayList<>(logs.size());
+            for (Map.Entry<String, EventRing> e : logs.entrySet())
+                oldestFirst.add(new Candidate(e.getKey(), e.getValue(), e.getValue().lastAccessMillis()));
+            oldestFirst.sort((a, b) -> Long.compare(a.lastAccessMillis(), b.lastAccessMillis()));
+
+            for (Candidate c : oldestFirst) {
+                if (totalEvents.get() <= eventTarget && totalBytes.get() <= byteTarget)
+                    break;
+                if (logs.remove(c.sessionId(), c.ring())) {
+                    release(c.ring());
+                    capacityEvictions.incrementAndGet();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private record Candidate(String sessionId, EventRing ring, long lastAccessMillis) {
+    }
+
+    private void release(EventRing ring) {
+        totalEvents.addAndGet(-ring.size());
+        totalBytes.addAndGet(-ring.bytes());
+    }
+
+    /**
+     * Rough heap footprint of an event: object headers plus two bytes per
+     * char, walking args and result up to a small depth. Meant for budgeting,
+     * not for exact accounting.
+     */
+    static long estimateBytes(LogEvent event) {
+        return 64 + stringBytes(event.demo()) + stringBytes(event.method())
+                + estimateBytes(event.args(), 0) + estimateBytes(event.result(), 0);
+    }
+
+    private static final int MAX_ESTIMATE_DEPTH = 4;
+
+    private static long estimateBytes(Object value, int depth) {
+        if (value == null)
+            return 0;
+        if (value instanceof String s)
+            return stringBytes(s);
+        if (depth >= MAX_ESTIMATE_DEPTH)
+            return 64;
+        if (value instanceof Map<?, ?> map) {
+            long total = 48;
+            for (Map.Entry<?, ?> e : map.entrySet())
+                total += 32 + estimateBytes(e.getKey(), depth + 1) + estimateBytes(e.getValue(), depth + 1);
+            return total;
+        }
+        if (value instanceof Collection<?> items) {
+            long total = 32;
+            for (Object item : items)
+                total += 8 + estimateBytes(item, depth + 1);
+            return total;
+        }
+        return 24;
+    }
+
+    private static long stringBytes(String s) {
+        return s == null ? 0 : 40 + 2L * s.length();
     }
 }
@@ -0,0 +1,126 @@
+package com.songjaehyun.api.shared.log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-capacity ring of the most recent events of one session.
+ *
+ * <p>
+ * Design:
+ * - Appends are lock-free: claim a sequence number with one atomic increment,
+ * then publish an immutable slot (sequence + event) with a compare-and-set
+ * that only ever replaces an older sequence. Nothing is ever removed; a new
+ * event simply overwrites the slot of the one capacity positions older. A
+ * writer that was lapped while stalled finds a newer slot and drops its
+ * event, which readers already treat as overwritten.
+ * - Reads take no lock. A reader walks the last capacity sequence numbers and
+ * keeps a slot only if it still carries the expected sequence, so an event
+ * overwritten mid-read is skipped rather than reported out of order.
+ * - A claimed but not yet published slot ends the read, so readers always see
+ * a gap-free prefix of the log; the event shows up on the next read.
+ * - Sequence numbers double as read cursors: {@link #since(long)} returns only
+ * what a poller has not seen yet.
+ * - Tracks the approximate bytes it retains and when it was last used, for
+ * the global budget and idle eviction in {@link DemoLogService}.
+ */
+final class EventRing {
+
+    private final AtomicReferenceArray<Slot> slots;
+    private final int capacity;
+    // Last claimed sequence; sequences start at 1
+    private final AtomicLong lastSeq = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private volatile long lastAccessMillis;
+
+    /** {@link #append} result when a newer event already took the slot. */
+    static final long NOT_STORED = -2;
+    /** {@link #append} result when the slot was empty. */
+    static final long NOTHING_OVERWRITTEN = -1;
+
+    EventRing(int capacity, long nowMillis) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be > 0.");
+        this.capacity = capacity;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.lastAccessMillis = nowMillis;
+    }
+
+    /**
+     * @param eventBytes approximate size of event, kept for accounting
+     * @return bytes of the overwritten event, {@link #NOTHING_OVERWRITTEN} or
+     *         {@link #NOT_STORED}
+     */
+    long append(LogEvent event, long eventBytes, long nowMillis) {
+        lastAccessMillis = nowMillis;
+        long seq = lastSeq.incrementAndGet();
+        int i = index(seq);
+        Slot next = new Slot(seq, event, eventBytes);
+        while (true) {
+            Slot current = slots.get(i);
+            if (current != null && current.seq > seq)
+                return NOT_STORED;
+            if (slots.compareAndSet(i, current, next)) {
+                long overwritten = current == null ? 0 : current.bytes;
+                bytes.addAndGet(eventBytes - overwritten);
+                return current == null ? NOTHING_OVERWRITTEN : overwritten;
+            }
+        }
+    }
+
+    void touch(long nowMillis) {
+        lastAccessMillis = nowMillis;
+    }
+
+    long lastAccessMillis() {
+        return lastAccessMillis;
+    }
+
+    long bytes() {
+        return bytes.get();
+    }
+
+    /** Retained events, oldest first. */
+    List<LogEvent> snapshot() {
+        return since(0).events();
+    }
+
+    /**
+     * Retained events with a sequence greater than afterSeq, oldest first. A
+     * cursor past the last sequence can only come from before a clear(), so
+     * it is treated as 0 and everything retained is returned.
+     */
+    LogSlice since(long afterSeq) {
+        long last = lastSeq.get();
+        if (afterSeq > last || afterSeq < 0)
+            afterSeq = 0;
+        long first = Math.max(afterSeq + 1, last - capacity + 1);
+        List<LogEvent> events = new ArrayList<>((int) Math.max(0, last - first + 1));
+
+        long latest = first - 1;
+        for (long seq = first; seq <= last; seq++) {
+            Slot slot = slots.get(index(seq));
+            if (slot == null || slot.seq < seq)
+                break; // claimed, not yet published
+            if (slot.seq == seq) {
+                events.add(slot.event);
+                latest = seq;
+            }
+            // slot.seq > seq: already overwritten by a newer event
+        }
+        return new LogSlice(events, latest);
+    }
+
+    int size() {
+        return (int) Math.min(lastSeq.get(), capacity);
+    }
+
+    private int index(long seq) {
+        return (int) (seq % capacity);
+    }
+
+    private record Slot(long seq, LogEvent event, long bytes) {
+    }
+}
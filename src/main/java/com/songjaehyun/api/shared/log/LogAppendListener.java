@@ -0,0 +1,11 @@
+package com.songjaehyun.api.shared.log;
+
+/**
+ * Notified after an event is appended to a session's log. Called on the
+ * appending request thread, so implementations must only hand off work.
+ */
+@FunctionalInterface
+public interface LogAppendListener {
+
+    void onAppend(String sessionId);
+}
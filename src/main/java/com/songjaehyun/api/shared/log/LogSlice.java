@@ -0,0 +1,15 @@
+package com.songjaehyun.api.shared.log;
+
+import java.util.List;
+
+/**
+ * Events of one session newer than a cursor, oldest first.
+ *
+ * @param events    the events
+ * @param latestSeq sequence of the last event in events, or the cursor to
+ *                  poll from next if there are none; pass it back as since
+ */
+public record LogSlice(List<LogEvent> events, long latestSeq) {
+
+    public static final LogSlice EMPTY = new LogSlice(List.of(), 0);
+}
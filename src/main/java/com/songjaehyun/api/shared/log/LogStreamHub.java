@@ -0,0 +1,204 @@
+package com.songjaehyun.api.shared.log;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Pushes session log events to Server-Sent Events subscribers.
+ *
+ * <p>
+ * Design:
+ * - Subscribers do not buffer events. Each one keeps a sequence cursor into
+ * the session's ring, and an append only signals it. The subscriber then
+ * sends everything after its cursor as one "log" event whose id is the last
+ * sequence sent. A slow consumer therefore gets coalesced batches, never an
+ * unbounded queue. If it falls more than a ring's worth behind, it gets a
+ * "dropped" event with the number of events it missed.
+ * - Signals are single-flight per subscriber (a work-in-progress counter), so
+ * at most one send per connection is in progress and no signal is lost.
+ * - Sends run on virtual threads, so a client with a full TCP window parks a
+ * cheap thread instead of a pool thread. Idle connections hold no thread at
+ * all (servlet async); one scheduler thread sends heartbeats to connections
+ * that have been quiet for a heartbeat interval.
+ * - Resuming with Last-Event-ID is just starting from that cursor.
+ * - Any failure to send, I/O or otherwise, completes the emitter with the
+ * error and drops the subscriber.
+ */
+public class LogStreamHub implements LogAppendListener, AutoCloseable {
+
+    static final long HEARTBEAT_MILLIS = 15_000;
+    // Bounded lifetime; EventSource reconnects with Last-Event-ID on its own.
+    static final long STREAM_TIMEOUT_MILLIS = 30 * 60 * 1000;
+
+    private final DemoLogService logService;
+    private final long heartbeatNanos;
+    private final Supplier<SseEmitter> emitters;
+    private final ConcurrentHashMap<String, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "log-stream-heartbeat");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public LogStreamHub(DemoLogService logService) {
+        this(logService, HEARTBEAT_MILLIS, () -> new SseEmitter(STREAM_TIMEOUT_MILLIS));
+    }
+
+    LogStreamHub(DemoLogService logService, long heartbeatMillis, Supplier<SseEmitter> emitters) {
+        this.logService = logService;
+        this.heartbeatNanos = TimeUnit.MILLISECONDS.toNanos(heartbeatMillis);
+        this.emitters = emitters;
+        heartbeats.scheduleWithFixedDelay(this::heartbeat, heartbeatMillis, heartbeatMillis,
+                TimeUnit.MILLISECONDS);
+        logService.addAppendListener(this);
+    }
+
+    /**
+     * Opens a stream of the session's events with a sequence greater than
+     * afterSeq; retained events after it are sent right away.
+     */
+    public SseEmitter subscribe(String sessionId, long afterSeq) {
+        SseEmitter emitter = emitters.get();
+        Subscriber subscriber = new Subscriber(sessionId, emitter, afterSeq);
+
+        subscribers.compute(sessionId, (k, set) -> {
+            if (set == null)
+                set = ConcurrentHashMap.newKeySet();
+            set.add(subscriber);
+            return set;
+        });
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(e -> subscriber.close());
+
+        subscriber.signal();
+        return emitter;
+    }
+
+    @Override
+    public void onAppend(String sessionId) {
+        Set<Subscriber> set = subscribers.get(sessionId);
+        if (set == null)
+            return;
+        for (Subscriber s : set)
+            s.signal();
+    }
+
+    public int subscriberCount() {
+        int n = 0;
+        for (Set<Subscriber> set : subscribers.values())
+            n += set.size();
+        return n;
+    }
+
+    private void heartbeat() {
+        long due = System.nanoTime() - heartbeatNanos;
+        for (Set<Subscriber> set : subscribers.values()) {
+            for (Subscriber s : set) {
+                if (s.lastSentNanos - due <= 0) {
+                    s.heartbeatDue = true;
+                    s.signal();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        heartbeats.shutdownNow();
+        senders.shutdownNow();
+        for (Set<Subscriber> set : subscribers.values())
+            for (Subscriber s : set)
+                s.emitter.complete();
+        subscribers.clear();
+    }
+
+    private final class Subscriber {
+        private final String sessionId;
+        private final SseEmitter emitter;
+        private final AtomicInteger wip = new AtomicInteger();
+
+        // Only touched by the single active drain
+        private long cursor;
+
+        // First drain says hello even without events, so proxies see bytes
+        private volatile boolean heartbeatDue = true;
+        private volatile long lastSentNanos = System.nanoTime();
+        private volatile boolean closed;
+
+        Subscriber(String sessionId, SseEmitter emitter, long cursor) {
+            this.sessionId = sessionId;
+            this.emitter = emitter;
+            this.cursor = Math.max(0, cursor);
+        }
+
+        void signal() {
+            if (closed || wip.getAndIncrement() != 0)
+                return;
+            try {
+                senders.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                close(); // shutting down
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                if (closed)
+                    return;
+                try {
+                    sendPending();
+                } catch (IOException | RuntimeException e) {
+                    // Client went away, the emitter already completed or the
+                    // events could not be written; either way it is done
+                    close();
+                    emitter.completeWithError(e);
+                    return;
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void sendPending() throws IOException {
+            LogSlice slice = logService.since(sessionId, cursor);
+            int n = slice.events().size();
+            if (n > 0) {
+                long dropped = slice.latestSeq() - n - cursor;
+                if (dropped > 0 && cursor > 0)
+                    emitter.send(SseEmitter.event().name("dropped").data(dropped));
+                emitter.send(SseEmitter.event()
+                        .id(Long.toString(slice.latestSeq()))
+                        .name("log")
+                        .data(slice.events()));
+            } else if (heartbeatDue) {
+                emitter.send(SseEmitter.event().comment("heartbeat"));
+            } else {
+                cursor = slice.latestSeq();
+                return;
+            }
+            cursor = slice.latestSeq();
+            heartbeatDue = false;
+            lastSentNanos = System.nanoTime();
+        }
+
+        void close() {
+            closed = true;
+            subscribers.computeIfPresent(sessionId, (k, set) -> {
+                set.remove(this);
+                return set.isEmpty() ? null : set;
+            });
+        }
+    }
+}
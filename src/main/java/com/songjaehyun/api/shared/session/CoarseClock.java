@@ -0,0 +1,51 @@
+package com.songjaehyun.api.shared.session;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Wall clock that is read from a volatile field and refreshed by a background
+ * thread every resolutionMillis.
+ *
+ * <p>
+ * For bookkeeping that only needs to know roughly when something happened
+ * (session last-seen, log access times), and is done on every request. Values
+ * lag the real clock by up to one resolution and never go backwards.
+ */
+public final class CoarseClock implements LongSupplier, AutoCloseable {
+
+    private final ScheduledExecutorService ticker;
+    private volatile long nowMillis = System.currentTimeMillis();
+
+    /**
+     * @param resolutionMillis refresh period; must be > 0
+     */
+    public CoarseClock(long resolutionMillis) {
+        if (resolutionMillis <= 0)
+            throw new IllegalArgumentException("Resolution must be > 0.");
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "coarse-clock");
+            t.setDaemon(true);
+            return t;
+        });
+        ticker.scheduleAtFixedRate(this::tick, resolutionMillis, resolutionMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public long getAsLong() {
+        return nowMillis;
+    }
+
+    private void tick() {
+        long now = System.currentTimeMillis();
+        if (now > nowMillis)
+            nowMillis = now;
+    }
+
+    @Override
+    public void close() {
+        ticker.shutdownNow();
+    }
+}
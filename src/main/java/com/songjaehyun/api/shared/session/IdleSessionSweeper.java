@@ -0,0 +1,107 @@
+package com.songjaehyun.api.shared.session;
+
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import com.songjaehyun.api.shared.log.DemoLogService;
+
+/**
+ * Background removal of sessions nobody has touched for idleTtlMillis.
+ *
+ * <p>
+ * Without it every session id ever seen stays in {@link SessionRegistry} and
+ * {@link DemoLogService} until the client clears it, so a crawler inventing
+ * ids grows both without bound. Each pass drops idle registry entries together
+ * with their logs, drops logs that have no registry entry and have gone
+ * unused just as long, then reconciles the log service's running totals.
+ * Passes that throw are counted in {@link #failures()}, so a sweeper that has
+ * stopped making progress can be told from an idle one.
+ */
+public final class IdleSessionSweeper implements AutoCloseable {
+
+    private final SessionRegistry registry;
+    private final DemoLogService logService;
+    private final LongSupplier nowMillis;
+    private final long idleTtlMillis;
+    private final long intervalMillis;
+    private final AtomicLong evictedSessions = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile RuntimeException lastFailure;
+    private final ScheduledExecutorService executor;
+
+    /**
+     * @param idleTtlMillis  how long a session may go untouched; must be > 0
+     * @param intervalMillis delay between passes; must be > 0
+     */
+    public IdleSessionSweeper(SessionRegistry registry, DemoLogService logService, LongSupplier nowMillis,
+            long idleTtlMillis, long intervalMillis) {
+        this.registry = Objects.requireNonNull(registry, "registry");
+        this.logService = Objects.requireNonNull(logService, "logService");
+        this.nowMillis = Objects.requireNonNull(nowMillis, "nowMillis");
+        if (idleTtlMillis <= 0)
+            throw new IllegalArgumentException("Idle TTL must be > 0.");
+        if (intervalMillis <= 0)
+            throw new IllegalArgumentException("Sweep interval must be > 0.");
+        this.idleTtlMillis = idleTtlMillis;
+        this.intervalMillis = intervalMillis;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public void start() {
+        executor.scheduleWithFixedDelay(this::sweepQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * One pass.
+     *
+     * @return number of registry sessions removed
+     */
+    public int sweep() {
+        long cutoff = nowMillis.getAsLong() - idleTtlMillis;
+        int removed = registry.sweepIdle(cutoff, logService::clear);
+        // Only orphans: a registered session keeps its log however long it goes unread
+        logService.evictIdle(cutoff, registry::contains);
+        logService.reconcile();
+        evictedSessions.addAndGet(removed);
+        return removed;
+    }
+
+    /** Sessions removed from the registry for inactivity so far. */
+    public long evictedSessions() {
+        return evictedSessions.get();
+    }
+
+    /** Passes that threw so far. */
+    public long failures() {
+        return failures.get();
+    }
+
+    /** What the most recent failing pass threw; null if none has. */
+    public RuntimeException lastFailure() {
+        return lastFailure;
+    }
+
+    /** Records failures instead of throwing, so a bad pass does not cancel the schedule. */
+    void sweepQuietly() {
+        try {
+            sweep();
+        } catch (RuntimeException e) {
+            // next pass retries
+            lastFailure = e;
+            failures.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -1,23 +1,229 @@
 package com.songjaehyun.api.shared.session;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
 
-import org.springframework.stereotype.Component;
-
-@Component
+/**
+ * Last-seen time of every live session, at bucketMillis resolution.
+ *
+ * <p>
+ * Design:
+ * - Each session is recorded under the index of the time bucket it was last
+ * touched in, and each bucket keeps the set of sessions last touched in it.
+ * - A touch within the session's current bucket is a single map read and
+ * writes nothing. Moving to a newer bucket updates both sides once per
+ * bucketMillis per session. Buckets only move forward, so a late touch never
+ * makes a session look older.
+ * - Sweeping idle sessions pops whole buckets from the old end, costing
+ * O(expired) instead of a scan over every session.
+ * - Empty buckets stay until swept, so there are at most idle TTL /
+ * bucketMillis of them.
+ * - Listing is paged, newest bucket first, instead of copying the map.
+ * - Last-seen times are rounded down to their bucket, so a session can be
+ * treated as idle up to bucketMillis early.
+ */
 public class SessionRegistry {
-    private final ConcurrentHashMap<String, Long> lastSeen = new ConcurrentHashMap<>();
+
+    static final long DEFAULT_BUCKET_MILLIS = 1000;
+    static final int MAX_PAGE_SIZE = 1000;
+
+    private final LongSupplier nowMillis;
+    private final long bucketMillis;
+
+    // session -> bucket of its last touch
+    private final ConcurrentHashMap<String, Long> lastBucket = new ConcurrentHashMap<>();
+    // bucket -> sessions last touched in it
+    private final ConcurrentSkipListMap<Long, NavigableSet<String>> buckets = new ConcurrentSkipListMap<>();
+    // Copy-on-write; read on every removal, written once per registration.
+    private volatile SessionRemovalListener[] listeners = new SessionRemovalListener[0];
+    // Orders concurrent listener registrations; sweeps never take it
+    private final ReentrantLock listenerLock = new ReentrantLock();
+
+    public SessionRegistry() {
+        this(System::currentTimeMillis, DEFAULT_BUCKET_MILLIS);
+    }
+
+    public SessionRegistry(LongSupplier nowMillis) {
+        this(nowMillis, DEFAULT_BUCKET_MILLIS);
+    }
+
+    /**
+     * @param bucketMillis resolution of last-seen times; must be > 0
+     */
+    public SessionRegistry(LongSupplier nowMillis, long bucketMillis) {
+        this.nowMillis = Objects.requireNonNull(nowMillis, "nowMillis");
+        if (bucketMillis <= 0)
+            throw new IllegalArgumentException("Bucket size must be > 0.");
+        this.bucketMillis = bucketMillis;
+    }
 
     public void touch(String sessionId) {
-        lastSeen.put(sessionId, System.currentTimeMillis());
+        long bucket = nowMillis.getAsLong() / bucketMillis;
+        Long current = lastBucket.get(sessionId);
+        if (current != null && current >= bucket)
+            return;
+
+        long[] left = { -1 };
+        lastBucket.compute(sessionId, (sid, previous) -> {
+            if (previous != null && previous >= bucket)
+                return previous;
+            // Index before publishing, so a recorded session is always in its bucket
+            buckets.compute(bucket, (b, set) -> {
+                if (set == null)
+                    set = new ConcurrentSkipListSet<>();
+                set.add(sid);
+                return set;
+            });
+            if (previous != null)
+                left[0] = previous;
+            return bucket;
+        });
+        if (left[0] >= 0)
+            unindex(sessionId, left[0]);
     }
 
     public void remove(String sessionId) {
-        lastSeen.remove(sessionId);
+        Long previous = lastBucket.remove(sessionId);
+        if (previous != null) {
+            unindex(sessionId, previous);
+            notifyRemoved(sessionId);
+        }
+    }
+
+    public void addRemovalListener(SessionRemovalListener listener) {
+        Objects.requireNonNull(listener, "listener");
+        listenerLock.lock();
+        try {
+            SessionRemovalListener[] next = Arrays.copyOf(listeners, listeners.length + 1);
+            next[listeners.length] = listener;
+            listeners = next;
+        } finally {
+            listenerLock.unlock();
+        }
+    }
+
+    /**
+     * Removes every session last touched before cutoffMillis (to bucket
+     * resolution), passing each one to onRemoved and then to the removal
+     * listeners. A session touched while the sweep runs is kept.
+     *
+     * @return number of sessions removed
+     */
+    public int sweepIdle(long cutoffMillis, Consumer<String> onRemoved) {
+        long firstLive = -Math.floorDiv(-cutoffMillis, bucketMillis);
+        int removed = 0;
+
+        Map.Entry<Long, NavigableSet<String>> oldest;
+        while ((oldest = buckets.firstEntry()) != null && oldest.getKey() < firstLive) {
+            if (!buckets.remove(oldest.getKey(), oldest.getValue()))
+                continue;
+            for (String sid : oldest.getValue()) {
+                if (lastBucket.remove(sid, oldest.getKey())) {
+                    onRemoved.accept(sid);
+                    notifyRemoved(sid);
+                    removed++;
+                }
+            }
+        }
+        return removed;
     }
 
+    public int size() {
+        return lastBucket.size();
+    }
+
+    public boolean contains(String sessionId) {
+        return lastBucket.containsKey(sessionId);
+    }
+
+    /**
+     * @param lastSeenMillis start of the bucket the session was last touched
+     *                       in
+     */
+    public record SessionEntry(String sessionId, long lastSeenMillis) {
+    }
+
+    /**
+     * @param nextCursor pass as after for the next page; null on the last page
+     */
+    public record SessionPage(List<SessionEntry> sessions, String nextCursor) {
+    }
+
+    /**
+     * One page of sessions, most recently seen first. Sessions that move to a
+     * newer bucket while a client is paging may be skipped or listed twice.
+     *
+     * @param after cursor from the previous page; null for the first page
+     * @param limit maximum sessions to return; 1 to MAX_PAGE_SIZE
+     */
+    public SessionPage page(String after, int limit) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE)
+            throw new IllegalArgumentException("Limit must be between 1 and " + MAX_PAGE_SIZE);
+
+        NavigableMap<Long, NavigableSet<String>> view = buckets.descendingMap();
+        long cursorBucket = Long.MAX_VALUE;
+        String cursorSid = null;
+        if (after != null) {
+            int sep = after.indexOf(':');
+            try {
+                cursorBucket = Long.parseLong(after.substring(0, Math.max(sep, 0)));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Malformed cursor: " + after);
+            }
+            cursorSid = after.substring(sep + 1);
+            view = view.tailMap(cursorBucket, true);
+        }
+
+        List<SessionEntry> sessions = new ArrayList<>(Math.min(limit, 256));
+        for (Map.Entry<Long, NavigableSet<String>> e : view.entrySet()) {
+            long bucket = e.getKey();
+            NavigableSet<String> ids = bucket == cursorBucket ? e.getValue().tailSet(cursorSid, false) : e.getValue();
+            for (String sid : ids) {
+                Long current = lastBucket.get(sid);
+                if (current == null || current != bucket)
+                    continue; // moved on or removed since it was indexed
+                if (sessions.size() == limit) {
+                    SessionEntry last = sessions.get(limit - 1);
+                    return new SessionPage(sessions,
+                            last.lastSeenMillis() / bucketMillis + ":" + last.sessionId());
+                }
+                sessions.add(new SessionEntry(sid, bucket * bucketMillis));
+            }
+        }
+        return new SessionPage(sessions, null);
+    }
+
+    /** Every session and its last-seen time. Copies the whole registry; prefer {@link #page}. */
     public Map<String, Long> snapshot() {
-        return Map.copyOf(lastSeen);
+        Map<String, Long> copy = new HashMap<>(lastBucket.size() * 4 / 3 + 1);
+        lastBucket.forEach((sid, bucket) -> copy.put(sid, bucket * bucketMillis));
+        return Map.copyOf(copy);
+    }
+
+    /**
+     * Emptied buckets are left for sweepIdle to pop: dropping one here could
+     * race with a touch adding to the same set.
+     */
+    private void notifyRemoved(String sessionId) {
+        for (SessionRemovalListener l : listeners)
+            l.onSessionRemoved(sessionId);
+    }
+
+    private void unindex(String sessionId, long bucket) {
+        NavigableSet<String> set = buckets.get(bucket);
+        if (set != null)
+            set.remove(sessionId);
     }
 }
@@ -0,0 +1,11 @@
+package com.songjaehyun.api.shared.session;
+
+/**
+ * Told when a session leaves {@link SessionRegistry}, whether removed
+ * explicitly or swept for inactivity, so per-session state can be released.
+ */
+@FunctionalInterface
+public interface SessionRemovalListener {
+
+    void onSessionRemoved(String sessionId);
+}
@@ -0,0 +1,172 @@
+package com.songjaehyun.api.demos.expiringkv.application;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore;
+
+public class ExpiringKeyValueServiceTest {
+
+    private final AtomicLong now = new AtomicLong(1_000);
+    private final ExpiringKeyValueStore store = new ExpiringKeyValueStore(now::get, true);
+
+    @Test
+    void getOrLoad_miss_loadsOnceAndCaches() {
+        ExpiringKeyValueService service = new ExpiringKeyValueService(store);
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals("v1", service.getOrLoad("k", k -> "v" + loads.incrementAndGet(), 500));
+        assertEquals("v1", service.getOrLoad("k", k -> "v" + loads.incrementAndGet(), 500));
+        assertEquals(1, loads.get());
+        assertEquals(500, store.getRemainingTTL("k"));
+    }
+
+    @Test
+    void getOrLoad_concurrentMisses_shareOneLoad() throws Exception {
+        ExpiringKeyValueService service = new ExpiringKeyValueService(store);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(pool.submit(() -> service.getOrLoad("hot", k -> {
+                    loads.incrementAndGet();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return "value";
+                }, 1_000)));
+            }
+            // Let every caller reach the store and the in-flight load
+            Thread.sleep(100);
+            release.countDown();
+
+            for (Future<String> f : results)
+                assertEquals("value", f.get(5, TimeUnit.SECONDS));
+            assertEquals(1, loads.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void getOrLoad_loaderFailure_propagatesAndIsNotCached() {
+        ExpiringKeyValueService service = new ExpiringKeyValueService(store);
+
+        assertThrows(IllegalStateException.class, () -> service.getOrLoad("k", k -> {
+            throw new IllegalStateException("upstream down");
+        }, 500));
+        assertNull(store.get("k"));
+        assertEquals("v", service.getOrLoad("k", k -> "v", 500));
+    }
+
+    @Test
+    void getOrLoad_nullFromLoader_storesNothing() {
+        ExpiringKeyValueService service = new ExpiringKeyValueService(store);
+
+        assertNull(service.getOrLoad("k", k -> null, 500));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void getOrLoad_refreshAhead_reloadsNearExpiryAndServesCurrentValue() {
+        List<Runnable> scheduled = new ArrayList<>();
+        ExpiringKeyValueService service = new ExpiringKeyValueService(store, scheduled::add);
+        service.getOrLoad("k", k -> "v1", 1_000, 200);
+
+        now.set(1_700);
+        assertEquals("v1", service.getOrLoad("k", k -> "v2", 1_000, 200));
+        assertTrue(scheduled.isEmpty());
+
+        now.set(1_850);
+        assertEquals("v1", service.getOrLoad("k", k -> "v2", 1_000, 200));
+        // A second hit while the reload is pending does not start another
+        assertEquals("v1", service.getOrLoad("k", k -> "v3", 1_000, 200));
+        assertEquals(1, scheduled.size());
+
+        scheduled.get(0).run();
+        assertEquals("v2", store.get("k"));
+        assertEquals(1_000, store.getRemainingTTL("k"));
+    }
+
+    @Test
+    void getOrLoad_refreshAheadNotBelowTtl_isRejected() {
+        ExpiringKeyValueService service = new ExpiringKeyValueService(store);
+
+        assertThrows(IllegalArgumentException.class, () -> service.getOrLoad("k", k -> "v", 500, 500));
+        assertThrows(IllegalArgumentException.class, () -> service.getOrLoad("k", k -> "v", 500, -1));
+    }
+
+    @Test
+    void getOrLoad_ttlOutOfRange_isRejectedBeforeLoading() {
+        ExpiringKeyValueService service = new ExpiringKeyValueService(store);
+        AtomicInteger loads = new AtomicInteger();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> service.getOrLoad("k", k -> "v" + loads.incrementAndGet(), 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> service.getOrLoad("k", k -> "v" + loads.incrementAndGet(), Long.MAX_VALUE));
+        assertEquals(0, loads.get());
+    }
+
+    @Test
+    void getOrLoad_failedRefresh_isCountedAndKeepsCurrentValue() {
+        List<Runnable> scheduled = new ArrayList<>();
+        ExpiringKeyValueService service = new ExpiringKeyValueService(store, scheduled::add);
+        service.getOrLoad("k", k -> "v1", 1_000, 200);
+
+        now.set(1_850);
+        service.getOrLoad("k", k -> {
+            throw new IllegalStateException("upstream down");
+        }, 1_000, 200);
+        scheduled.get(0).run();
+
+        assertEquals(1, service.refreshFailures());
+        assertEquals("v1", store.get("k"));
+    }
+
+    @Test
+    void importSnapshot_withinLimit_roundTrips() throws Exception {
+        ExpiringKeyValueService service = new ExpiringKeyValueService(store);
+        service.put("a", "1", 1_000);
+        service.put("b", "2", 1_000);
+        ByteArrayOutputStream dump = new ByteArrayOutputStream();
+        service.exportSnapshot(dump);
+
+        ExpiringKeyValueStore target = new ExpiringKeyValueStore(now::get, true);
+        new ExpiringKeyValueService(target).importSnapshot(new ByteArrayInputStream(dump.toByteArray()), dump.size());
+
+        assertEquals("2", target.get("b"));
+    }
+
+    @Test
+    void importSnapshot_overLimit_isRefusedAndImportsNothing() throws Exception {
+        ExpiringKeyValueService service = new ExpiringKeyValueService(store);
+        service.put("a", "1", 1_000);
+        ByteArrayOutputStream dump = new ByteArrayOutputStream();
+        service.exportSnapshot(dump);
+
+        ExpiringKeyValueStore target = new ExpiringKeyValueStore(now::get, true);
+        ExpiringKeyValueService importer = new ExpiringKeyValueService(target);
+
+        assertThrows(SnapshotTooLargeException.class,
+                () -> importer.importSnapshot(new ByteArrayInputStream(dump.toByteArray()), dump.size() - 1));
+        assertEquals(0, target.size());
+    }
+}
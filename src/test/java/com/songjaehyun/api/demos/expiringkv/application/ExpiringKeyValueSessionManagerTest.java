@@ -0,0 +1,123 @@
+package com.songjaehyun.api.demos.expiringkv.application;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.songjaehyun.api.demos.expiringkv.domain.StoreOptions;
+import com.songjaehyun.api.shared.session.SessionRegistry;
+
+public class ExpiringKeyValueSessionManagerTest {
+
+    private final AtomicLong now = new AtomicLong(1_000);
+    private final SessionRegistry registry = new SessionRegistry(now::get, 100);
+
+    private ExpiringKeyValueSessionManager manager(int maxSessions, int poolSize) {
+        StoreOptions options = StoreOptions.defaults().withMaxEntries(3).withEviction(StoreOptions.Eviction.LRU);
+        return new ExpiringKeyValueSessionManager(registry, now::get, options, maxSessions, poolSize);
+    }
+
+    @Test
+    void sessions_areIsolated_andTouchTheRegistry() {
+        ExpiringKeyValueSessionManager sessions = manager(10, 4);
+        sessions.runInSession("alice", s -> s.put("k", "a", 1_000));
+        sessions.runInSession("bob", s -> s.put("k", "b", 1_000));
+
+        assertEquals("a", sessions.withSession("alice", s -> s.get("k")));
+        assertEquals("b", sessions.withSession("bob", s -> s.get("k")));
+        assertEquals(2, registry.size());
+        assertEquals(2, sessions.stats().liveSessions());
+    }
+
+    @Test
+    void perSessionEntryCap_evictsWithinTheSessionOnly() {
+        ExpiringKeyValueSessionManager sessions = manager(10, 4);
+        sessions.runInSession("other", s -> s.put("keep", "v", 1_000));
+        for (int i = 0; i < 10; i++) {
+            int n = i;
+            sessions.runInSession("busy", s -> s.put("k" + n, "v", 1_000));
+        }
+
+        int busySize = sessions.withSession("busy", s -> s.size());
+        assertEquals(3, busySize);
+        assertEquals("v", sessions.withSession("other", s -> s.get("keep")));
+    }
+
+    @Test
+    void registryRemoval_releasesAndRecyclesStore() {
+        ExpiringKeyValueSessionManager sessions = manager(10, 4);
+        sessions.runInSession("alice", s -> s.put("k", "a", 1_000));
+
+        registry.remove("alice");
+        assertEquals(0, sessions.stats().liveSessions());
+        assertEquals(1, sessions.stats().pooledStores());
+
+        // A new session reuses the pooled store, emptied
+        assertNull(sessions.withSession("bob", s -> s.get("k")));
+        assertNull(sessions.withSession("alice", s -> s.get("k")));
+        ExpiringKeyValueSessionManager.SessionStats stats = sessions.stats();
+        assertEquals(2, stats.created());
+        assertEquals(1, stats.recycled());
+        assertEquals(1, stats.released());
+    }
+
+    @Test
+    void idleSweep_releasesStore() {
+        ExpiringKeyValueSessionManager sessions = manager(10, 0);
+        sessions.runInSession("idle", s -> s.put("k", "v", 100_000));
+        now.set(10_000);
+        sessions.runInSession("busy", s -> s.put("k", "v", 100_000));
+
+        assertEquals(1, registry.sweepIdle(5_000, sid -> {
+        }));
+        assertEquals(1, sessions.stats().liveSessions());
+        assertEquals(0, sessions.stats().pooledStores());
+        assertNull(sessions.withSession("idle", s -> s.get("k")));
+    }
+
+    @Test
+    void release_whileInUse_isDeferredUntilLeaseEnds() {
+        ExpiringKeyValueSessionManager sessions = manager(10, 4);
+        boolean released = sessions.withSession("alice", s -> {
+            s.put("k", "v", 1_000);
+            boolean r = sessions.release("alice");
+            // Still usable by the request holding the lease
+            assertEquals("v", s.get("k"));
+            assertEquals(0, sessions.stats().pooledStores());
+            return r;
+        });
+
+        assertTrue(released);
+        assertEquals(1, sessions.stats().released());
+        assertEquals(1, sessions.stats().pooledStores());
+        assertFalse(sessions.release("alice"));
+    }
+
+    @Test
+    void registryRemoval_whileLeased_recyclesStoreWhenLeaseEnds() {
+        ExpiringKeyValueSessionManager sessions = manager(10, 4);
+        sessions.runInSession("alice", s -> {
+            s.put("k", "v", 1_000);
+            registry.remove("alice");
+            assertEquals(0, sessions.stats().liveSessions());
+        });
+
+        assertEquals(1, sessions.stats().released());
+        assertEquals(1, sessions.stats().pooledStores());
+        assertNull(sessions.withSession("alice", s -> s.get("k")));
+        assertEquals(1, sessions.stats().recycled());
+    }
+
+    @Test
+    void sessionCap_refusesNewSessionsButNotExistingOnes() {
+        ExpiringKeyValueSessionManager sessions = manager(2, 4);
+        sessions.runInSession("a", s -> s.put("k", "v", 1_000));
+        sessions.runInSession("b", s -> s.put("k", "v", 1_000));
+
+        assertThrows(SessionLimitExceededException.class, () -> sessions.runInSession("c", s -> s.size()));
+        assertEquals("v", sessions.withSession("a", s -> s.get("k")));
+        assertThrows(IllegalArgumentException.class, () -> sessions.runInSession(" ", s -> s.size()));
+    }
+}
@@ -0,0 +1,91 @@
+package com.songjaehyun.api.demos.expiringkv.application;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.songjaehyun.api.demos.expiringkv.application.KeyWatchHub.KeyChange;
+import com.songjaehyun.api.demos.expiringkv.domain.ChangeEvent;
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore;
+
+public class KeyWatchHubTest {
+
+    private final AtomicLong now = new AtomicLong(1_000);
+    private final ExpiringKeyValueStore store = new ExpiringKeyValueStore(now::get, true);
+    // Completions run inline so results are visible as soon as the store returns
+    private final KeyWatchHub hub = new KeyWatchHub(store, now::get, 2, Runnable::run);
+
+    @Test
+    void watch_staleVersion_completesAtOnceWithCurrentValue() throws Exception {
+        store.put("k", "v1", 1_000);
+
+        KeyChange change = hub.watch("k", 0, 5_000).get(1, TimeUnit.SECONDS);
+
+        assertEquals(new KeyChange("k", ChangeEvent.Type.PUT, "v1", 2_000, store.version()), change);
+        assertEquals(0, hub.activeWatches());
+    }
+
+    @Test
+    void watch_currentVersion_waitsForNextPut() throws Exception {
+        store.put("k", "v1", 1_000);
+        long version = store.version();
+
+        CompletableFuture<KeyChange> watch = hub.watch("k", version, 5_000);
+        assertFalse(watch.isDone());
+
+        store.put("k", "v2", 1_000);
+        KeyChange change = watch.get(1, TimeUnit.SECONDS);
+        assertEquals("v2", change.value());
+        assertEquals(store.version(), change.version());
+    }
+
+    @Test
+    void watch_absentKey_wakesOnCreateAndOnRemove() throws Exception {
+        CompletableFuture<KeyChange> created = hub.watch("k", 0, 5_000);
+        store.put("k", "v", 1_000);
+        long version = created.get(1, TimeUnit.SECONDS).version();
+
+        CompletableFuture<KeyChange> removed = hub.watch("k", version, 5_000);
+        store.remove("k");
+        assertEquals(new KeyChange("k", ChangeEvent.Type.REMOVE, null, 0, 0), removed.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void watch_noChange_completesWithNullAfterTimeout() throws Exception {
+        CompletableFuture<KeyChange> watch = hub.watch("k", 0, 50);
+
+        assertNull(watch.get(2, TimeUnit.SECONDS));
+        assertEquals(0, hub.activeWatches());
+    }
+
+    @Test
+    void watch_entryExpiringBeforeTimeout_reportsExpiration() throws Exception {
+        store.put("k", "v", 50);
+        CompletableFuture<KeyChange> watch = hub.watch("k", store.version(), 5_000);
+
+        // Nothing purges the entry; the watch re-reads it at its deadline
+        now.set(1_050);
+        KeyChange change = watch.get(2, TimeUnit.SECONDS);
+        assertEquals(ChangeEvent.Type.EXPIRE, change.type());
+        assertNull(change.value());
+    }
+
+    @Test
+    void watch_beyondCap_isRefused_andInvalidArgumentsRejected() {
+        hub.watch("a", 0, 5_000);
+        hub.watch("b", 0, 5_000);
+
+        assertThrows(IllegalStateException.class, () -> hub.watch("c", 0, 5_000));
+        store.put("a", "v", 1_000);
+        assertEquals(1, hub.activeWatches());
+
+        assertThrows(IllegalArgumentException.class, () -> hub.watch(" ", 0, 5_000));
+        assertThrows(IllegalArgumentException.class, () -> hub.watch("k", -1, 5_000));
+        assertThrows(IllegalArgumentException.class,
+                () -> hub.watch("k", 0, KeyWatchHub.MAX_TIMEOUT_MILLIS + 1));
+    }
+}
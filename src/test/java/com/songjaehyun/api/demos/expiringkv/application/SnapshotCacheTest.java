@@ -0,0 +1,70 @@
+package com.songjaehyun.api.demos.expiringkv.application;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore;
+
+public class SnapshotCacheTest {
+
+    private final AtomicLong now = new AtomicLong(1_000);
+    private final ExpiringKeyValueStore store = new ExpiringKeyValueStore(now::get, true);
+    private final AtomicInteger encodes = new AtomicInteger();
+    private final SnapshotCache cache = new SnapshotCache(store, now::get, snapshot -> {
+        encodes.incrementAndGet();
+        return snapshot.entries().toString().getBytes(StandardCharsets.UTF_8);
+    });
+
+    @Test
+    void current_unchangedStore_reusesBodyAndTag() {
+        store.put("a", "1", 1_000);
+
+        SnapshotCache.Rendered first = cache.current();
+        now.set(1_500);
+        SnapshotCache.Rendered second = cache.current();
+
+        assertSame(first, second);
+        assertEquals(1, encodes.get());
+    }
+
+    @Test
+    void current_afterWrite_rebuildsWithNewTag() {
+        store.put("a", "1", 1_000);
+        SnapshotCache.Rendered first = cache.current();
+
+        store.put("b", "2", 1_000);
+        SnapshotCache.Rendered second = cache.current();
+
+        assertNotEquals(first.etag(), second.etag());
+        assertTrue(new String(second.body(), StandardCharsets.UTF_8).contains("b"));
+        assertEquals(2, encodes.get());
+    }
+
+    @Test
+    void current_pastEarliestExpiry_rebuildsWithoutAnyWrite() {
+        store.put("short", "1", 100);
+        store.put("long", "2", 1_000);
+        SnapshotCache.Rendered first = cache.current();
+        assertEquals(1_100, first.validUntil());
+
+        now.set(1_100);
+        SnapshotCache.Rendered second = cache.current();
+
+        assertNotEquals(first.etag(), second.etag());
+        assertFalse(new String(second.body(), StandardCharsets.UTF_8).contains("short"));
+    }
+
+    @Test
+    void current_emptyStore_staysValid() {
+        SnapshotCache.Rendered first = cache.current();
+        now.set(1_000_000);
+
+        assertSame(first, cache.current());
+        assertEquals(Long.MAX_VALUE, first.validUntil());
+    }
+}
@@ -0,0 +1,49 @@
+package com.songjaehyun.api.demos.expiringkv.domain;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+public class ChangeJournalTest {
+
+    @Test
+    void keysChanged_returnsKeysInVersionWindow() {
+        ChangeJournal journal = new ChangeJournal(8, 0);
+        for (int v = 1; v <= 5; v++)
+            journal.record(v, "k" + v);
+
+        Set<String> keys = new TreeSet<>();
+        journal.keysChanged(2, 4, keys);
+
+        assertEquals(Set.of("k3", "k4"), keys);
+    }
+
+    @Test
+    void wrappedRing_truncatesOldestAndKeepsOrder() {
+        ChangeJournal journal = new ChangeJournal(3, 0);
+        for (int v = 1; v <= 7; v++)
+            journal.record(v * 10L, "k" + v);
+
+        assertFalse(journal.covers(39));
+        assertTrue(journal.covers(40));
+        Set<String> keys = new TreeSet<>();
+        journal.keysChanged(55, Long.MAX_VALUE, keys);
+        assertEquals(Set.of("k6", "k7"), keys);
+    }
+
+    @Test
+    void clear_dropsEverythingUpToVersion() {
+        ChangeJournal journal = new ChangeJournal(4, 5);
+        assertFalse(journal.covers(4));
+        journal.record(6, "a");
+        journal.clear(9);
+
+        assertFalse(journal.covers(8));
+        Set<String> keys = new TreeSet<>();
+        journal.keysChanged(9, Long.MAX_VALUE, keys);
+        assertTrue(keys.isEmpty());
+    }
+}
@@ -0,0 +1,317 @@
+package com.songjaehyun.api.demos.expiringkv.domain;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore.SnapshotEntry;
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore.SnapshotPage;
+import com.songjaehyun.api.demos.expiringkv.domain.KeyValueStore.PutEntry;
+import com.songjaehyun.api.demos.expiringkv.domain.StoreOptions.Eviction;
+
+public class CompactKeyValueStoreTest {
+
+    @Test
+    void put_get_overwrite_roundTripsUtf8() {
+        AtomicLong now = new AtomicLong(1_000);
+        CompactKeyValueStore store = new CompactKeyValueStore(now::get);
+
+        store.put("\uD0A4", "\uAC12 \u2713", 500);
+        assertEquals("\uAC12 \u2713", store.get("\uD0A4"));
+        store.put("\uD0A4", "", 800);
+        assertEquals("", store.get("\uD0A4"));
+        assertEquals(800, store.getRemainingTTL("\uD0A4"));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    void expiredEntry_isPurgedAndCounted() {
+        AtomicLong now = new AtomicLong(1_000);
+        CompactKeyValueStore store = new CompactKeyValueStore(now::get);
+        store.put("a", "1", 100);
+        store.put("b", "2", 300);
+
+        now.set(1_100);
+
+        assertNull(store.get("a"));
+        assertEquals(-1, store.getRemainingTTL("a"));
+        assertEquals("2", store.get("b"));
+        assertEquals(1, store.size());
+        assertEquals(1, store.stats().expirations());
+    }
+
+    @Test
+    void putIfAbsent_keepsLiveEntry_replacesExpiredOne() {
+        AtomicLong now = new AtomicLong(1_000);
+        CompactKeyValueStore store = new CompactKeyValueStore(now::get);
+        store.put("k", "first", 100);
+
+        store.putIfAbsent("k", "second", 100);
+        assertEquals("first", store.get("k"));
+
+        now.set(1_200);
+        store.putIfAbsent("k", "third", 100);
+        assertEquals("third", store.get("k"));
+    }
+
+    @Test
+    void randomWorkload_matchesReferenceMap() {
+        AtomicLong now = new AtomicLong(1_000);
+        CompactKeyValueStore store = new CompactKeyValueStore(now::get);
+        Map<String, String> reference = new HashMap<>();
+        Random random = new Random(42);
+
+        // Enough churn to grow the table, reuse slots and compact the pages
+        for (int i = 0; i < 50_000; i++) {
+            String key = "key-" + random.nextInt(2_000);
+            if (random.nextInt(4) == 0) {
+                assertEquals(reference.remove(key) != null, store.remove(key));
+            } else {
+                String value = "value-" + i + "-" + "x".repeat(random.nextInt(64));
+                store.put(key, value, 60_000);
+                reference.put(key, value);
+            }
+        }
+
+        assertEquals(reference.size(), store.size());
+        for (Map.Entry<String, String> e : reference.entrySet())
+            assertEquals(e.getValue(), store.get(e.getKey()));
+        assertTrue(store.footprintBytes() < 4L * store.stats().weightBytes() + (1 << 20));
+    }
+
+    @Test
+    void snapshotPage_walksAllKeysInOrder() {
+        AtomicLong now = new AtomicLong(1_000);
+        CompactKeyValueStore store = new CompactKeyValueStore(now::get);
+        for (int i = 0; i < 25; i++)
+            store.put(String.format("k%02d", 24 - i), "v" + i, 1_000);
+
+        List<String> keys = new ArrayList<>();
+        String cursor = null;
+        do {
+            SnapshotPage page = store.snapshotPage(cursor, 10);
+            page.entries().forEach(e -> keys.add(e.key()));
+            cursor = page.nextCursor();
+        } while (cursor != null);
+
+        assertEquals(25, keys.size());
+        for (int i = 0; i < 25; i++)
+            assertEquals(String.format("k%02d", i), keys.get(i));
+        assertEquals(keys, store.snapshot().entries().stream().map(SnapshotEntry::key).toList());
+    }
+
+    @Test
+    void orderedReads_spanningScanChunks_matchSortedLiveKeys() {
+        AtomicLong now = new AtomicLong(1_000);
+        CompactKeyValueStore store = new CompactKeyValueStore(now::get);
+        int n = 2 * CompactKeyValueStore.SCAN_CHUNK + 7;
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            String key = String.format("k%05d", n - i);
+            store.put(key, "v", 1_000);
+            if (i % 3 == 0)
+                store.remove(key);
+            else
+                expected.add(key);
+        }
+        expected.sort(null);
+
+        List<String> paged = new ArrayList<>();
+        String cursor = null;
+        do {
+            SnapshotPage page = store.snapshotPage(cursor, 500);
+            page.entries().forEach(e -> paged.add(e.key()));
+            cursor = page.nextCursor();
+        } while (cursor != null);
+
+        assertEquals(expected, paged);
+        assertEquals(expected, store.snapshot().entries().stream().map(SnapshotEntry::key).toList());
+        assertEquals(expected.subList(100, 150),
+                store.range(expected.get(100), expected.get(150), 1_000).stream().map(SnapshotEntry::key).toList());
+    }
+
+    @Test
+    void range_and_liveEntries_respectBoundsAndSkipRemovedKeys() {
+        AtomicLong now = new AtomicLong(1_000);
+        CompactKeyValueStore store = new CompactKeyValueStore(now::get);
+        for (String key : List.of("apple", "apricot", "banana", "blueberry", "cherry"))
+            store.put(key, key.toUpperCase(), 1_000);
+
+        List<SnapshotEntry> b = store.scan("b", 10);
+        assertEquals(List.of("banana", "blueberry"), b.stream().map(SnapshotEntry::key).toList());
+        assertEquals(1, store.range("apricot", "c", 1).size());
+
+        Iterator<SnapshotEntry> it = store.liveEntries("apricot");
+        store.remove("blueberry");
+        assertEquals("banana", it.next().key());
+        assertEquals("cherry", it.next().key());
+        assertFalse(it.hasNext());
+    }
+
+    @Test
+    void bounded_evictsLeastRecentlyUsed() {
+        AtomicLong now = new AtomicLong(1_000);
+        StoreOptions options = StoreOptions.defaults().withMaxEntries(2).withEviction(Eviction.LRU);
+        CompactKeyValueStore store = new CompactKeyValueStore(now::get, options);
+        List<String> removed = new ArrayList<>();
+        store.addMutationListener(new MutationListener() {
+            @Override
+            public void onPut(String key, String value, long expiryMillis) {
+            }
+
+            @Override
+            public void onRemove(String key) {
+                removed.add(key);
+            }
+        });
+
+        store.put("a", "1", 1_000);
+        store.put("b", "2", 1_000);
+        store.get("a");
+        store.put("c", "3", 1_000);
+
+        assertNull(store.get("b"));
+        assertEquals("1", store.get("a"));
+        assertEquals(List.of("b"), removed);
+        assertEquals(1, store.stats().evictions());
+    }
+
+    @Test
+    void boundedWithTinyLfu_isRejected() {
+        StoreOptions options = StoreOptions.defaults().withMaxEntries(10).withEviction(Eviction.TINY_LFU);
+
+        assertThrows(IllegalArgumentException.class, () -> new CompactKeyValueStore(() -> 0, options));
+    }
+
+    @Test
+    void putAll_invalidEntry_writesNothing() {
+        AtomicLong now = new AtomicLong(1_000);
+        CompactKeyValueStore store = new CompactKeyValueStore(now::get);
+
+        assertThrows(IllegalArgumentException.class, () -> store.putAll(List.of(
+                new PutEntry("a", "1", 100),
+                new PutEntry("b", "2", 0))));
+        assertEquals(0, store.size());
+
+        store.putAll(List.of(new PutEntry("a", "1", 100), new PutEntry("b", "2", 100)));
+        assertEquals(2, store.getAll(List.of("b", "missing", "a")).size());
+        assertEquals(2, store.removeAll(List.of("a", "b", "missing")));
+    }
+
+    @Test
+    void reapExpired_respectsBudget() {
+        AtomicLong now = new AtomicLong(1_000);
+        CompactKeyValueStore store = new CompactKeyValueStore(now::get);
+        for (int i = 0; i < 10; i++)
+            store.put("k" + i, "v", 100 + i);
+
+        now.set(2_000);
+
+        assertEquals(4, store.reapExpired(4));
+        assertEquals(6, store.stats().entries());
+        assertEquals(6, store.reapExpired(100));
+        assertEquals(0, store.stats().weightBytes());
+    }
+
+    @Test
+    void readModifyWrite_matchesHeapStoreSemantics() {
+        AtomicLong now = new AtomicLong(1_000);
+        CompactKeyValueStore store = new CompactKeyValueStore(now::get);
+
+        assertTrue(store.compareAndSet("k", null, "v1", 500));
+        assertFalse(store.compareAndSet("k", "stale", "v2", 500));
+        assertEquals("v1", store.getAndSet("k", "v2", 500));
+        assertEquals(7, store.incrementBy("n", 7, 500));
+        assertEquals(10, store.incrementBy("n", 3, 500));
+
+        now.set(1_400);
+        assertTrue(store.touch("n", 1_000));
+        assertEquals(1_000, store.getRemainingTTL("n"));
+        now.set(1_600);
+        assertNull(store.get("k"));
+        assertEquals("10", store.get("n"));
+        assertFalse(store.touch("k", 1_000));
+    }
+
+    @Test
+    void changeListener_andVersions_matchHeapStore() {
+        AtomicLong now = new AtomicLong(1_000);
+        CompactKeyValueStore store = new CompactKeyValueStore(now::get);
+        List<ChangeEvent> events = new ArrayList<>();
+        store.addChangeListener(events::add);
+
+        store.put("a", "1", 100);
+        store.put("b", "2", 500);
+        assertTrue(store.touch("b", 1_000));
+        store.remove("b");
+        now.set(1_200);
+        assertNull(store.getVersioned("a"));
+
+        assertEquals(List.of(ChangeEvent.Type.PUT, ChangeEvent.Type.PUT, ChangeEvent.Type.PUT,
+                ChangeEvent.Type.REMOVE, ChangeEvent.Type.EXPIRE), events.stream().map(ChangeEvent::type).toList());
+        assertEquals(5, store.version());
+        store.put("c", "3", 100);
+        assertEquals(new VersionedEntry("c", "3", 1_300, 6), store.getVersioned("c"));
+    }
+
+    @Test
+    void snapshotDelta_answersFromJournal() {
+        AtomicLong now = new AtomicLong(1_000);
+        CompactKeyValueStore store = new CompactKeyValueStore(now::get,
+                StoreOptions.defaults().withJournalCapacity(8));
+        store.put("a", "1", 1_000);
+        store.put("b", "2", 100);
+        long since = store.version();
+
+        store.put("a", "3", 1_000);
+        now.set(1_100);
+        store.reapExpired(10);
+
+        var delta = store.snapshotDelta(since);
+        assertFalse(delta.full());
+        assertEquals("3", delta.upserted().get(0).value());
+        assertEquals(List.of("b"), delta.removed());
+        assertTrue(new CompactKeyValueStore(now::get).snapshotDelta(0).full());
+    }
+
+    @Test
+    void snapshotDelta_expiryWithoutOtherTraffic_reportsKeyRemoved() {
+        AtomicLong now = new AtomicLong(1_000);
+        CompactKeyValueStore store = new CompactKeyValueStore(now::get,
+                StoreOptions.defaults().withJournalCapacity(8));
+        store.put("short", "v", 100);
+        store.put("long", "v", 1_000);
+        long since = store.version();
+
+        now.set(1_100);
+        var delta = store.snapshotDelta(since);
+
+        assertFalse(delta.full());
+        assertEquals(List.of("short"), delta.removed());
+        assertEquals(store.version(), delta.version());
+    }
+
+    @Test
+    void snapshotDelta_moreExpiredThanPurgeCap_reportsEveryOneRemoved() {
+        AtomicLong now = new AtomicLong(1_000);
+        CompactKeyValueStore store = new CompactKeyValueStore(now::get,
+                StoreOptions.defaults().withJournalCapacity(16).withMaxPurgePerOperation(2));
+        for (int i = 0; i < 5; i++)
+            store.put("k" + i, "v", 100);
+        long since = store.version();
+
+        now.set(1_100);
+        var delta = store.snapshotDelta(since);
+
+        assertFalse(delta.full());
+        assertEquals(List.of("k0", "k1", "k2", "k3", "k4"), delta.removed().stream().sorted().toList());
+    }
+}
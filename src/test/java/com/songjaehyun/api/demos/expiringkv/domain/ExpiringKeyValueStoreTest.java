@@ -0,0 +1,615 @@
+package com.songjaehyun.api.demos.expiringkv.domain;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore.SnapshotDelta;
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore.SnapshotEntry;
+import com.songjaehyun.api.demos.expiringkv.domain.KeyValueStore.PutEntry;
+
+public class ExpiringKeyValueStoreTest {
+
+    @Test
+    void lockFreeReads_get_returnsLiveValue() {
+        AtomicLong now = new AtomicLong(1_000);
+        ExpiringKeyValueStore store = new ExpiringKeyValueStore(now::get, true);
+        store.put("abc", "alpha", 500);
+
+        assertEquals("alpha", store.get("abc"));
+        assertEquals(500, store.getRemainingTTL("abc"));
+    }
+
+    @Test
+    void lockFreeReads_expiredEntry_isInvisibleButNotRemovedByReader() {
+        AtomicLong now = new AtomicLong(1_000);
+        ExpiringKeyValueStore store = new ExpiringKeyValueStore(now::get, true);
+        store.put("abc", "alpha", 500);
+
+        now.set(1_500);
+
+        assertNull(store.get("abc"));
+        assertEquals(-1, store.getRemainingTTL("abc"));
+        // size() is a purging operation, so the expired entry goes away here
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void lockFreeReads_putIfAbsent_replacesExpiredEntry() {
+        AtomicLong now = new AtomicLong(1_000);
+        ExpiringKeyValueStore store = new ExpiringKeyValueStore(now::get, true);
+        store.put("abc", "alpha", 500);
+        now.set(2_000);
+
+        store.putIfAbsent("abc", "beta", 500);
+        assertEquals("beta", store.get("abc"));
+    }
+
+    @Test
+    void lockedReads_expiredEntry_returnsNull() {
+        AtomicLong now = new AtomicLong(1_000);
+        ExpiringKeyValueStore store = new ExpiringKeyValueStore(now::get);
+        store.put("abc", "alpha", 500);
+        now.set(1_500);
+
+        assertNull(store.get("abc"));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void boundedPurge_expiredEntriesStayInvisible() {
+        AtomicLong now = new AtomicLong(1_000);
+        StoreOptions options = StoreOptions.defaults()
+                .withExpiryIndex(StoreOptions.ExpiryIndex.TIMING_WHEEL)
+                .withMaxPurgePerOperation(1);
+        ExpiringKeyValueStore store = new ExpiringKeyValueStore(now::get, options);
+        for (int i = 0; i < 5; i++)
+            store.put("k" + i, "v" + i, 100);
+        store.put("live", "x", 10_000);
+
+        now.addAndGet(500);
+
+        assertNull(store.get("k3"));
+        assertFalse(store.remove("k4"));
+        store.putIfAbsent("k2", "fresh", 100);
+        assertEquals("fresh", store.get("k2"));
+
+        var snapshot = store.snapshot();
+        assertEquals(2, snapshot.entries().size());
+        assertEquals("k2", snapshot.entries().get(0).key());
+        assertEquals("live", snapshot.entries().get(1).key());
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    void timingWheel_overwrittenKey_isNotExpiredByStaleNode() {
+        AtomicLong now = new AtomicLong(1_000);
+        ExpiringKeyValueStore store = new ExpiringKeyValueStore(now::get,
+                StoreOptions.defaults().withExpiryIndex(StoreOptions.ExpiryIndex.TIMING_WHEEL));
+        store.put("abc", "old", 100);
+        store.put("abc", "new", 10_000);
+
+        now.addAndGet(200);
+        assertEquals(1, store.size());
+        assertEquals("new", store.get("abc"));
+    }
+
+    @Test
+    void overwritingHotKey_keepsExpiryIndexBoundedByLiveKeys() {
+        for (StoreOptions.ExpiryIndex index : StoreOptions.ExpiryIndex.values()) {
+            ExpiringKeyValueStore store = new ExpiringKeyValueStore(System::currentTimeMillis,
+                    StoreOptions.defaults().withExpiryIndex(index));
+            for (int i = 0; i < 1_000; i++)
+                store.put("hot", "v" + i, 365L * 24 * 60 * 60 * 1000);
+            store.put("other", "x", 60_000);
+
+            assertEquals(2, store.stats().entries());
+            assertEquals(2, store.stats().expiryNodes());
+
+            store.remove("other");
+            assertEquals(1, store.stats().entries());
+            assertEquals(1, store.stats().expiryNodes());
+        }
+    }
+
+    @Test
+    void maxEntries_lru_evictsLeastRecentlyUsed() {
+        ExpiringKeyValueStore store = new ExpiringKeyValueStore(System::currentTimeMillis,
+                StoreOptions.defaults().withMaxEntries(3).withEviction(StoreOptions.Eviction.LRU));
+        store.put("a", "1", 60_000);
+        store.put("b", "2", 60_000);
+        store.put("c", "3", 60_000);
+        store.get("a");
+        store.put("d", "4", 60_000);
+
+        assertNull(store.get("b"));
+        assertEquals("1", store.get("a"));
+        assertEquals("4", store.get("d"));
+        assertEquals(3, store.size());
+        assertEquals(1, store.stats().evictions());
+        assertEquals(3, store.stats().expiryNodes());
+    }
+
+    @Test
+    void maxWeight_evictsUntilWithinBudget() {
+        // each entry weighs 2 * (1 + 9) = 20 bytes
+        ExpiringKeyValueStore store = new ExpiringKeyValueStore(System::currentTimeMillis,
+                StoreOptions.defaults().withMaxWeightBytes(50).withEviction(StoreOptions.Eviction.LRU));
+        store.put("a", "123456789", 60_000);
+        store.put("b", "123456789", 60_000);
+        store.put("c", "123456789", 60_000);
+
+        assertEquals(2, store.size());
+        assertEquals(40, store.stats().weightBytes());
+        assertNull(store.get("a"));
+    }
+
+    @Test
+    void maxWeight_entryLargerThanBudget_throws() {
+        ExpiringKeyValueStore store = new ExpiringKeyValueStore(System::currentTimeMillis,
+                StoreOptions.defaults().withMaxWeightBytes(10));
+        assertThrows(IllegalArgumentException.class, () -> store.put("abc", "too large", 60_000));
+    }
+
+    @Test
+    void tinyLfu_keepsFrequentKeysUnderScan() {
+        ExpiringKeyValueStore store = new ExpiringKeyValueStore(System::currentTimeMillis,
+                StoreOptions.defaults().withMaxEntries(100).withEviction(StoreOptions.Eviction.TINY_LFU));
+        for (int i = 0; i < 50; i++)
+            store.put("hot" + i, "v", 60_000);
+        for (int round = 0; round < 5; round++)
+            for (int i = 0; i < 50; i++)
+                store.get("hot" + i);
+
+        // a one-pass scan of cold keys should not flush the hot set
+        for (int i = 0; i < 1_000; i++)
+            store.put("cold" + i, "v", 60_000);
+
+        int retained = 0;
+        for (int i = 0; i < 50; i++)
+            if (store.get("hot" + i) != null)
+                retained++;
+        assertTrue(retained >= 45, "hot keys retained: " + retained);
+        assertEquals(100, store.size());
+    }
+
+    @Test
+    void stats_countHitsMissesAndExpirations() {
+        AtomicLong now = new AtomicLong(1_000);
+        ExpiringKeyValueStore store = new ExpiringKeyValueStore(now::get);
+        store.put("abc", "alpha", 100);
+
+        store.get("abc");
+        store.get("missing");
+        now.addAndGet(200);
+        store.size();
+
+        StoreStats stats = store.stats();
+        assertEquals(1, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(1, stats.expirations());
+        assertEquals(0.5, stats.hitRate(), 0.0001);
+        assertEquals(0, stats.weightBytes());
+    }
+
+    @Test
+    void putAll_getAll_removeAll_roundTrip() {
+        AtomicLong now = new AtomicLong(1_000);
+        ExpiringKeyValueStore store = new ExpiringKeyValueStore(now::get);
+        store.putAll(List.of(
+                new PutEntry("a", "1", 100),
+                new PutEntry("b", "2", 200),
+                new PutEntry("c", "3", 300)));
+
+        var found = store.getAll(List.of("c", "missing", "a"));
+        assertEquals(2, found.size());
+        assertEquals("c", found.get(0).key());
+        assertEquals(300, found.get(0).ttlRemainingMillis());
+        assertEquals("a", found.get(1).key());
+
+        now.addAndGet(150);
+        assertEquals(1, store.removeAll(List.of("a", "b", "missing")));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    void putAll_invalidEntry_rejectsWholeBatch() {
+        ExpiringKeyValueStore store = new ExpiringKeyValueStore();
+        assertThrows(IllegalArgumentException.class, () -> store.putAll(List.of(
+                new PutEntry("a", "1", 100),
+                new PutEntry("b", "2", 0))));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void snapshotPage_walksAllKeysInOrder() {
+        AtomicLong now = new AtomicLong(1_000);
+        ExpiringKeyValueStore store = new ExpiringKeyValueStore(now::get);
+        for (int i = 0; i < 25; i++)
+            store.put(String.format("k%02d", i), "v" + i, i % 5 == 0 ? 100 : 60_000);
+        now.addAndGet(200); // expires k00, k05, k10, k15, k20
+
+        List<String> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            var page = store.snapshotPage(cursor, 7);
+            page.entries().forEach(e -> seen.add(e.key()));
+            cursor = page.nextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(3, pages);
+        assertEquals(20, seen.size());
+        for (int i = 1; i < seen.size(); i++)
+            assertTrue(seen.get(i - 1).compareTo(seen.get(i)) < 0);
+        assertFalse(seen.contains("k05"));
+    }
+
+    @Test
+    void liveEntries_startsAfterCursor() {
+        AtomicLong now = new AtomicLong(1_000);
+        ExpiringKeyValueStore store = new ExpiringKeyValueStore(now::get);
+        store.put("a", "1", 1_000);
+        store.put("b", "2", 1_000);
+        store.put("c", "3", 1_000);
+
+        var it = store.liveEntries("a");
+        assertEquals("b", it.next().key());
+        assertEquals("c", it.next().key());
+        assertFalse(it.hasNext());
+        assertThrows(IllegalArgumentException.class, () -> store.snapshotPage(null, 0));
+    }
+
+    @Test
+    void scan_returnsOnlyLiveKeysWithPrefix() {
+        AtomicLong now = new AtomicLong(1_000);
+        ExpiringKeyValueStore store = new ExpiringKeyValueStore(now::get);
+        store.put("user:1:name", "a", 60_000);
+        store.put("user:1:email", "b", 60_000);
+        store.put("user:1:temp", "c", 100);
+        store.put("user:12:name", "d", 60_000);
+        store.put("user:2:name", "e", 60_000);
+        now.addAndGet(200);
+
+        var found = store.scan("user:1:", 10);
+        assertEquals(2, found.size());
+        assertEquals("user:1:email", found.get(0).key());
+        assertEquals("user:1:name", found.get(1).key());
+    }
+
+    @Test
+    void range_isHalfOpenAndLimited() {
+        AtomicLong now = new AtomicLong(1_000);
+        ExpiringKeyValueStore store = new ExpiringKeyValueStore(now::get);
+        for (char c = 'a'; c <= 'f'; c++)
+            store.put(String.valueOf(c), "v", 60_000);
+
+        var found = store.range("b", "e", 10);
+        assertEquals(List.of("b", "c", "d"), found.stream().map(e -> e.key()).toList());
+        assertEquals(2, store.range(null, null, 2).size());
+        assertEquals("f", store.range("e\0", null, 10).get(0).key());
+    }
+
+    @Test
+    void putAt_usesAbsoluteExpiry_andRejectsPast() {
+        AtomicLong now = new AtomicLong(1_000);
+        ExpiringKeyValueStore store = new ExpiringKeyValueStore(now::get);
+        store.putAt("k", "v", 1_500);
+
+        assertEquals(500, store.getRemainingTTL("k"));
+        assertThrows(IllegalArgumentException.class, () -> store.putAt("old", "v", 1_000));
+    }
+
+    @Test
+    void mutationListener_seesEffectiveWritesInOrder() {
+        AtomicLong now = new AtomicLong(1_000);
+        ExpiringKeyValueStore store = new ExpiringKeyValueStore(now::get,
+                StoreOptions.defaults().withMaxEntries(2).withEviction(StoreOptions.Eviction.LRU));
+        List<String> events = new ArrayList<>();
+        store.addMutationListener(new MutationListener() {
+            @Override
+            public void onPut(String key, String value, long expiryMillis) {
+                events.add("put " + key + "=" + value + "@" + expiryMillis);
+            }
+
+            @Override
+            public void onRemove(String key) {
+                events.add("remove " + key);
+            }
+        });
+
+        store.put("a", "1", 100);
+        store.putIfAbsent("a", "ignored", 100);
+        store.put("b", "2", 100);
+        store.put("c", "3", 100);
+        store.remove("b");
+        store.remove("missing");
+
+        assertEquals(List.of("put a=1@1100", "put b=2@1100", "put c=3@1100", "remove a", "remove b"), events);
+    }
+
+    @Test
+    void reset_emptiesStoreAndStats_andStoreStaysUsable() {
+        AtomicLong now = new AtomicLong(1_000);
+        ExpiringKeyValueStore store = new ExpiringKeyValueStore(now::get,
+                StoreOptions.defaults().withMaxEntries(2).withEviction(StoreOptions.Eviction.LRU));
+        store.put("a", "1", 100);
+        store.put("b", "2", 100);
+        store.put("c", "3", 100);
+        store.get("c");
+        store.get("missing");
+
+        store.reset();
+
+        assertEquals(0, store.size());
+        assertEquals(new StoreStats(0, 0, 0, 0, 0, 0, 0), store.stats());
+        assertTrue(store.snapshot().entries().isEmpty());
+
+        store.put("x", "1", 100);
+        store.put("y", "2", 100);
+        store.put("z", "3", 100);
+        assertNull(store.get("x"));
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    void reset_withListener_isRejected() {
+        ExpiringKeyValueStore store = new ExpiringKeyValueStore();
+        store.addMutationListener(new MutationListener() {
+            @Override
+            public void onPut(String key, String value, long expiryMillis) {
+            }
+
+            @Override
+            public void onRemove(String key) {
+            }
+        });
+        assertThrows(IllegalStateException.class, store::reset);
+    }
+
+    @Test
+    void observer_seesPurgesAndContendedLockWaits() throws Exception {
+        AtomicLong now = new AtomicLong(1_000);
+        ExpiringKeyValueStore store = new ExpiringKeyValueStore(now::get);
+        List<Integer> purges = new ArrayList<>();
+        List<Long> waits = new CopyOnWriteArrayList<>();
+        store.setObserver(new StoreObserver() {
+            @Override
+            public void lockWaited(long nanos) {
+                waits.add(nanos);
+            }
+
+            @Override
+            public void purged(int nodes) {
+                purges.add(nodes);
+            }
+        });
+
+        store.put("a", "1", 100);
+        store.put("b", "1", 100);
+        now.addAndGet(200);
+        store.put("c", "1", 100);
+        store.put("d", "1", 100);
+        assertEquals(List.of(2), purges);
+        assertTrue(waits.isEmpty());
+
+        // A listener runs under the lock; park one writer there
+        CountDownLatch inside = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        store.addMutationListener(new MutationListener() {
+            @Override
+            public void onPut(String key, String value, long expiryMillis) {
+                if (!key.equals("slow"))
+                    return;
+                inside.countDown();
+                try {
+                    proceed.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void onRemove(String key) {
+            }
+        });
+        Thread holder = new Thread(() -> store.put("slow", "1", 100));
+        holder.start();
+        inside.await();
+        Thread waiter = new Thread(() -> store.put("fast", "1", 100));
+        waiter.start();
+        while (waiter.getState() != Thread.State.WAITING)
+            Thread.sleep(1);
+        proceed.countDown();
+        holder.join();
+        waiter.join();
+
+        assertEquals(1, waits.size());
+        assertTrue(waits.get(0) > 0);
+    }
+
+    @Test
+    void compareAndSet_writesOnlyOnMatch() {
+        AtomicLong now = new AtomicLong(1_000);
+        ExpiringKeyValueStore store = new ExpiringKeyValueStore(now::get);
+
+        assertTrue(store.compareAndSet("k", null, "v1", 500));
+        assertFalse(store.compareAndSet("k", null, "other", 500));
+        assertFalse(store.compareAndSet("k", "stale", "other", 500));
+        assertTrue(store.compareAndSet("k", "v1", "v2", 800));
+        assertEquals("v2", store.get("k"));
+        assertEquals(800, store.getRemainingTTL("k"));
+
+        now.set(2_000);
+        // An expired entry counts as absent
+        assertTrue(store.compareAndSet("k", null, "v3", 500));
+    }
+
+    @Test
+    void getAndSet_returnsPreviousLiveValue() {
+        AtomicLong now = new AtomicLong(1_000);
+        ExpiringKeyValueStore store = new ExpiringKeyValueStore(now::get);
+
+        assertNull(store.getAndSet("k", "a", 100));
+        assertEquals("a", store.getAndSet("k", "b", 100));
+        now.set(1_200);
+        assertNull(store.getAndSet("k", "c", 100));
+        assertEquals("c", store.get("k"));
+    }
+
+    @Test
+    void incrementBy_createsWithTtl_thenKeepsExpiry() {
+        AtomicLong now = new AtomicLong(1_000);
+        ExpiringKeyValueStore store = new ExpiringKeyValueStore(now::get);
+
+        assertEquals(5, store.incrementBy("hits", 5, 1_000));
+        now.set(1_400);
+        assertEquals(3, store.incrementBy("hits", -2, 60_000));
+        assertEquals(600, store.getRemainingTTL("hits"));
+        assertEquals("3", store.get("hits"));
+
+        store.put("name", "abc", 1_000);
+        assertThrows(IllegalArgumentException.class, () -> store.incrementBy("name", 1, 1_000));
+        store.put("max", Long.toString(Long.MAX_VALUE), 1_000);
+        assertThrows(IllegalArgumentException.class, () -> store.incrementBy("max", 1, 1_000));
+    }
+
+    @Test
+    void touch_resetsTtlOfLiveEntryOnly() {
+        AtomicLong now = new AtomicLong(1_000);
+        ExpiringKeyValueStore store = new ExpiringKeyValueStore(now::get, true);
+        store.put("lease", "owner", 100);
+
+        now.set(1_050);
+        assertTrue(store.touch("lease", 1_000));
+        assertEquals(1_000, store.getRemainingTTL("lease"));
+        assertEquals("owner", store.get("lease"));
+
+        now.set(3_000);
+        assertFalse(store.touch("lease", 1_000));
+        assertFalse(store.touch("missing", 1_000));
+    }
+
+    @Test
+    void changeListener_seesPutsRemovesAndExpirationsWithRisingVersions() {
+        AtomicLong now = new AtomicLong(1_000);
+        ExpiringKeyValueStore store = new ExpiringKeyValueStore(now::get, true);
+        List<ChangeEvent> events = new ArrayList<>();
+        store.addChangeListener(events::add);
+
+        store.put("a", "1", 100);
+        store.put("b", "2", 500);
+        store.remove("b");
+        store.remove("missing");
+        now.set(1_200);
+        assertEquals(1, store.reapExpired(10));
+
+        assertEquals(List.of(ChangeEvent.Type.PUT, ChangeEvent.Type.PUT, ChangeEvent.Type.REMOVE,
+                ChangeEvent.Type.EXPIRE), events.stream().map(ChangeEvent::type).toList());
+        assertEquals(List.of(1L, 2L, 3L, 4L), events.stream().map(ChangeEvent::version).toList());
+        assertEquals(new ChangeEvent(ChangeEvent.Type.PUT, "a", "1", 1_100, 1), events.get(0));
+        assertEquals(4, store.version());
+    }
+
+    @Test
+    void getVersioned_returnsVersionOfLiveValueWithoutCountingReads() {
+        AtomicLong now = new AtomicLong(1_000);
+        ExpiringKeyValueStore store = new ExpiringKeyValueStore(now::get, true);
+        store.put("k", "v1", 100);
+        store.put("other", "x", 1_000);
+        store.put("k", "v2", 100);
+
+        assertEquals(new VersionedEntry("k", "v2", 1_100, 3), store.getVersioned("k"));
+        assertEquals(0, store.stats().hits());
+
+        now.set(1_100);
+        assertNull(store.getVersioned("k"));
+        assertEquals(4, store.version());
+    }
+
+    @Test
+    void snapshotDelta_reportsOnlyKeysChangedSinceVersion() {
+        AtomicLong now = new AtomicLong(1_000);
+        StoreOptions options = StoreOptions.defaults().withJournalCapacity(16);
+        ExpiringKeyValueStore store = new ExpiringKeyValueStore(now::get, options);
+        store.put("a", "1", 1_000);
+        store.put("b", "2", 1_000);
+        store.put("gone", "x", 100);
+        long since = store.version();
+
+        store.put("b", "3", 1_000);
+        store.put("c", "4", 1_000);
+        store.remove("a");
+        now.set(1_100);
+        store.reapExpired(10);
+
+        SnapshotDelta delta = store.snapshotDelta(since);
+        assertFalse(delta.full());
+        assertEquals(store.version(), delta.version());
+        assertEquals(List.of("b", "c"), delta.upserted().stream().map(SnapshotEntry::key).toList());
+        assertEquals("3", delta.upserted().get(0).value());
+        assertEquals(List.of("a", "gone"), delta.removed());
+
+        SnapshotDelta none = store.snapshotDelta(delta.version());
+        assertTrue(none.upserted().isEmpty() && none.removed().isEmpty());
+    }
+
+    @Test
+    void snapshotDelta_beyondJournal_fallsBackToFullSnapshot() {
+        AtomicLong now = new AtomicLong(1_000);
+        ExpiringKeyValueStore store = new ExpiringKeyValueStore(now::get,
+                StoreOptions.defaults().withJournalCapacity(4));
+        for (int i = 0; i < 6; i++)
+            store.put("k" + i, "v", 1_000);
+
+        assertFalse(store.snapshotDelta(2).full());
+        SnapshotDelta truncated = store.snapshotDelta(1);
+        assertTrue(truncated.full());
+        assertEquals(6, truncated.upserted().size());
+        assertTrue(store.snapshotDelta(store.version() + 1).full());
+        assertTrue(new ExpiringKeyValueStore(now::get).snapshotDelta(0).full());
+        assertThrows(IllegalArgumentException.class, () -> store.snapshotDelta(-1));
+    }
+
+    @Test
+    void snapshotDelta_expiryWithoutOtherTraffic_reportsKeyRemoved() {
+        AtomicLong now = new AtomicLong(1_000);
+        ExpiringKeyValueStore store = new ExpiringKeyValueStore(now::get,
+                StoreOptions.defaults().withJournalCapacity(16));
+        store.put("short", "v", 100);
+        store.put("long", "v", 1_000);
+        long since = store.version();
+
+        now.set(1_100);
+        SnapshotDelta delta = store.snapshotDelta(since);
+
+        assertFalse(delta.full());
+        assertEquals(List.of("short"), delta.removed());
+        assertTrue(delta.upserted().isEmpty());
+        assertEquals(store.version(), delta.version());
+    }
+
+    @Test
+    void snapshotDelta_moreExpiredThanPurgeCap_reportsEveryOneRemoved() {
+        AtomicLong now = new AtomicLong(1_000);
+        ExpiringKeyValueStore store = new ExpiringKeyValueStore(now::get,
+                StoreOptions.defaults().withJournalCapacity(16).withMaxPurgePerOperation(2));
+        for (int i = 0; i < 5; i++)
+            store.put("k" + i, "v", 100);
+        long since = store.version();
+
+        now.set(1_100);
+        SnapshotDelta delta = store.snapshotDelta(since);
+
+        assertFalse(delta.full());
+        assertEquals(List.of("k0", "k1", "k2", "k3", "k4"), delta.removed().stream().sorted().toList());
+        assertEquals(0, store.size());
+    }
+}
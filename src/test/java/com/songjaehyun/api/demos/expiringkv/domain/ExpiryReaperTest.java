@@ -0,0 +1,73 @@
+package com.songjaehyun.api.demos.expiringkv.domain;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ExpiryReaperTest {
+
+    @Test
+    void tick_removesAtMostMaxPerTick() {
+        AtomicLong now = new AtomicLong(1_000);
+        StoreOptions options = StoreOptions.defaults()
+                .withExpiryIndex(StoreOptions.ExpiryIndex.TIMING_WHEEL)
+                .withWheelTickMillis(1)
+                .withMaxPurgePerOperation(1);
+        ExpiringKeyValueStore store = new ExpiringKeyValueStore(now::get, options);
+        for (int i = 0; i < 10; i++)
+            store.put("k" + i, "v", 100);
+        now.addAndGet(200);
+
+        try (ExpiryReaper reaper = new ExpiryReaper(store, 1_000, 4)) {
+            assertEquals(4, reaper.tick());
+            assertEquals(4, reaper.tick());
+            assertEquals(2, reaper.tick());
+            assertEquals(0, reaper.tick());
+        }
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void tick_acrossShards_drainsEverySegment() {
+        AtomicLong now = new AtomicLong(1_000);
+        ShardedExpiringKeyValueStore store = new ShardedExpiringKeyValueStore(now::get, 4,
+                StoreOptions.defaults().withMaxPurgePerOperation(1));
+        for (int i = 0; i < 40; i++)
+            store.put("k" + i, "v", 100);
+        now.addAndGet(200);
+
+        try (ExpiryReaper reaper = new ExpiryReaper(store, 1_000, 1_000)) {
+            assertEquals(40, reaper.tick());
+        }
+    }
+
+    @Test
+    void invalidSettings_throw() {
+        ExpiringKeyValueStore store = new ExpiringKeyValueStore();
+        assertThrows(IllegalArgumentException.class, () -> new ExpiryReaper(store, 0, 10));
+        assertThrows(IllegalArgumentException.class, () -> new ExpiryReaper(store, 10, 0));
+    }
+
+    @Test
+    void tick_failingStore_isCountedNotThrown() {
+        AtomicBoolean broken = new AtomicBoolean();
+        ExpiringKeyValueStore store = new ExpiringKeyValueStore(() -> {
+            if (broken.get())
+                throw new IllegalStateException("clock unavailable");
+            return 1_000;
+        });
+
+        try (ExpiryReaper reaper = new ExpiryReaper(store, 1_000, 10)) {
+            assertEquals(0, reaper.tick());
+            assertEquals(0, reaper.failures());
+
+            broken.set(true);
+            assertEquals(0, reaper.tick());
+            assertEquals(1, reaper.failures());
+            assertInstanceOf(IllegalStateException.class, reaper.lastFailure());
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.songjaehyun.api.demos.expiringkv.domain;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class HierarchicalTimingWheelTest {
+
+    private static final long YEAR = 365L * 24 * 60 * 60 * 1000;
+
+    @Test
+    void levels_coverHorizon() {
+        HierarchicalTimingWheel wheel = new HierarchicalTimingWheel(1, YEAR, 0);
+        assertEquals(6, wheel.levels());
+    }
+
+    @Test
+    void pollExpired_neverReturnsEarly_andAtMostOneTickLate() {
+        HierarchicalTimingWheel wheel = new HierarchicalTimingWheel(10, YEAR, 1_000);
+        wheel.schedule("a", 1_005);
+
+        List<String> out = new ArrayList<>();
+        assertEquals(0, wheel.pollExpired(1_004, 10, (k, e) -> out.add(k)));
+        assertEquals(0, wheel.pollExpired(1_009, 10, (k, e) -> out.add(k)));
+        assertEquals(1, wheel.pollExpired(1_010, 10, (k, e) -> out.add(k)));
+        assertEquals(List.of("a"), out);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void pollExpired_respectsBudget() {
+        HierarchicalTimingWheel wheel = new HierarchicalTimingWheel(1, YEAR, 0);
+        for (int i = 0; i < 10; i++)
+            wheel.schedule("k" + i, 5);
+
+        assertEquals(4, wheel.pollExpired(100, 4, (k, e) -> {
+        }));
+        assertEquals(6, wheel.size());
+        assertEquals(6, wheel.pollExpired(100, 100, (k, e) -> {
+        }));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void longIdleGap_expiresFarEntries() {
+        HierarchicalTimingWheel wheel = new HierarchicalTimingWheel(1, YEAR, 0);
+        wheel.schedule("year", YEAR);
+        wheel.schedule("hour", 3_600_000);
+
+        Map<String, Long> out = new HashMap<>();
+        wheel.pollExpired(3_599_999, 10, (k, e) -> out.put(k, e));
+        assertTrue(out.isEmpty());
+
+        wheel.pollExpired(YEAR, 10, (k, e) -> out.put(k, e));
+        assertEquals(Map.of("hour", 3_600_000L, "year", YEAR), out);
+    }
+
+    @Test
+    void randomizedSchedule_matchesBruteForce() {
+        Random rnd = new Random(42);
+        long now = 1_000_000;
+        HierarchicalTimingWheel wheel = new HierarchicalTimingWheel(1, YEAR, now);
+        Map<String, Long> pending = new HashMap<>();
+
+        for (int round = 0; round < 200; round++) {
+            for (int i = 0; i < 20; i++) {
+                String key = round + ":" + i;
+                long expiry = now + 1 + (long) (rnd.nextDouble() * rnd.nextDouble() * 5_000_000);
+                wheel.schedule(key, expiry);
+                pending.put(key, expiry);
+            }
+            now += rnd.nextInt(50_000);
+
+            long at = now;
+            wheel.pollExpired(at, Integer.MAX_VALUE, (k, e) -> {
+                assertTrue(e <= at, "expired early: " + k);
+                assertEquals(e, (long) pending.remove(k));
+            });
+            for (long e : pending.values())
+                assertTrue(e > at, "missed expiry");
+        }
+        assertEquals(pending.size(), wheel.size());
+    }
+
+    @Test
+    void reschedule_and_cancel_keepOneNodePerKey() {
+        HierarchicalTimingWheel wheel = new HierarchicalTimingWheel(1, YEAR, 0);
+        wheel.schedule("a", 10);
+        wheel.schedule("a", 5_000_000);
+        wheel.schedule("b", 10);
+        assertEquals(2, wheel.size());
+
+        assertTrue(wheel.cancel("b"));
+        assertFalse(wheel.cancel("b"));
+
+        List<String> out = new ArrayList<>();
+        wheel.pollExpired(100, 10, (k, e) -> out.add(k));
+        assertTrue(out.isEmpty());
+
+        wheel.pollExpired(5_000_000, 10, (k, e) -> out.add(k));
+        assertEquals(List.of("a"), out);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void cancel_readyNode_isNotReported() {
+        HierarchicalTimingWheel wheel = new HierarchicalTimingWheel(1, YEAR, 0);
+        wheel.schedule("a", 5);
+        wheel.schedule("b", 5);
+        wheel.schedule("c", 5);
+        // moves all three to the ready list without reporting any
+        wheel.pollExpired(10, 0, (k, e) -> fail());
+
+        assertTrue(wheel.cancel("b"));
+        Map<String, Long> out = new HashMap<>();
+        wheel.pollExpired(10, 10, (k, e) -> out.put(k, e));
+        assertEquals(Map.of("a", 5L, "c", 5L), out);
+    }
+}
@@ -0,0 +1,74 @@
+package com.songjaehyun.api.demos.expiringkv.domain;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class IndexedExpiryHeapTest {
+
+    @Test
+    void schedule_sameKeyTwice_keepsOneNode() {
+        IndexedExpiryHeap heap = new IndexedExpiryHeap();
+        heap.schedule("abc", 100);
+        heap.schedule("abc", 50);
+        heap.schedule("abc", 200);
+
+        assertEquals(1, heap.size());
+        assertEquals(0, heap.pollExpired(199, 10, (k, e) -> {
+        }));
+        assertEquals(1, heap.pollExpired(200, 10, (k, e) -> assertEquals(200, e)));
+    }
+
+    @Test
+    void cancel_removesNode() {
+        IndexedExpiryHeap heap = new IndexedExpiryHeap();
+        heap.schedule("a", 10);
+        heap.schedule("b", 20);
+
+        assertTrue(heap.cancel("a"));
+        assertFalse(heap.cancel("a"));
+        assertEquals(1, heap.size());
+
+        List<String> out = new ArrayList<>();
+        heap.pollExpired(100, 10, (k, e) -> out.add(k));
+        assertEquals(List.of("b"), out);
+    }
+
+    @Test
+    void randomizedOperations_matchBruteForce() {
+        Random rnd = new Random(7);
+        IndexedExpiryHeap heap = new IndexedExpiryHeap();
+        Map<String, Long> expected = new HashMap<>();
+        long now = 0;
+
+        for (int i = 0; i < 20_000; i++) {
+            String key = "k" + rnd.nextInt(500);
+            int op = rnd.nextInt(10);
+            if (op < 6) {
+                long expiry = now + 1 + rnd.nextInt(1_000);
+                heap.schedule(key, expiry);
+                expected.put(key, expiry);
+            } else if (op < 8) {
+                assertEquals(expected.remove(key) != null, heap.cancel(key));
+            } else {
+                now += rnd.nextInt(50);
+                long at = now;
+                long[] last = { Long.MIN_VALUE };
+                heap.pollExpired(at, Integer.MAX_VALUE, (k, e) -> {
+                    assertTrue(e >= last[0], "out of order");
+                    last[0] = e;
+                    assertEquals(e, (long) expected.remove(k));
+                });
+                for (long e : expected.values())
+                    assertTrue(e > at);
+            }
+            assertEquals(expected.size(), heap.size());
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.songjaehyun.api.demos.expiringkv.domain;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.songjaehyun.api.demos.expiringkv.domain.KeyValueStore.PutEntry;
+
+public class ShardedExpiringKeyValueStoreTest {
+
+    @Test
+    void shardCount_isRoundedUpToPowerOfTwo() {
+        ShardedExpiringKeyValueStore store = new ShardedExpiringKeyValueStore(System::currentTimeMillis, 5);
+        assertEquals(8, store.shardCount());
+    }
+
+    @Test
+    void shardCount_outOfRange_throws() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new ShardedExpiringKeyValueStore(System::currentTimeMillis, 0));
+    }
+
+    @Test
+    void put_then_get_acrossShards() {
+        ShardedExpiringKeyValueStore store = new ShardedExpiringKeyValueStore(System::currentTimeMillis, 4);
+        for (int i = 0; i < 100; i++)
+            store.put("k" + i, "v" + i, 10_000);
+
+        assertEquals(100, store.size());
+        for (int i = 0; i < 100; i++)
+            assertEquals("v" + i, store.get("k" + i));
+    }
+
+    @Test
+    void invalidKey_throwsLikeUnshardedStore() {
+        ShardedExpiringKeyValueStore store = new ShardedExpiringKeyValueStore(System::currentTimeMillis, 4);
+        assertThrows(IllegalArgumentException.class, () -> store.put(null, "v", 1000));
+        assertThrows(IllegalArgumentException.class, () -> store.get(" "));
+    }
+
+    @Test
+    void expiredEntries_areNotVisible() {
+        AtomicLong now = new AtomicLong(1_000);
+        ShardedExpiringKeyValueStore store = new ShardedExpiringKeyValueStore(now::get, 4);
+        store.put("short", "a", 100);
+        store.put("long", "b", 10_000);
+
+        now.addAndGet(200);
+
+        assertNull(store.get("short"));
+        assertEquals(-1, store.getRemainingTTL("short"));
+        assertEquals(9_800, store.getRemainingTTL("long"));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    void snapshot_isSortedByKeyAcrossShards() {
+        AtomicLong now = new AtomicLong(1_000);
+        ShardedExpiringKeyValueStore store = new ShardedExpiringKeyValueStore(now::get, 8);
+        store.put("delta", "4", 1000);
+        store.put("alpha", "1", 1000);
+        store.put("charlie", "3", 1000);
+        store.put("bravo", "2", 1000);
+
+        var snapshot = store.snapshot();
+        assertEquals(1_000, snapshot.nowMillis());
+        assertEquals(4, snapshot.entries().size());
+        assertEquals("alpha", snapshot.entries().get(0).key());
+        assertEquals("bravo", snapshot.entries().get(1).key());
+        assertEquals("charlie", snapshot.entries().get(2).key());
+        assertEquals("delta", snapshot.entries().get(3).key());
+    }
+
+    @Test
+    void concurrent_puts_onDistinctKeys_allVisible() throws Exception {
+        int threads = 8;
+        int keysPerThread = 500;
+        ShardedExpiringKeyValueStore store = new ShardedExpiringKeyValueStore(System::currentTimeMillis, 16);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch startGate = new CountDownLatch(1);
+        CountDownLatch doneGate = new CountDownLatch(threads);
+        ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<>();
+
+        for (int t = 0; t < threads; t++) {
+            int threadId = t;
+            pool.submit(() -> {
+                try {
+                    startGate.await();
+                    for (int j = 0; j < keysPerThread; j++)
+                        store.put("t" + threadId + ":" + j, "v", 60_000);
+                } catch (Throwable e) {
+                    errors.add(e);
+                } finally {
+                    doneGate.countDown();
+                }
+            });
+        }
+
+        startGate.countDown();
+        boolean finished = doneGate.await(5, TimeUnit.SECONDS);
+        pool.shutdownNow();
+
+        assertTrue(finished, "Workers did not finish in time");
+        assertTrue(errors.isEmpty(), "Errors occured: " + errors);
+        assertEquals(threads * keysPerThread, store.size());
+    }
+
+    @Test
+    void batchOperations_spanShards_andPreserveRequestOrder() {
+        ShardedExpiringKeyValueStore store = new ShardedExpiringKeyValueStore(System::currentTimeMillis, 8);
+        List<PutEntry> entries = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            entries.add(new PutEntry("k" + i, "v" + i, 60_000));
+            keys.add("k" + (49 - i));
+        }
+        store.putAll(entries);
+
+        var found = store.getAll(keys);
+        assertEquals(50, found.size());
+        for (int i = 0; i < 50; i++)
+            assertEquals(keys.get(i), found.get(i).key());
+
+        assertEquals(50, store.removeAll(keys));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void batchOperations_invalidKey_touchesNoShard() {
+        ShardedExpiringKeyValueStore store = new ShardedExpiringKeyValueStore(System::currentTimeMillis, 8);
+        store.put("a", "1", 60_000);
+        store.put("b", "2", 60_000);
+
+        assertThrows(IllegalArgumentException.class, () -> store.removeAll(List.of("a", "b", " ")));
+        assertThrows(IllegalArgumentException.class, () -> store.putAll(List.of(
+                new PutEntry("c", "3", 60_000),
+                new PutEntry("d", null, 60_000))));
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    void snapshotPage_walksAllKeysInOrder() {
+        AtomicLong now = new AtomicLong(1_000);
+        ShardedExpiringKeyValueStore store = new ShardedExpiringKeyValueStore(now::get, 8);
+        for (int i = 0; i < 25; i++)
+            store.put(String.format("k%02d", i), "v" + i, i % 5 == 0 ? 100 : 60_000);
+        now.addAndGet(200); // expires k00, k05, k10, k15, k20
+
+        List<String> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            var page = store.snapshotPage(cursor, 7);
+            page.entries().forEach(e -> seen.add(e.key()));
+            cursor = page.nextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(3, pages);
+        assertEquals(20, seen.size());
+        for (int i = 1; i < seen.size(); i++)
+            assertTrue(seen.get(i - 1).compareTo(seen.get(i)) < 0);
+        assertFalse(seen.contains("k05"));
+    }
+
+    @Test
+    void liveEntries_startsAfterCursor() {
+        AtomicLong now = new AtomicLong(1_000);
+        ShardedExpiringKeyValueStore store = new ShardedExpiringKeyValueStore(now::get, 8);
+        store.put("a", "1", 1_000);
+        store.put("b", "2", 1_000);
+        store.put("c", "3", 1_000);
+
+        var it = store.liveEntries("a");
+        assertEquals("b", it.next().key());
+        assertEquals("c", it.next().key());
+        assertFalse(it.hasNext());
+        assertThrows(IllegalArgumentException.class, () -> store.snapshotPage(null, 0));
+    }
+
+    @Test
+    void scan_returnsOnlyLiveKeysWithPrefix() {
+        AtomicLong now = new AtomicLong(1_000);
+        ShardedExpiringKeyValueStore store = new ShardedExpiringKeyValueStore(now::get, 8);
+        store.put("user:1:name", "a", 60_000);
+        store.put("user:1:email", "b", 60_000);
+        store.put("user:1:temp", "c", 100);
+        store.put("user:12:name", "d", 60_000);
+        store.put("user:2:name", "e", 60_000);
+        now.addAndGet(200);
+
+        var found = store.scan("user:1:", 10);
+        assertEquals(2, found.size());
+        assertEquals("user:1:email", found.get(0).key());
+        assertEquals("user:1:name", found.get(1).key());
+    }
+
+    @Test
+    void range_isHalfOpenAndLimited() {
+        AtomicLong now = new AtomicLong(1_000);
+        ShardedExpiringKeyValueStore store = new ShardedExpiringKeyValueStore(now::get, 8);
+        for (char c = 'a'; c <= 'f'; c++)
+            store.put(String.valueOf(c), "v", 60_000);
+
+        var found = store.range("b", "e", 10);
+        assertEquals(List.of("b", "c", "d"), found.stream().map(e -> e.key()).toList());
+        assertEquals(2, store.range(null, null, 2).size());
+        assertEquals("f", store.range("e\0", null, 10).get(0).key());
+    }
+
+    @Test
+    void versions_areSharedAcrossShards() {
+        AtomicLong now = new AtomicLong(1_000);
+        ShardedExpiringKeyValueStore store = new ShardedExpiringKeyValueStore(now::get, 8);
+        List<ChangeEvent> events = new CopyOnWriteArrayList<>();
+        store.addChangeListener(events::add);
+
+        for (int i = 0; i < 20; i++)
+            store.put("k" + i, "v", 1_000);
+        store.remove("k3");
+
+        assertEquals(21, store.version());
+        assertEquals(21, events.size());
+        assertEquals(21, events.stream().mapToLong(ChangeEvent::version).distinct().count());
+        assertEquals(20, store.getVersioned("k19").version());
+    }
+
+    @Test
+    void snapshotDelta_mergesSegmentJournals() {
+        AtomicLong now = new AtomicLong(1_000);
+        ShardedExpiringKeyValueStore store = new ShardedExpiringKeyValueStore(now::get, 4,
+                StoreOptions.defaults().withJournalCapacity(4_096));
+        for (int i = 0; i < 50; i++)
+            store.put(String.format("k%02d", i), "v", 60_000);
+        long since = store.version();
+
+        store.put("k07", "changed", 60_000);
+        store.remove("k31");
+        store.put("new", "v", 60_000);
+
+        var delta = store.snapshotDelta(since);
+        assertFalse(delta.full());
+        assertEquals(List.of("k07", "new"), delta.upserted().stream().map(e -> e.key()).toList());
+        assertEquals(List.of("k31"), delta.removed());
+        assertEquals(50, store.snapshotDelta(0).upserted().size());
+    }
+
+    @Test
+    void snapshotDelta_expiryWithoutOtherTraffic_reportsKeyRemoved() {
+        AtomicLong now = new AtomicLong(1_000);
+        ShardedExpiringKeyValueStore store = new ShardedExpiringKeyValueStore(now::get, 4,
+                StoreOptions.defaults().withJournalCapacity(64));
+        for (int i = 0; i < 8; i++)
+            store.put("k" + i, "v", i < 3 ? 100 : 1_000);
+        long since = store.version();
+
+        now.set(1_100);
+        var delta = store.snapshotDelta(since);
+
+        assertFalse(delta.full());
+        assertEquals(List.of("k0", "k1", "k2"), delta.removed());
+        assertEquals(store.version(), delta.version());
+    }
+
+    @Test
+    void snapshotDelta_moreExpiredThanPurgeCap_reportsEveryOneRemoved() {
+        AtomicLong now = new AtomicLong(1_000);
+        ShardedExpiringKeyValueStore store = new ShardedExpiringKeyValueStore(now::get, 2,
+                StoreOptions.defaults().withJournalCapacity(64).withMaxPurgePerOperation(1));
+        for (int i = 0; i < 8; i++)
+            store.put("k" + i, "v", 100);
+        long since = store.version();
+
+        now.set(1_100);
+        var delta = store.snapshotDelta(since);
+
+        assertFalse(delta.full());
+        assertEquals(8, delta.removed().size());
+        assertTrue(delta.upserted().isEmpty());
+    }
+}
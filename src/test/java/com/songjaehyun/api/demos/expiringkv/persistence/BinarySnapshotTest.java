@@ -0,0 +1,117 @@
+package com.songjaehyun.api.demos.expiringkv.persistence;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore;
+import com.songjaehyun.api.demos.expiringkv.domain.ShardedExpiringKeyValueStore;
+
+public class BinarySnapshotTest {
+
+    @TempDir
+    Path dir;
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    @Test
+    void exportImport_roundTripsAcrossBlocks() throws IOException {
+        ExpiringKeyValueStore source = new ExpiringKeyValueStore(now::get);
+        for (int i = 0; i < 5_000; i++)
+            source.put("key-" + i, "value-" + i + "-\u00fcn\u00efcode", 1_000 + i);
+
+        Path file = dir.resolve("dump.ekvd");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            assertEquals(5_000, BinarySnapshot.export(source.liveEntries(null), channel));
+        }
+
+        ShardedExpiringKeyValueStore target = new ShardedExpiringKeyValueStore(now::get, 4);
+        BinarySnapshot.ImportResult result = BinarySnapshot.importInto(file, target);
+
+        assertEquals(5_000, result.imported());
+        assertEquals(0, result.skipped());
+        assertEquals(source.snapshot().entries(), target.snapshot().entries());
+    }
+
+    @Test
+    void import_skipsEntriesExpiredSinceExport() throws IOException {
+        ExpiringKeyValueStore source = new ExpiringKeyValueStore(now::get);
+        source.put("short", "v", 100);
+        source.put("long", "v", 10_000);
+        Path file = export(source);
+
+        now.addAndGet(500);
+        ExpiringKeyValueStore target = new ExpiringKeyValueStore(now::get);
+        BinarySnapshot.ImportResult result = BinarySnapshot.importInto(file, target);
+
+        assertEquals(1, result.imported());
+        assertEquals(1, result.skipped());
+        assertEquals(9_500, target.getRemainingTTL("long"));
+    }
+
+    @Test
+    void export_emptyStore_importsNothing() throws IOException {
+        Path file = export(new ExpiringKeyValueStore(now::get));
+
+        ExpiringKeyValueStore target = new ExpiringKeyValueStore(now::get);
+        assertEquals(new BinarySnapshot.ImportResult(0, 0), BinarySnapshot.importInto(file, target));
+    }
+
+    @Test
+    void import_flippedByte_failsChecksumWithoutWriting() throws IOException {
+        ExpiringKeyValueStore source = new ExpiringKeyValueStore(now::get);
+        source.put("a", "alpha", 10_000);
+        Path file = export(source);
+
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[BinarySnapshot.HEADER_BYTES + 14] ^= 0x01;
+        Files.write(file, bytes);
+
+        ExpiringKeyValueStore target = new ExpiringKeyValueStore(now::get);
+        assertThrows(CorruptSnapshotException.class, () -> BinarySnapshot.importInto(file, target));
+        assertEquals(0, target.size());
+    }
+
+    @Test
+    void import_truncated_isRejected() throws IOException {
+        ExpiringKeyValueStore source = new ExpiringKeyValueStore(now::get);
+        source.put("a", "alpha", 10_000);
+        Path file = export(source);
+
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 12));
+
+        assertThrows(CorruptSnapshotException.class,
+                () -> BinarySnapshot.importInto(file, new ExpiringKeyValueStore(now::get)));
+    }
+
+    @Test
+    void varLong_roundTripsExtremes() {
+        ByteBuffer buf = ByteBuffer.allocate(64);
+        long[] values = { 0, 1, 127, 128, Long.MAX_VALUE, -1, Long.MIN_VALUE };
+        for (long v : values)
+            BinarySnapshot.putVarLong(buf, v);
+        buf.flip();
+        for (long v : values)
+            assertEquals(v, BinarySnapshot.getVarLong(buf));
+    }
+
+    private Path export(ExpiringKeyValueStore store) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinarySnapshot.export(store.liveEntries(null), out);
+        Path file = Files.createTempFile(dir, "dump", ".ekvd");
+        Files.write(file, out.toByteArray());
+        return file;
+    }
+}
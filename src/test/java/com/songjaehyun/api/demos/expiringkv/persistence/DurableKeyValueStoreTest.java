@@ -0,0 +1,205 @@
+package com.songjaehyun.api.demos.expiringkv.persistence;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.songjaehyun.api.demos.expiringkv.domain.ExpiringKeyValueStore;
+import com.songjaehyun.api.demos.expiringkv.domain.KeyValueStore.PutEntry;
+import com.songjaehyun.api.demos.expiringkv.domain.ShardedExpiringKeyValueStore;
+import com.songjaehyun.api.demos.expiringkv.domain.StoreOptions;
+
+public class DurableKeyValueStoreTest {
+
+    @TempDir
+    Path dir;
+
+    private final AtomicLong now = new AtomicLong(1_000);
+
+    private DurableKeyValueStore open(FsyncPolicy policy) throws IOException {
+        return new DurableKeyValueStore(new ExpiringKeyValueStore(now::get), now::get,
+                new DurabilityOptions(dir, policy, 1, 1, 3_600_000));
+    }
+
+    @Test
+    void reopen_replaysPutsAndRemoves() throws IOException {
+        try (DurableKeyValueStore store = open(FsyncPolicy.ALWAYS)) {
+            store.put("a", "1", 10_000);
+            store.put("b", "2", 10_000);
+            store.putIfAbsent("b", "ignored", 10_000);
+            store.putAll(List.of(new PutEntry("c", "3", 10_000), new PutEntry("d", "4", 10_000)));
+            store.remove("a");
+        }
+
+        try (DurableKeyValueStore store = open(FsyncPolicy.ALWAYS)) {
+            assertNull(store.get("a"));
+            assertEquals("2", store.get("b"));
+            assertEquals("3", store.get("c"));
+            assertEquals(3, store.size());
+            assertEquals(10_000, store.getRemainingTTL("d"));
+            assertEquals(0, store.recovery().tornSegments());
+        }
+    }
+
+    @Test
+    void reopen_replaysReadModifyWrites() throws IOException {
+        try (DurableKeyValueStore store = open(FsyncPolicy.ALWAYS)) {
+            store.incrementBy("n", 2, 10_000);
+            store.incrementBy("n", 3, 10_000);
+            store.compareAndSet("c", null, "first", 10_000);
+            store.getAndSet("c", "second", 10_000);
+            store.put("lease", "owner", 100);
+            store.touch("lease", 10_000);
+        }
+        now.addAndGet(500);
+
+        try (DurableKeyValueStore store = open(FsyncPolicy.ALWAYS)) {
+            assertEquals("5", store.get("n"));
+            assertEquals("second", store.get("c"));
+            assertEquals("owner", store.get("lease"));
+        }
+    }
+
+    @Test
+    void idleWriter_wakesForAppend_withoutAnyoneAwaitingIt() throws Exception {
+        try (DurableKeyValueStore store = open(FsyncPolicy.NEVER)) {
+            // Let the writer park on the empty buffer first
+            Thread.sleep(20);
+            store.put("a", "1", 10_000);
+
+            long deadline = System.nanoTime() + 2_000_000_000L;
+            while (logBytes() == 0 && System.nanoTime() < deadline)
+                Thread.sleep(5);
+            assertTrue(logBytes() > 0);
+        }
+    }
+
+    private long logBytes() throws IOException {
+        long total = 0;
+        for (long segment : WriteAheadLog.segments(dir))
+            total += Files.size(WriteAheadLog.segmentPath(dir, segment));
+        return total;
+    }
+
+    @Test
+    void reopen_keepsAbsoluteExpiry_andSkipsExpired() throws IOException {
+        try (DurableKeyValueStore store = open(FsyncPolicy.NEVER)) {
+            store.put("short", "v", 100);
+            store.put("long", "v", 1_000);
+        }
+        now.addAndGet(500);
+
+        try (DurableKeyValueStore store = open(FsyncPolicy.NEVER)) {
+            assertNull(store.get("short"));
+            assertEquals(500, store.getRemainingTTL("long"));
+            assertEquals(1, store.recovery().skippedExpired());
+        }
+    }
+
+    @Test
+    void reopen_expiredOverwrite_doesNotResurrectOlderValue() throws IOException {
+        try (DurableKeyValueStore store = open(FsyncPolicy.INTERVAL)) {
+            store.put("k", "old", 10_000);
+            store.put("k", "new", 100);
+        }
+        now.addAndGet(200);
+
+        try (DurableKeyValueStore store = open(FsyncPolicy.INTERVAL)) {
+            assertNull(store.get("k"));
+        }
+    }
+
+    @Test
+    void compact_writesSnapshot_andDropsCoveredSegments() throws IOException {
+        try (DurableKeyValueStore store = open(FsyncPolicy.ALWAYS)) {
+            for (int i = 0; i < 100; i++)
+                store.put("k" + i, "v" + i, 10_000);
+            store.remove("k0");
+            assertEquals(99, store.compact());
+            store.put("after", "x", 10_000);
+            store.remove("k1");
+        }
+        assertEquals(1, WriteAheadLog.segments(dir).size());
+
+        try (DurableKeyValueStore store = open(FsyncPolicy.ALWAYS)) {
+            assertEquals(99, store.recovery().snapshotEntries());
+            assertEquals(2, store.recovery().logRecords());
+            assertEquals(99, store.size());
+            assertNull(store.get("k1"));
+            assertEquals("x", store.get("after"));
+            assertEquals("v99", store.get("k99"));
+        }
+    }
+
+    @Test
+    void reopen_snapshotOfOlderFormat_isRejectedByVersion() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(16).putInt(0x454b5653).putInt(1).putLong(0);
+        Files.write(dir.resolve(SnapshotFile.FILE_NAME), header.array());
+
+        IOException e = assertThrows(IOException.class, () -> open(FsyncPolicy.ALWAYS));
+        assertTrue(e.getMessage().contains("Unsupported snapshot version 1"));
+    }
+
+    @Test
+    void reopen_tornTail_keepsEverythingBeforeIt() throws IOException {
+        try (DurableKeyValueStore store = open(FsyncPolicy.ALWAYS)) {
+            store.put("a", "1", 10_000);
+            store.put("b", "2", 10_000);
+        }
+        List<Long> segments = WriteAheadLog.segments(dir);
+        Path last = WriteAheadLog.segmentPath(dir, segments.get(segments.size() - 1));
+        Files.write(last, new byte[] { 0, 0, 0, 40, 1, 2, 3 }, StandardOpenOption.APPEND);
+
+        try (DurableKeyValueStore store = open(FsyncPolicy.ALWAYS)) {
+            assertEquals(1, store.recovery().tornSegments());
+            assertEquals("1", store.get("a"));
+            assertEquals("2", store.get("b"));
+            store.put("c", "3", 10_000);
+        }
+
+        try (DurableKeyValueStore store = open(FsyncPolicy.ALWAYS)) {
+            assertEquals(3, store.size());
+        }
+    }
+
+    @Test
+    void reopen_logsEvictionsAsRemovals() throws IOException {
+        StoreOptions bounded = StoreOptions.defaults().withMaxEntries(2).withEviction(StoreOptions.Eviction.LRU);
+        try (DurableKeyValueStore store = new DurableKeyValueStore(
+                new ExpiringKeyValueStore(now::get, bounded), now::get,
+                new DurabilityOptions(dir, FsyncPolicy.ALWAYS, 1, 1, 3_600_000))) {
+            store.put("a", "1", 10_000);
+            store.put("b", "2", 10_000);
+            store.put("c", "3", 10_000);
+        }
+
+        try (DurableKeyValueStore store = new DurableKeyValueStore(
+                new ShardedExpiringKeyValueStore(now::get, 4), now::get,
+                new DurabilityOptions(dir, FsyncPolicy.ALWAYS, 1, 1, 3_600_000))) {
+            assertNull(store.get("a"));
+            assertEquals(2, store.size());
+        }
+    }
+
+    @Test
+    void failedScheduledCompaction_isCounted() throws IOException {
+        DurableKeyValueStore store = open(FsyncPolicy.NEVER);
+        store.put("a", "1", 10_000);
+        store.close();
+
+        // The log is closed, so rotating it fails
+        store.compactQuietly();
+
+        assertEquals(1, store.compactionFailures());
+        assertInstanceOf(IllegalStateException.class, store.lastCompactionFailure());
+    }
+}
@@ -4,8 +4,11 @@ import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class DemoLogServiceTest {
 
@@ -149,4 +152,191 @@ public class DemoLogServiceTest {
         assertTrue(errors.isEmpty(), "Errors occured: " + errors);
         assertEquals(expected, dls.count("abc"));
     }
+
+    @Test
+    void cap_wrapsManyTimes_keepsLatestInOrder() {
+        DemoLogService dls = new DemoLogService(4);
+        for (int i = 0; i < 1_003; i++)
+            dls.append("abc", new LogEvent(i, "demo", "m", Map.of(), i));
+
+        var q = dls.get("abc");
+        assertEquals(4, dls.count("abc"));
+        assertEquals(4, q.size());
+        for (int i = 0; i < 4; i++)
+            assertEquals(999L + i, q.get(i).tsMillis());
+    }
+
+    @Test
+    void concurrent_readsDuringAppends_areOrderedAndBounded() throws Exception {
+        DemoLogService dls = new DemoLogService(50);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        CountDownLatch done = new CountDownLatch(3);
+
+        for (int w = 0; w < 3; w++) {
+            pool.submit(() -> {
+                try {
+                    for (int i = 0; i < 20_000; i++)
+                        dls.append("abc", new LogEvent(i, "demo", "m", Map.of(), null));
+                } catch (Throwable e) {
+                    errors.add(e);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        pool.submit(() -> {
+            try {
+                while (done.getCount() > 0) {
+                    var q = dls.get("abc");
+                    if (q.size() > 50)
+                        throw new AssertionError("ring exceeded capacity: " + q.size());
+                }
+            } catch (Throwable e) {
+                errors.add(e);
+            }
+        });
+
+        assertTrue(done.await(10, TimeUnit.SECONDS), "Writers did not finish in time");
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        assertTrue(errors.isEmpty(), "Errors occured: " + errors);
+        assertEquals(50, dls.get("abc").size());
+    }
+
+    @Test
+    void since_returnsOnlyNewerEvents_andAdvancesCursor() {
+        DemoLogService dls = new DemoLogService(10);
+        for (int i = 0; i < 3; i++)
+            dls.append("abc", new LogEvent(i, "demo", "m", Map.of(), i));
+
+        LogSlice first = dls.since("abc", 0);
+        assertEquals(3, first.events().size());
+        assertEquals(3, first.latestSeq());
+
+        dls.append("abc", new LogEvent(3, "demo", "m", Map.of(), 3));
+        LogSlice next = dls.since("abc", first.latestSeq());
+        assertEquals(1, next.events().size());
+        assertEquals(3L, next.events().get(0).tsMillis());
+        assertEquals(4, next.latestSeq());
+
+        LogSlice idle = dls.since("abc", next.latestSeq());
+        assertTrue(idle.events().isEmpty());
+        assertEquals(4, idle.latestSeq());
+    }
+
+    @Test
+    void since_cursorOlderThanRetained_returnsWhatIsLeft() {
+        DemoLogService dls = new DemoLogService(3);
+        for (int i = 0; i < 10; i++)
+            dls.append("abc", new LogEvent(i, "demo", "m", Map.of(), i));
+
+        LogSlice slice = dls.since("abc", 2);
+        assertEquals(3, slice.events().size());
+        assertEquals(7L, slice.events().get(0).tsMillis());
+        assertEquals(10, slice.latestSeq());
+    }
+
+    @Test
+    void since_afterClear_restartsFromBeginning() {
+        DemoLogService dls = new DemoLogService(10);
+        for (int i = 0; i < 5; i++)
+            dls.append("abc", new LogEvent(i, "demo", "m", Map.of(), i));
+        dls.clear("abc");
+        assertEquals(LogSlice.EMPTY, dls.since("abc", 5));
+
+        dls.append("abc", new LogEvent(99, "demo", "m", Map.of(), 99));
+        LogSlice slice = dls.since("abc", 5);
+        assertEquals(1, slice.events().size());
+        assertEquals(1, slice.latestSeq());
+    }
+
+    @Test
+    void appendListener_isNotifiedAfterEventIsReadable() {
+        DemoLogService dls = new DemoLogService();
+        List<Integer> seen = new ArrayList<>();
+        dls.addAppendListener(sid -> seen.add(dls.get(sid).size()));
+
+        dls.append("abc", new LogEvent(1, "demo", "m", Map.of(), null));
+        dls.append("abc", new LogEvent(2, "demo", "m", Map.of(), null));
+
+        assertEquals(List.of(1, 2), seen);
+    }
+
+    @Test
+    void totalEventBudget_evictsLeastRecentlyUsedSessionFirst() {
+        AtomicLong now = new AtomicLong(1_000);
+        DemoLogService dls = new DemoLogService(10, 10, Long.MAX_VALUE, now::get);
+        for (int i = 0; i < 4; i++)
+            dls.append("old", new LogEvent(i, "demo", "m", Map.of(), null));
+        now.addAndGet(10);
+        for (int i = 0; i < 4; i++)
+            dls.append("mid", new LogEvent(i, "demo", "m", Map.of(), null));
+        now.addAndGet(10);
+        dls.get("old"); // reading counts as use
+        now.addAndGet(10);
+        for (int i = 0; i < 3; i++)
+            dls.append("new", new LogEvent(i, "demo", "m", Map.of(), null));
+
+        assertEquals(0, dls.count("mid"));
+        assertEquals(4, dls.count("old"));
+        assertEquals(3, dls.count("new"));
+        DemoLogService.LogStats stats = dls.stats();
+        assertEquals(2, stats.sessions());
+        assertEquals(7, stats.retainedEvents());
+        assertEquals(1, stats.capacityEvictions());
+    }
+
+    @Test
+    void totalByteBudget_isEnforced() {
+        AtomicLong now = new AtomicLong(1_000);
+        DemoLogService dls = new DemoLogService(100, Long.MAX_VALUE, 4_000, now::get);
+        for (int s = 0; s < 50; s++) {
+            now.incrementAndGet();
+            dls.append("s" + s, new LogEvent(s, "demo", "m", Map.of("key", "x".repeat(200)), "y".repeat(200)));
+        }
+
+        DemoLogService.LogStats stats = dls.stats();
+        assertTrue(stats.retainedBytes() <= 4_000, "retained " + stats.retainedBytes());
+        assertTrue(stats.capacityEvictions() > 0);
+        assertEquals(1, dls.count("s49"));
+        assertEquals(0, dls.count("s0"));
+    }
+
+    @Test
+    void evictIdle_dropsOnlySessionsUnusedSinceCutoff() {
+        AtomicLong now = new AtomicLong(1_000);
+        DemoLogService dls = new DemoLogService(10, Long.MAX_VALUE, Long.MAX_VALUE, now::get);
+        dls.append("idle", new LogEvent(1, "demo", "m", Map.of(), null));
+        dls.append("busy", new LogEvent(1, "demo", "m", Map.of(), null));
+        now.set(5_000);
+        dls.since("busy", 0);
+
+        assertEquals(1, dls.evictIdle(2_000));
+        assertEquals(0, dls.count("idle"));
+        assertEquals(1, dls.count("busy"));
+
+        DemoLogService.LogStats stats = dls.stats();
+        assertEquals(1, stats.sessions());
+        assertEquals(1, stats.retainedEvents());
+        assertEquals(1, stats.idleEvictions());
+    }
+
+    @Test
+    void clearAndReconcile_keepTotalsInStepWithRings() {
+        DemoLogService dls = new DemoLogService(3);
+        for (int i = 0; i < 5; i++)
+            dls.append("abc", new LogEvent(i, "demo", "m", Map.of(), null));
+        dls.append("def", new LogEvent(0, "demo", "m", Map.of(), null));
+
+        DemoLogService.LogStats before = dls.stats();
+        assertEquals(4, before.retainedEvents());
+        dls.reconcile();
+        assertEquals(before, dls.stats());
+
+        dls.clear("abc");
+        dls.clear("def");
+        assertEquals(0, dls.stats().retainedEvents());
+        assertEquals(0, dls.stats().retainedBytes());
+    }
 }
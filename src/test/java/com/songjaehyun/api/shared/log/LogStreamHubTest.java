@@ -0,0 +1,112 @@
+package com.songjaehyun.api.shared.log;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+public class LogStreamHubTest {
+
+    private final DemoLogService logService = new DemoLogService(4);
+    private RecordingEmitter emitter = new RecordingEmitter();
+    private final LogStreamHub hub = new LogStreamHub(logService, 50, () -> emitter);
+
+    @AfterEach
+    void tearDown() {
+        hub.close();
+    }
+
+    @Test
+    void subscribe_withLastEventId_resumesAfterIt() throws Exception {
+        append(3);
+
+        hub.subscribe("s", 2);
+
+        String sent = emitter.next();
+        assertTrue(sent.contains("id:3\n"), sent);
+        assertTrue(sent.contains("event:log\n"), sent);
+        assertTrue(sent.contains("method-3"), sent);
+        assertFalse(sent.contains("method-2"), sent);
+    }
+
+    @Test
+    void subscribe_cursorBehindRing_sendsDroppedCountFirst() throws Exception {
+        // The ring holds 4, so events 2..6 are gone for a client at 1
+        append(10);
+
+        hub.subscribe("s", 1);
+
+        String dropped = emitter.next();
+        assertTrue(dropped.contains("event:dropped\n"), dropped);
+        assertTrue(dropped.contains("data:5"), dropped);
+        String log = emitter.next();
+        assertTrue(log.contains("id:10\n"), log);
+    }
+
+    @Test
+    void quietStream_getsHeartbeats() throws Exception {
+        hub.subscribe("s", 0);
+
+        // One right away, then one per heartbeat interval
+        assertTrue(emitter.next().contains(":heartbeat"));
+        assertTrue(emitter.next().contains(":heartbeat"));
+    }
+
+    @Test
+    void sendFailure_completesEmitterAndDropsSubscriber() throws Exception {
+        emitter.failWith = new IllegalArgumentException("not writable");
+
+        hub.subscribe("s", 0);
+
+        assertInstanceOf(IllegalArgumentException.class, emitter.error.poll(2, TimeUnit.SECONDS));
+        assertEquals(0, hub.subscriberCount());
+
+        // A later subscriber on the same session still gets events
+        emitter = new RecordingEmitter();
+        hub.subscribe("s", 0);
+        emitter.next();
+        append(1);
+        assertTrue(emitter.next().contains("id:1\n"));
+    }
+
+    private void append(int n) {
+        for (int i = 1; i <= n; i++)
+            logService.append("s", new LogEvent(1_000, "demo", "method-" + i, Map.of(), null));
+    }
+
+    /** Records what would go over the wire, one string per event. */
+    private static final class RecordingEmitter extends SseEmitter {
+        final BlockingQueue<String> sent = new LinkedBlockingQueue<>();
+        final BlockingQueue<Throwable> error = new LinkedBlockingQueue<>();
+        volatile RuntimeException failWith;
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            if (failWith != null)
+                throw failWith;
+            StringBuilder event = new StringBuilder();
+            for (DataWithMediaType part : builder.build())
+                event.append(part.getData());
+            sent.add(event.toString());
+        }
+
+        @Override
+        public void completeWithError(Throwable ex) {
+            error.add(ex);
+        }
+
+        String next() throws InterruptedException {
+            String event = sent.poll(2, TimeUnit.SECONDS);
+            assertNotNull(event, "no event sent");
+            return event;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.songjaehyun.api.shared.session;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import com.songjaehyun.api.shared.log.DemoLogService;
+import com.songjaehyun.api.shared.log.LogEvent;
+
+public class IdleSessionSweeperTest {
+
+    @Test
+    void sweep_removesIdleSessionsAndTheirLogs() {
+        AtomicLong now = new AtomicLong(1_000);
+        SessionRegistry registry = new SessionRegistry(now::get);
+        DemoLogService logs = new DemoLogService(10, Long.MAX_VALUE, Long.MAX_VALUE, now::get);
+        try (IdleSessionSweeper sweeper = new IdleSessionSweeper(registry, logs, now::get, 1_000, 60_000)) {
+            registry.touch("idle");
+            logs.append("idle", new LogEvent(1, "demo", "m", Map.of(), null));
+            logs.append("orphan", new LogEvent(1, "demo", "m", Map.of(), null));
+            now.set(3_000);
+            registry.touch("busy");
+            logs.append("busy", new LogEvent(3, "demo", "m", Map.of(), null));
+
+            assertEquals(1, sweeper.sweep());
+
+            assertEquals(Map.of("busy", 3_000L), registry.snapshot());
+            assertEquals(0, logs.count("idle"));
+            assertEquals(0, logs.count("orphan"));
+            assertEquals(1, logs.count("busy"));
+            assertEquals(1, logs.stats().retainedEvents());
+            assertEquals(1, sweeper.evictedSessions());
+        }
+    }
+
+    @Test
+    void sweep_keepsUnreadLogOfSessionKeptAliveByTouch() {
+        AtomicLong now = new AtomicLong(1_000);
+        SessionRegistry registry = new SessionRegistry(now::get);
+        DemoLogService logs = new DemoLogService(10, Long.MAX_VALUE, Long.MAX_VALUE, now::get);
+        try (IdleSessionSweeper sweeper = new IdleSessionSweeper(registry, logs, now::get, 1_000, 60_000)) {
+            registry.touch("alive");
+            logs.append("alive", new LogEvent(1, "demo", "m", Map.of(), null));
+            now.set(3_000);
+            // Touched, but its log is neither written nor read
+            registry.touch("alive");
+
+            assertEquals(0, sweeper.sweep());
+            assertEquals(1, logs.count("alive"));
+        }
+    }
+
+    @Test
+    void constructor_rejectsNonPositiveDurations() {
+        SessionRegistry registry = new SessionRegistry();
+        DemoLogService logs = new DemoLogService(10, 10, 10, System::currentTimeMillis);
+        assertThrows(IllegalArgumentException.class,
+                () -> new IdleSessionSweeper(registry, logs, System::currentTimeMillis, 0, 1));
+        assertThrows(IllegalArgumentException.class,
+                () -> new IdleSessionSweeper(registry, logs, System::currentTimeMillis, 1, 0));
+    }
+
+    @Test
+    void failingPass_isCountedAndLaterPassesStillRun() {
+        AtomicLong now = new AtomicLong(1_000);
+        AtomicBoolean broken = new AtomicBoolean();
+        SessionRegistry registry = new SessionRegistry(now::get);
+        DemoLogService logs = new DemoLogService(10, Long.MAX_VALUE, Long.MAX_VALUE, now::get);
+        LongSupplier clock = () -> {
+            if (broken.get())
+                throw new IllegalStateException("clock unavailable");
+            return now.get();
+        };
+        try (IdleSessionSweeper sweeper = new IdleSessionSweeper(registry, logs, clock, 1_000, 60_000)) {
+            registry.touch("idle");
+            now.set(3_000);
+
+            broken.set(true);
+            sweeper.sweepQuietly();
+            assertEquals(1, sweeper.failures());
+            assertInstanceOf(IllegalStateException.class, sweeper.lastFailure());
+
+            broken.set(false);
+            sweeper.sweepQuietly();
+            assertEquals(1, sweeper.failures());
+            assertEquals(1, sweeper.evictedSessions());
+        }
+    }
+}
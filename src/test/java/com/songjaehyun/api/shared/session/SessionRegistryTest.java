@@ -2,6 +2,11 @@ package com.songjaehyun.api.shared.session;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class SessionRegistryTest {
@@ -85,4 +90,73 @@ public class SessionRegistryTest {
         assertTrue(snapshot.get("def") > 0);
         assertTrue(snapshot.get("hij") > 0);
     }
+
+    @Test
+    void sweepIdle_removesOnlySessionsUntouchedSinceCutoff() {
+        AtomicLong now = new AtomicLong(1_000);
+        SessionRegistry reg = new SessionRegistry(now::get, 100);
+        reg.touch("idle");
+        reg.touch("busy");
+        now.set(5_000);
+        reg.touch("busy");
+
+        List<String> removed = new ArrayList<>();
+        assertEquals(1, reg.sweepIdle(2_000, removed::add));
+        assertEquals(List.of("idle"), removed);
+        assertEquals(Map.of("busy", 5_000L), reg.snapshot());
+        assertEquals(0, reg.sweepIdle(2_000, removed::add));
+    }
+
+    @Test
+    void touch_withinSameBucket_keepsBucketStart_andNeverMovesBackwards() {
+        AtomicLong now = new AtomicLong(1_050);
+        SessionRegistry reg = new SessionRegistry(now::get, 100);
+        reg.touch("abc");
+        now.set(1_099);
+        reg.touch("abc");
+        assertEquals(1_000L, (long) reg.snapshot().get("abc"));
+
+        now.set(1_250);
+        reg.touch("abc");
+        now.set(900);
+        reg.touch("abc");
+        assertEquals(1_200L, (long) reg.snapshot().get("abc"));
+        assertEquals(1, reg.size());
+    }
+
+    @Test
+    void page_walksNewestFirst_withCursor() {
+        AtomicLong now = new AtomicLong(1_000);
+        SessionRegistry reg = new SessionRegistry(now::get, 100);
+        for (int i = 0; i < 5; i++) {
+            now.addAndGet(100);
+            reg.touch("s" + i);
+        }
+        reg.touch("s4b");
+        reg.touch("s0"); // moves s0 to the newest bucket
+
+        SessionRegistry.SessionPage first = reg.page(null, 3);
+        assertEquals(List.of("s0", "s4", "s4b"), ids(first));
+        assertEquals(1_500L, first.sessions().get(0).lastSeenMillis());
+        assertNotNull(first.nextCursor());
+
+        SessionRegistry.SessionPage second = reg.page(first.nextCursor(), 3);
+        assertEquals(List.of("s3", "s2", "s1"), ids(second));
+        assertNull(second.nextCursor());
+    }
+
+    @Test
+    void page_rejectsBadLimitAndCursor() {
+        SessionRegistry reg = new SessionRegistry();
+        assertThrows(IllegalArgumentException.class, () -> reg.page(null, 0));
+        assertThrows(IllegalArgumentException.class, () -> reg.page(null, SessionRegistry.MAX_PAGE_SIZE + 1));
+        assertThrows(IllegalArgumentException.class, () -> reg.page("nope", 10));
+    }
+
+    private static List<String> ids(SessionRegistry.SessionPage page) {
+        List<String> ids = new ArrayList<>();
+        for (SessionRegistry.SessionEntry e : page.sessions())
+            ids.add(e.sessionId());
+        return ids;
+    }
 }